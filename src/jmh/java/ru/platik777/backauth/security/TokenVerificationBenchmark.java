@@ -0,0 +1,100 @@
+package ru.platik777.backauth.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Сравнение проверки access токена:
+ * - jjwtPerCall - как JwtService.parseToken до реестра ключей (ключ и парсер на каждый вызов)
+ * - jjwtPrebuiltParser - JJWT с готовым парсером из JwtKeyRegistry
+ * - fastVerifier - Hs256TokenVerifier
+ * - fastVerifierWithKid - Hs256TokenVerifier, токен с kid (ротация ключей), ключ из кольца по kid
+ * <p/>
+ * Запуск: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+public class TokenVerificationBenchmark {
+
+    // Формат ключа как в KeyService: константа (64 hex) + соль (64 hex)
+    private static final String SIGNING_KEY =
+            "3517b2068b99a6e77da35428858a2bc53bdebda6ca58fef7d923a42af3207d91" +
+            "ac874e1f8528392b776fe782374163c9a25b397f81a6bdb7543cdda95a70a238";
+
+    private String token;
+    private JwtParser parser;
+    private Hs256TokenVerifier verifier;
+    private String tokenWithKid;
+    private Hs256TokenVerifier ringVerifier;
+
+    @Setup
+    public void setUp() {
+        SecretKey key = Keys.hmacShaKeyFor(SIGNING_KEY.getBytes(StandardCharsets.UTF_8));
+
+        Date now = new Date();
+        // Тот же набор claims, что и в JwtService.createToken
+        token = Jwts.builder()
+                .claim("userId", UUID.randomUUID().toString())
+                .claim("tenant_id", UUID.randomUUID().toString())
+                .claim("type", "APP_ACCESS")
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + 3_600_000))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+
+        parser = Jwts.parser().verifyWith(key).build();
+        verifier = new Hs256TokenVerifier(key, "APP_ACCESS");
+
+        tokenWithKid = Jwts.builder()
+                .header().keyId("APP_ACCESS.1").and()
+                .claim("userId", UUID.randomUUID().toString())
+                .claim("tenant_id", UUID.randomUUID().toString())
+                .claim("type", "APP_ACCESS")
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + 3_600_000))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+
+        Map<String, SecretKey> ring = Map.of("APP_ACCESS.0", key, "APP_ACCESS.1", key, "APP_ACCESS.2", key);
+        ringVerifier = new Hs256TokenVerifier(ring::get, "APP_ACCESS");
+
+        if (verifier.verify(token) == null || ringVerifier.verify(tokenWithKid) == null) {
+            throw new IllegalStateException("Fast verifier rejected a token issued by JJWT");
+        }
+    }
+
+    @Benchmark
+    public void jjwtPerCall(Blackhole blackhole) {
+        SecretKey key = Keys.hmacShaKeyFor(SIGNING_KEY.getBytes(StandardCharsets.UTF_8));
+        Claims claims = Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+        blackhole.consume(claims.get("userId", String.class));
+        blackhole.consume(claims.get("tenant_id", String.class));
+    }
+
+    @Benchmark
+    public void jjwtPrebuiltParser(Blackhole blackhole) {
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        blackhole.consume(claims.get("userId", String.class));
+        blackhole.consume(claims.get("tenant_id", String.class));
+    }
+
+    @Benchmark
+    public Hs256TokenVerifier.AccessClaims fastVerifier() {
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public Hs256TokenVerifier.AccessClaims fastVerifierWithKid() {
+        return ringVerifier.verify(tokenWithKid);
+    }
+}
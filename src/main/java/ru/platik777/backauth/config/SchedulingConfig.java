@@ -11,10 +11,13 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
  * Конфигурация Spring Scheduling
  *
  * Обеспечивает работу аннотации @Scheduled в приложении.
- * Используется в TokenBlacklistService для периодической очистки токенов.
+ * Используется в TokenBlacklistService для периодической очистки токенов
+ * и синхронизации общего черного списка (опрос каждые 500 мс),
+ * в ApiKeyUsageMeter для пакетного сброса учета использования API ключей,
+ * в RateLimiter для удаления неиспользуемых ведер.
  *
  * Настройки:
- * - Пул потоков размером 2 (достаточно для фоновых задач)
+ * - Пул потоков размером 4: частый опрос черного списка не ждет длинных задач
  * - Graceful shutdown с ожиданием завершения задач
  * - Логирование инициализации
  */
@@ -34,8 +37,8 @@ public class SchedulingConfig implements SchedulingConfigurer {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
 
         // Размер пула потоков
-        // 2 потока достаточно для наших фоновых задач
-        scheduler.setPoolSize(2);
+        // Опрос черного списка идет каждые 500 мс и не должен ждать очистки/пересчетов
+        scheduler.setPoolSize(4);
 
         // Префикс имени потоков для удобства отладки
         scheduler.setThreadNamePrefix("scheduled-task-");
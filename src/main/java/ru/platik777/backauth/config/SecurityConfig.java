@@ -11,10 +11,13 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import ru.platik777.backauth.security.JwtAuthenticationFilter;
+import ru.platik777.backauth.security.RateLimitFilter;
+import ru.platik777.backauth.security.RouteTable;
 
 import java.util.List;
 
@@ -23,7 +26,7 @@ import java.util.List;
  *
  * ИСПРАВЛЕНИЯ:
  * 1. Четкое разделение публичных и защищенных endpoint'ов
- * 2. Согласованность с JwtAuthenticationFilter
+ * 2. Согласованность с JwtAuthenticationFilter - общая RouteTable
  * 3. Правильная настройка refresh endpoint'ов
  */
 @Configuration
@@ -32,9 +35,13 @@ import java.util.List;
 public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final RateLimitFilter rateLimitFilter;
+    private final RouteTable routeTable;
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+        RequestMatcher publicRoutes = routeTable::isPublic;
+
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
@@ -45,80 +52,13 @@ public class SecurityConfig {
                 .addFilterBefore(jwtAuthenticationFilter,
                         UsernamePasswordAuthenticationFilter.class)
 
-                .authorizeHttpRequests(authz -> authz
-                        // ========== ПУБЛИЧНЫЕ ENDPOINTS (БЕЗ токена) ==========
-
-                        .requestMatchers(
-                                "/swagger-ui/**",
-                                "/swagger-ui.html",
-                                "/v3/api-docs/**",
-                                "/api-docs/**",
-                                "/swagger-resources/**",
-                                "/webjars/**"
-                        ).permitAll()
-
-                        // Регистрация и вход
-                        .requestMatchers(
-                                "/auth/signUp",
-                                "/auth/signIn"
-                        ).permitAll()
-
-                        // Восстановление пароля (все endpoint'ы)
-                        .requestMatchers("/api/v1/resetPassword/**").permitAll()
-
-                        // Проверка уникальности полей (для формы регистрации)
-                        .requestMatchers("/api/v1/auth/checkFieldForUniqueness").permitAll()
-
-                        // Образовательные учреждения (публичный справочник)
-                        .requestMatchers("/api/v1/educationalInstitutions/**").permitAll()
-
-                        // Internal endpoints (защищены на уровне сети)
-                        .requestMatchers("/api/v1/internal/**").permitAll()
-
-                        // Мониторинг
-                        .requestMatchers(
-                                "/monitor/**",
-                                "/actuator/**",
-                                "/metrics"
-                        ).permitAll()
+                // Лимиты пользователя/тенанта - сразу после аутентификации
+                .addFilterAfter(rateLimitFilter, JwtAuthenticationFilter.class)
 
-                        // Проверка API ключа (публичный endpoint)
-                        .requestMatchers("/api/v1/key/check").permitAll()
-
-                        // ========== ЗАЩИЩЕННЫЕ ENDPOINTS (С токеном) ==========
-
-                        // Обновление токенов - ТРЕБУЮТ соответствующий Refresh Token
-                        // Проверка типа токена происходит в JwtAuthenticationFilter
-                        .requestMatchers(
-                                "/auth/refreshToken",           // App Refresh Token
-                                "/auth/refreshTokenByBaseToken", // Base Refresh Token
-                                "/auth/refreshBaseToken"         // Base Refresh Token
-                        ).authenticated()
-
-                        // Проверка авторизации (для других микросервисов)
-                        // Требуют соответствующий Access Token
-                        .requestMatchers(
-                                "/auth/isAuthorization",     // App Access Token
-                                "/auth/isBaseAuthorization"  // Base Access Token
-                        ).authenticated()
-
-                        // Пользовательские операции - App Access Token
-                        .requestMatchers(
-                                "/auth/editUser",
-                                "/auth/checkProjectId",
-                                "/auth/checkRoleAdmin"
-                        ).authenticated()
-
-                        // API v1/user - App Access Token
-                        .requestMatchers("/api/v1/user/**").authenticated()
-
-                        // API v1/key - App Access Token
-                        .requestMatchers("/api/v1/key/**").authenticated()
-
-                        // API v1/base - Base Access Token
-                        .requestMatchers("/api/v1/base/**").authenticated()
-
-                        // Все остальное требует аутентификации
+                // Публичные маршруты и типы токенов описаны в RouteTable (общая с фильтром таблица),
+                // тип токена проверяет JwtAuthenticationFilter
+                .authorizeHttpRequests(authz -> authz
+                        .requestMatchers(publicRoutes).permitAll()
                         .anyRequest().authenticated()
                 );
 
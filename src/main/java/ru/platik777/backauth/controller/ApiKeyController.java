@@ -10,6 +10,7 @@ import ru.platik777.backauth.dto.AuthenticatedUser;
 import ru.platik777.backauth.dto.request.ApiKeyCheckRequest;
 import ru.platik777.backauth.dto.request.ApiKeyCreateRequest;
 import ru.platik777.backauth.dto.response.ApiKeyAuthResponse;
+import ru.platik777.backauth.dto.response.ApiKeyBatchCheckResponse;
 import ru.platik777.backauth.dto.response.ApiKeyResponse;
 import ru.platik777.backauth.dto.response.StatusResponse;
 import ru.platik777.backauth.security.CurrentUser;
@@ -48,7 +49,9 @@ public class ApiKeyController {
         ApiKeyResponse response = apiKeyService.createApiKey(
                 user.getUserId(),
                 request.getName(),
-                request.getExpireAt()
+                request.getExpireAt(),
+                request.getRateLimit(),
+                request.getRateLimitBurst()
         );
 
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
@@ -102,4 +105,20 @@ public class ApiKeyController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * POST /api/v1/key/check/batch
+     * Пакетная проверка API ключей (для прокси, буферизующего запросы интеграций)
+     * Возвращает результат по каждому ключу в порядке запроса
+     *
+     * ПУБЛИЧНЫЙ endpoint - не требует JWT токена
+     */
+    @PostMapping("/check/batch")
+    public ResponseEntity<List<ApiKeyBatchCheckResponse>> checkApiKeyAuthorizationBatch(
+            @RequestBody List<ApiKeyCheckRequest> requests) {
+
+        log.debug("Batch API key check request: count={}", requests != null ? requests.size() : 0);
+
+        return ResponseEntity.ok(apiKeyService.checkApiKeyAuthorizationBatch(requests));
+    }
 }
\ No newline at end of file
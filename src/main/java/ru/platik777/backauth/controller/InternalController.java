@@ -5,8 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.platik777.backauth.dto.request.SupportMessageRequest;
+import ru.platik777.backauth.dto.request.TokenIntrospectionRequest;
 import ru.platik777.backauth.dto.response.StatusResponse;
+import ru.platik777.backauth.dto.response.TokenIntrospectionResponse;
 import ru.platik777.backauth.service.InternalService;
+import ru.platik777.backauth.service.TokenIntrospectionService;
+
+import java.util.List;
 
 /**
  * Контроллер внутренних операций и образовательных учреждений
@@ -22,6 +27,7 @@ import ru.platik777.backauth.service.InternalService;
 public class InternalController {
 
     private final InternalService internalService;
+    private final TokenIntrospectionService tokenIntrospectionService;
 
     /**
      * POST /api/v1/internal/sendMessageToSupport
@@ -43,4 +49,18 @@ public class InternalController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * POST /api/v1/internal/introspect/batch
+     * Пакетная проверка токенов разных типов для шлюза (только внутренняя сеть)
+     * Возвращает результат по каждому токену в порядке запроса
+     */
+    @PostMapping("/api/v1/internal/introspect/batch")
+    public ResponseEntity<List<TokenIntrospectionResponse>> introspectBatch(
+            @RequestBody List<TokenIntrospectionRequest> requests) {
+
+        log.debug("Batch introspection request: count={}", requests != null ? requests.size() : 0);
+
+        return ResponseEntity.ok(tokenIntrospectionService.introspectBatch(requests));
+    }
 }
\ No newline at end of file
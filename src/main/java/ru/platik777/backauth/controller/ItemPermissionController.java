@@ -2,11 +2,18 @@ package ru.platik777.backauth.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.platik777.backauth.dto.request.CheckItemPermissionRequest;
+import ru.platik777.backauth.dto.request.PermissionChangeRequest;
+import ru.platik777.backauth.dto.response.PermissionChangeResponse;
+import ru.platik777.backauth.dto.response.PermissionCheckResponse;
+import ru.platik777.backauth.dto.response.PermissionGrantResponse;
 import ru.platik777.backauth.dto.response.PermissionResponse;
-import ru.platik777.backauth.entity.ItemUserPermission;
 import ru.platik777.backauth.entity.types.ItemType;
+import ru.platik777.backauth.service.AccessibleItemExportService;
 import ru.platik777.backauth.service.ItemPermissionService;
 
 import java.util.List;
@@ -19,6 +26,7 @@ import java.util.Map;
 public class ItemPermissionController {
 
     private final ItemPermissionService permissionService;
+    private final AccessibleItemExportService exportService;
 
     // ==================== УПРАВЛЕНИЕ ПРАВАМИ ====================
 
@@ -26,7 +34,7 @@ public class ItemPermissionController {
      * Выдать права доступа
      */
     @PostMapping("/grant")
-    public ResponseEntity<ItemUserPermission> grantPermission(
+    public ResponseEntity<PermissionGrantResponse> grantPermission(
             @RequestHeader("X-User-Id") String granterId,
             @RequestParam String targetUserId,
             @RequestParam String itemId,
@@ -36,7 +44,28 @@ public class ItemPermissionController {
         log.info("Grant permission request: granter={}, target={}, item={}, type={}, permissions={}",
                 granterId, targetUserId, itemId, itemType, permissions);
 
-        ItemUserPermission result = permissionService.grantPermission(
+        PermissionGrantResponse result = permissionService.grantPermission(
+                granterId, targetUserId, itemId, itemType, permissions
+        );
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Выдать или изменить права доступа (upsert)
+     */
+    @PutMapping("/grant")
+    public ResponseEntity<PermissionGrantResponse> setPermission(
+            @RequestHeader("X-User-Id") String granterId,
+            @RequestParam String targetUserId,
+            @RequestParam String itemId,
+            @RequestParam ItemType itemType,
+            @RequestParam short permissions) {
+
+        log.info("Set permission request: granter={}, target={}, item={}, type={}, permissions={}",
+                granterId, targetUserId, itemId, itemType, permissions);
+
+        PermissionGrantResponse result = permissionService.setPermission(
                 granterId, targetUserId, itemId, itemType, permissions
         );
 
@@ -47,7 +76,7 @@ public class ItemPermissionController {
      * Обновить права доступа
      */
     @PutMapping("/update")
-    public ResponseEntity<ItemUserPermission> updatePermission(
+    public ResponseEntity<PermissionGrantResponse> updatePermission(
             @RequestHeader("X-User-Id") String updaterId,
             @RequestParam String targetUserId,
             @RequestParam String itemId,
@@ -57,7 +86,7 @@ public class ItemPermissionController {
         log.info("Update permission request: updater={}, target={}, item={}, type={}, newPermissions={}",
                 updaterId, targetUserId, itemId, itemType, newPermissions);
 
-        ItemUserPermission result = permissionService.updatePermission(
+        PermissionGrantResponse result = permissionService.updatePermission(
                 updaterId, targetUserId, itemId, itemType, newPermissions
         );
 
@@ -82,6 +111,22 @@ public class ItemPermissionController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Массово выдать/изменить/отозвать права доступа
+     * Возвращает результат по каждому изменению в порядке запроса
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<List<PermissionChangeResponse>> applyPermissionChanges(
+            @RequestHeader("X-User-Id") String actorId,
+            @RequestBody List<PermissionChangeRequest> changes) {
+
+        log.info("Bulk permission request: actor={}, count={}", actorId, changes != null ? changes.size() : 0);
+
+        List<PermissionChangeResponse> results = permissionService.applyPermissionChanges(actorId, changes);
+
+        return ResponseEntity.ok(results);
+    }
+
     // ==================== ПОЛУЧЕНИЕ ПРАВ ====================
 
     /**
@@ -215,64 +260,120 @@ public class ItemPermissionController {
         return ResponseEntity.ok(permissions);
     }
 
+    /**
+     * Проверить права на набор элементов разных типов
+     * Результаты возвращаются в порядке запросов
+     */
+    @PostMapping("/check/batch")
+    public ResponseEntity<List<PermissionCheckResponse>> checkPermissionsBatch(
+            @RequestBody List<CheckItemPermissionRequest> requests,
+            @RequestHeader("X-User-Id") String userId) {
+
+        List<PermissionCheckResponse> results = permissionService.checkPermissionsBatch(userId, requests);
+
+        return ResponseEntity.ok(results);
+    }
+
     // ==================== ДОСТУПНЫЕ ЭЛЕМЕНТЫ ====================
 
     /**
-     * Получить все доступные проекты
+     * Получить доступные проекты постранично
+     * Следующая страница запрашивается с cursor из ответа
      */
     @GetMapping("/projects/accessible")
-    public ResponseEntity<List<ItemPermissionService.ItemWithPermissions>> getAccessibleProjects(
+    public ResponseEntity<ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions>> getAccessibleProjects(
             @RequestHeader("X-User-Id") String userId,
-            @RequestHeader("X-Tenant-Id") String tenantId) {
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
-        List<ItemPermissionService.ItemWithPermissions> projects =
-                permissionService.getAllAccessibleProjects(userId, tenantId);
+        ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions> projects =
+                permissionService.getAccessibleProjectsPage(userId, tenantId, cursor, limit);
 
         return ResponseEntity.ok(projects);
     }
 
     /**
-     * Получить все доступные блоки
+     * Получить доступные блоки постранично
+     * Следующая страница запрашивается с cursor из ответа
      */
     @GetMapping("/blocks/accessible")
-    public ResponseEntity<List<ItemPermissionService.ItemWithPermissions>> getAccessibleBlocks(
+    public ResponseEntity<ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions>> getAccessibleBlocks(
             @RequestHeader("X-User-Id") String userId,
-            @RequestHeader("X-Tenant-Id") String tenantId) {
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
-        List<ItemPermissionService.ItemWithPermissions> blocks =
-                permissionService.getAllAccessibleBlocks(userId, tenantId);
+        ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions> blocks =
+                permissionService.getAccessibleBlocksPage(userId, tenantId, cursor, limit);
 
         return ResponseEntity.ok(blocks);
     }
 
     /**
-     * Получить все доступные файлы
+     * Получить доступные файлы постранично
+     * Следующая страница запрашивается с cursor из ответа
      */
     @GetMapping("/files/accessible")
-    public ResponseEntity<List<ItemPermissionService.ItemWithPermissions>> getAccessibleFiles(
+    public ResponseEntity<ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions>> getAccessibleFiles(
             @RequestHeader("X-User-Id") String userId,
-            @RequestHeader("X-Tenant-Id") String tenantId) {
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
-        List<ItemPermissionService.ItemWithPermissions> files =
-                permissionService.getAllAccessibleFiles(userId, tenantId);
+        ItemPermissionService.ItemsPage<ItemPermissionService.ItemWithPermissions> files =
+                permissionService.getAccessibleFilesPage(userId, tenantId, cursor, limit);
 
         return ResponseEntity.ok(files);
     }
 
     /**
-     * Получить все доступные папки
+     * Получить доступные папки постранично
+     * Следующая страница запрашивается с cursor из ответа
      */
     @GetMapping("/folders/accessible")
-    public ResponseEntity<List<ItemPermissionService.FolderWithPermissions>> getAccessibleFolders(
+    public ResponseEntity<ItemPermissionService.ItemsPage<ItemPermissionService.FolderWithPermissions>> getAccessibleFolders(
             @RequestHeader("X-User-Id") String userId,
-            @RequestHeader("X-Tenant-Id") String tenantId) {
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
-        List<ItemPermissionService.FolderWithPermissions> folders =
-                permissionService.getAllAccessibleFolders(userId, tenantId);
+        ItemPermissionService.ItemsPage<ItemPermissionService.FolderWithPermissions> folders =
+                permissionService.getAccessibleFoldersPage(userId, tenantId, cursor, limit);
 
         return ResponseEntity.ok(folders);
     }
 
+    /**
+     * Потоковая выгрузка всех доступных элементов тенанта в NDJSON (одна строка - один элемент)
+     * Без itemType выгружаются все типы: папки, проекты, блоки, файлы
+     * Слот выгрузки занимается до ответа (503 при перегрузке) и освобождается после передачи
+     */
+    @GetMapping(value = "/accessible/export", produces = AccessibleItemExportService.NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportAccessibleItems(
+            @RequestHeader("X-User-Id") String userId,
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(required = false) List<ItemType> itemType) {
+
+        List<ItemType> itemTypes = itemType == null || itemType.isEmpty()
+                ? List.of(ItemType.FOLDER, ItemType.PROJECT, ItemType.BLOCK, ItemType.FILE)
+                : itemType.stream().distinct().toList();
+
+        log.info("Export accessible items: user={}, tenant={}, types={}", userId, tenantId, itemTypes);
+
+        AccessibleItemExportService.ExportSlot slot = exportService.acquireSlot();
+
+        StreamingResponseBody body = out -> {
+            try (slot) {
+                exportService.export(userId, tenantId, itemTypes, out);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(AccessibleItemExportService.NDJSON_MEDIA_TYPE))
+                .body(body);
+    }
+
     // ==================== СОДЕРЖИМОЕ ПАПКИ ====================
 
     /**
@@ -0,0 +1,45 @@
+package ru.platik777.backauth.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.platik777.backauth.service.JwtKeyRegistry;
+import ru.platik777.backauth.util.TokenDigest;
+
+import java.time.Duration;
+
+/**
+ * Публикация открытых ключей подписи access токенов (JWKS)
+ * Другие сервисы проверяют токены локально вместо /auth/isAuthorization
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+
+    private final JwtKeyRegistry keyRegistry;
+
+    @Value("${app.jwt.jwks.max-age:300}")
+    private long maxAgeSeconds;
+
+    /**
+     * GET /.well-known/jwks.json
+     * Готовый JSON из реестра ключей, кэшируется клиентами на max-age,
+     * ETag позволяет перепроверку без тела ответа
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<String> getJwks() {
+        String jwks = keyRegistry.getJwksJson();
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic())
+                .eTag(TokenDigest.of(jwks))
+                .body(jwks);
+    }
+}
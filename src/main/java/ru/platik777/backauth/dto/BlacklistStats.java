@@ -4,5 +4,13 @@ public record BlacklistStats(
         int totalTokens,
         long activeTokens,
         long expiredTokens,
-        long tokenLifetimeMinutes
+        long tokenLifetimeMinutes,
+        long totalAdded,
+        long totalExpired,
+        double bloomTargetFalsePositiveRate,
+        double bloomEstimatedFalsePositiveRate,
+        long bloomBits,
+        int bloomHashFunctions,
+        long bloomNegativeLookups,
+        long bloomFalsePositives
 ) {}
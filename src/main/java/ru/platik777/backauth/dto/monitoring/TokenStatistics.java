@@ -11,4 +11,12 @@ public class TokenStatistics {
     private Long activeBlacklistedTokens;
     private Long expiredBlacklistedTokens;
     private Long tokenLifetimeMinutes;
+    private Long blacklistedTokensAdded;
+    private Long blacklistedTokensExpired;
+    private Double bloomTargetFalsePositiveRate;
+    private Double bloomEstimatedFalsePositiveRate;
+    private Long bloomBits;
+    private Integer bloomHashFunctions;
+    private Long bloomNegativeLookups;
+    private Long bloomFalsePositives;
 }
@@ -6,4 +6,6 @@ import lombok.Data;
 public class ApiKeyCreateRequest {
     private String name;
     private String expireAt;
+    private Double rateLimit;
+    private Integer rateLimitBurst;
 }
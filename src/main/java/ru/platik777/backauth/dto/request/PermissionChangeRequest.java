@@ -0,0 +1,51 @@
+package ru.platik777.backauth.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.platik777.backauth.entity.types.ItemType;
+
+/**
+ * Одно изменение прав доступа в массовом запросе
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PermissionChangeRequest {
+
+    /**
+     * Операция над грантом пользователя
+     */
+    public enum Operation {
+        GRANT,
+        UPDATE,
+        REVOKE
+    }
+
+    /**
+     * Операция (GRANT, UPDATE, REVOKE)
+     */
+    private Operation operation;
+
+    /**
+     * ID пользователя, чьи права изменяются
+     */
+    private String targetUserId;
+
+    /**
+     * ID элемента
+     */
+    private String itemId;
+
+    /**
+     * Тип элемента (PROJECT, FOLDER, FILE, BLOCK)
+     */
+    private ItemType itemType;
+
+    /**
+     * Битовая маска прав (0-7), для REVOKE не используется
+     */
+    private Short permissions;
+}
@@ -0,0 +1,27 @@
+package ru.platik777.backauth.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.platik777.backauth.entity.types.TokenType;
+
+/**
+ * Один токен в пакетной проверке
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenIntrospectionRequest {
+
+    /**
+     * JWT токен
+     */
+    private String token;
+
+    /**
+     * Тип токена (APP_ACCESS, BASE_ACCESS, APP_REFRESH, BASE_REFRESH)
+     */
+    private TokenType tokenType;
+}
@@ -0,0 +1,42 @@
+package ru.platik777.backauth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO для результата проверки одного API ключа в пакетном запросе
+ * Результаты возвращаются в порядке запроса
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApiKeyBatchCheckResponse {
+
+    /**
+     * Позиция ключа в запросе
+     */
+    private Integer index;
+
+    /**
+     * Ключ принят
+     */
+    private Boolean valid;
+
+    /**
+     * Результат как у /api/v1/key/check (только для принятого ключа)
+     */
+    private ApiKeyAuthResponse authorization;
+
+    /**
+     * Причина, если ключ не прошел проверку
+     */
+    private String message;
+
+    /**
+     * Через сколько секунд повторить, если исчерпан лимит частоты
+     */
+    private Long retryAfterSeconds;
+}
@@ -22,6 +22,10 @@ public class ApiKeyResponse {
     private LocalDateTime expireAt;
     private LocalDateTime createdAt;
     private Boolean isDeleted;
+    private Double rateLimit;
+    private Integer rateLimitBurst;
+    private Long usageCount;
+    private LocalDateTime lastUsedAt;
 
     public static ApiKeyResponse fromApiKey(ApiKey apiKey) {
         return ApiKeyResponse.builder()
@@ -31,6 +35,8 @@ public class ApiKeyResponse {
                 .expireAt(LocalDateTime.from(apiKey.getExpireAt()))
                 .createdAt(LocalDateTime.from(apiKey.getCreatedAt()))
                 .isDeleted(apiKey.getIsDeleted())
+                .rateLimit(apiKey.getRateLimit())
+                .rateLimitBurst(apiKey.getRateLimitBurst())
                 .build();
     }
 }
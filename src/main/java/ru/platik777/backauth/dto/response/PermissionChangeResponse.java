@@ -0,0 +1,64 @@
+package ru.platik777.backauth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO для результата одного изменения прав в массовом запросе
+ * Результаты возвращаются в порядке запроса
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PermissionChangeResponse {
+
+    /**
+     * Итог применения изменения
+     */
+    public enum Status {
+        APPLIED,
+        ALREADY_EXISTS,
+        NOT_FOUND,
+        USER_NOT_FOUND,
+        FORBIDDEN,
+        INVALID
+    }
+
+    /**
+     * Позиция изменения в запросе
+     */
+    private Integer index;
+
+    /**
+     * Операция (GRANT, UPDATE, REVOKE)
+     */
+    private String operation;
+
+    /**
+     * ID пользователя, чьи права изменяются
+     */
+    private String targetUserId;
+
+    /**
+     * ID элемента
+     */
+    private String itemId;
+
+    /**
+     * Тип элемента
+     */
+    private String itemType;
+
+    /**
+     * Итог применения
+     */
+    private Status status;
+
+    /**
+     * Описание причины, если изменение не применено
+     */
+    private String message;
+}
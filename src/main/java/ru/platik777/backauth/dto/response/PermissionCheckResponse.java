@@ -13,6 +13,16 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class PermissionCheckResponse {
+
+    /**
+     * Итог проверки
+     */
+    public enum Status {
+        ALLOWED,
+        DENIED,
+        INVALID
+    }
+
     /**
      * ID пользователя
      */
@@ -38,6 +48,11 @@ public class PermissionCheckResponse {
      */
     private Boolean hasPermission;
 
+    /**
+     * Итог проверки (INVALID - запрос не может быть проверен, см. message)
+     */
+    private Status status;
+
     /**
      * Описание причины отказа (если нет доступа)
      */
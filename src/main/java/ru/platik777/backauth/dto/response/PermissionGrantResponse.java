@@ -0,0 +1,46 @@
+package ru.platik777.backauth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.platik777.backauth.entity.types.ItemType;
+
+/**
+ * DTO для ответа на выдачу/изменение прав доступа пользователя
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PermissionGrantResponse {
+    /**
+     * ID записи прав (item_user_permission)
+     */
+    private String id;
+
+    /**
+     * ID пользователя, получившего права
+     */
+    private String userId;
+
+    /**
+     * ID элемента
+     */
+    private String itemId;
+
+    /**
+     * Тип элемента
+     */
+    private ItemType itemType;
+
+    /**
+     * Битовая маска прав доступа (0-7)
+     */
+    private Short permissions;
+
+    /**
+     * true - запись создана, false - изменена существующая
+     */
+    private Boolean created;
+}
@@ -0,0 +1,52 @@
+package ru.platik777.backauth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO для результата проверки одного токена в пакетном запросе
+ * Результаты возвращаются в порядке запроса
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenIntrospectionResponse {
+
+    /**
+     * Позиция токена в запросе
+     */
+    private Integer index;
+
+    /**
+     * Тип токена
+     */
+    private String tokenType;
+
+    /**
+     * Результат как у /auth/isAuthorization: status OK и userId или status INVALID
+     */
+    private AuthorizationResponse authorization;
+
+    /**
+     * ID тенанта из токена
+     */
+    private String tenantId;
+
+    /**
+     * Токен в черном списке
+     */
+    private Boolean blacklisted;
+
+    /**
+     * Момент истечения токена (epoch millis)
+     */
+    private Long expiresAt;
+
+    /**
+     * Причина, если токен не прошел проверку
+     */
+    private String message;
+}
@@ -19,9 +19,15 @@ public class ApiKey extends BaseEntity {
     @GeneratedValue(strategy = GenerationType.UUID)
     private String id;
 
-    @Column(name = "api_key", nullable = false, unique = true, length = 255)
+    @Column(name = "api_key", nullable = false, length = 255)
     private String apiKey;
 
+    /**
+     * TokenDigest.of(apiKey) - поиск ключа по уникальному индексу фиксированной длины
+     */
+    @Column(name = "api_key_digest", nullable = false, unique = true, length = 43)
+    private String apiKeyDigest;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -34,4 +40,16 @@ public class ApiKey extends BaseEntity {
 
     @Column(name = "is_deleted")
     private Boolean isDeleted = false;
+
+    /**
+     * Лимит проверок ключа, запросов в секунду (null - app.rate-limit.api-key.rate)
+     */
+    @Column(name = "rate_limit")
+    private Double rateLimit;
+
+    /**
+     * Допустимый всплеск проверок ключа (null - app.rate-limit.api-key.burst)
+     */
+    @Column(name = "rate_limit_burst")
+    private Integer rateLimitBurst;
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package ru.platik777.backauth.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import java.io.Serializable;
+
+/**
+ * Материализованные эффективные права пользователя на элемент
+ * Поддерживается триггерами в БД при изменении грантов, членства в группах и элементов
+ * (changelog-effective-permission-sync.xml)
+ * и не содержит аудит-полей BaseEntity
+ */
+@Entity
+@Table(name = "effective_permission")
+@IdClass(EffectivePermission.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EffectivePermission {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "item_type", nullable = false, length = 20)
+    private ItemType itemType;
+
+    @Id
+    @Column(name = "item_id", nullable = false)
+    private String itemId;
+
+    @Column(nullable = false)
+    private Short permission;
+
+    @Column(name = "source_grant_id", nullable = false)
+    private String sourceGrantId;
+
+    @Column(name = "tenant_id")
+    private String tenantId;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private String userId;
+        private ItemType itemType;
+        private String itemId;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.platik777.backauth.exception;
+
+import lombok.Getter;
+
+/**
+ * Превышен лимит запросов (429 Too Many Requests)
+ */
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+
+    /**
+     * Через сколько секунд повторить запрос (заголовок Retry-After)
+     */
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
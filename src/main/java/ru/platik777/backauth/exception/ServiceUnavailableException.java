@@ -0,0 +1,20 @@
+package ru.platik777.backauth.exception;
+
+import lombok.Getter;
+
+/**
+ * Сервис временно перегружен (503 Service Unavailable)
+ */
+@Getter
+public class ServiceUnavailableException extends RuntimeException {
+
+    /**
+     * Через сколько секунд повторить запрос (заголовок Retry-After)
+     */
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
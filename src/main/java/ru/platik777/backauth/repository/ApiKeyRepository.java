@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -19,15 +20,48 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, String> {
     List<ApiKey> findByUserIdAndIsDeletedFalse(String user_id);
 
     /**
-     * CheckApiKey - проверка существования активного API ключа
+     * CheckApiKey - активный API ключ по digest (TokenDigest.of(apiKey)): ID и лимиты частоты
      */
-    boolean existsByApiKeyAndUserIdAndIsDeletedFalse(String apiKey, String user_id);
+    @Query(value = """
+        SELECT id AS id, user_id AS userId, api_key_digest AS digest,
+               rate_limit AS rateLimit, rate_limit_burst AS rateLimitBurst
+        FROM api_key
+        WHERE api_key_digest = :digest AND user_id = :userId AND is_deleted = false
+        """, nativeQuery = true)
+    Optional<ActiveApiKey> findActiveByDigest(@Param("digest") String digest, @Param("userId") String userId);
 
     /**
-     * DeleteApiKey - мягкое удаление API ключа
+     * CheckApiKeyBatch - активные API ключи по набору digest одним запросом
+     * Владельца ключа сверяет вызывающий код с userId из токена
+     */
+    @Query(value = """
+        SELECT id AS id, user_id AS userId, api_key_digest AS digest,
+               rate_limit AS rateLimit, rate_limit_burst AS rateLimitBurst
+        FROM api_key
+        WHERE api_key_digest = ANY(:digests) AND is_deleted = false
+        """, nativeQuery = true)
+    List<ActiveApiKey> findActiveByDigests(@Param("digests") String[] digests);
+
+    /**
+     * DeleteApiKey - мягкое удаление API ключа по digest
      */
     @Modifying
     @Query("UPDATE ApiKey ak SET ak.isDeleted = true " +
-            "WHERE ak.apiKey = :apiKey AND ak.user.id = :userId AND ak.isDeleted = false")
-    int softDeleteByApiKeyAndUserId(@Param("apiKey") String apiKey, @Param("userId") String userId);
+            "WHERE ak.apiKeyDigest = :digest AND ak.user.id = :userId AND ak.isDeleted = false")
+    int softDeleteByDigestAndUserId(@Param("digest") String digest, @Param("userId") String userId);
+
+    /**
+     * Проекция активного API ключа для проверки
+     */
+    interface ActiveApiKey {
+        String getId();
+
+        String getUserId();
+
+        String getDigest();
+
+        Double getRateLimit();
+
+        Integer getRateLimitBurst();
+    }
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import java.util.List;
 /**
  * Репозиторий для работы с блоками
  * Включает методы получения блоков с учетом прав доступа пользователей
+ * Списки и подсчеты читают материализованные права из effective_permission
  */
 @Repository
 public interface BlockRepository extends JpaRepository<Block, String> {
@@ -21,27 +22,15 @@ public interface BlockRepository extends JpaRepository<Block, String> {
      * Получить права для нескольких блоков одновременно
      */
     @Query(value = """
-        SELECT DISTINCT ON (b.id)
+        SELECT
             b.id as block_id,
-            COALESCE(iup.permission, 0) as permissions
+            COALESCE(ep.permission, 0) as permissions
         FROM block b
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.block_id = b.id
-                OR iup.folder_id = b.folder_id
-                OR (b.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.block_id = b.id THEN -1
-                    WHEN iup.folder_id = b.folder_id THEN 0
-                    ELSE array_position(b.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        LEFT JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'BLOCK'
+            AND ep.item_id = b.id
+        )
         WHERE b.id = ANY(:blockIds)
         """, nativeQuery = true)
     List<Object[]> findEffectivePermissionsForBlocks(
@@ -62,27 +51,15 @@ public interface BlockRepository extends JpaRepository<Block, String> {
             b.created_at,
             b.updated_at,
             b.tenant_id,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM block b
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.block_id = b.id
-                OR iup.folder_id = b.folder_id
-                OR (b.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.block_id = b.id THEN -1
-                    WHEN iup.folder_id = b.folder_id THEN 0
-                    ELSE array_position(b.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'BLOCK'
+            AND ep.item_id = b.id
+        )
         WHERE b.tenant_id = :tenantId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY b.rank, b.created_at
         """, nativeQuery = true)
     List<Object[]> findAllAccessibleBlocks(
@@ -90,6 +67,42 @@ public interface BlockRepository extends JpaRepository<Block, String> {
             @Param("tenantId") String tenantId
     );
 
+    /**
+     * Страница доступных блоков (keyset-пагинация по rank, created_at, id)
+     * Возвращает строки строго после курсора (afterRank, afterCreatedAt, afterId)
+     * NULL в rank/created_at сортируются последними, как в findAllAccessibleBlocks
+     */
+    @Query(value = """
+        SELECT
+            b.id,
+            b.folder_id,
+            b.rank,
+            b.created_at,
+            b.updated_at,
+            b.tenant_id,
+            ep.permission as effective_permissions
+        FROM block b
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'BLOCK'
+            AND ep.item_id = b.id
+        )
+        WHERE b.tenant_id = :tenantId
+        AND ep.permission > 0
+        AND (COALESCE(b.rank, 2147483647), COALESCE(b.created_at, CAST('infinity' AS TIMESTAMP)), b.id)
+            > (:afterRank, CAST(:afterCreatedAt AS TIMESTAMP), :afterId)
+        ORDER BY COALESCE(b.rank, 2147483647), COALESCE(b.created_at, CAST('infinity' AS TIMESTAMP)), b.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findAccessibleBlocksPage(
+            @Param("userId") String userId,
+            @Param("tenantId") String tenantId,
+            @Param("afterRank") int afterRank,
+            @Param("afterCreatedAt") String afterCreatedAt,
+            @Param("afterId") String afterId,
+            @Param("limit") int limit
+    );
+
     // ==================== ПОЛУЧЕНИЕ БЛОКОВ В ПАПКЕ ====================
 
     /**
@@ -101,27 +114,15 @@ public interface BlockRepository extends JpaRepository<Block, String> {
             b.folder_id,
             b.rank,
             b.created_at,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM block b
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.block_id = b.id
-                OR iup.folder_id = b.folder_id
-                OR (b.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.block_id = b.id THEN -1
-                    WHEN iup.folder_id = b.folder_id THEN 0
-                    ELSE array_position(b.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'BLOCK'
+            AND ep.item_id = b.id
+        )
         WHERE b.folder_id = :folderId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY b.rank, b.created_at
         """, nativeQuery = true)
     List<Object[]> findBlocksInFolderWithPermissions(
@@ -135,18 +136,13 @@ public interface BlockRepository extends JpaRepository<Block, String> {
      * Подсчитать количество блоков с минимальным уровнем доступа
      */
     @Query(value = """
-        SELECT COUNT(DISTINCT b.id)
-        FROM block b
-        INNER JOIN item_user_permission iup ON (
-            iup.user_id = :userId
-            AND (
-                iup.block_id = b.id
-                OR iup.folder_id = b.folder_id
-                OR (b.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            AND (iup.permission & :minPermissionMask) > 0
-        )
-        WHERE b.tenant_id = :tenantId
+        SELECT COUNT(*)
+        FROM effective_permission ep
+        INNER JOIN block b ON b.id = ep.item_id
+        WHERE ep.user_id = :userId
+        AND ep.item_type = 'BLOCK'
+        AND ep.tenant_id = :tenantId
+        AND (ep.permission & :minPermissionMask) > 0
         """, nativeQuery = true)
     long countAccessibleBlocks(
             @Param("userId") String userId,
@@ -11,6 +11,7 @@ import java.util.List;
 /**
  * Репозиторий для работы с файлами
  * Включает методы получения файлов с учетом прав доступа пользователей
+ * Списки и подсчеты читают материализованные права из effective_permission
  */
 @Repository
 public interface FileRepository extends JpaRepository<File, String> {
@@ -21,27 +22,15 @@ public interface FileRepository extends JpaRepository<File, String> {
      * Получить права для нескольких файлов одновременно
      */
     @Query(value = """
-        SELECT DISTINCT ON (f.id)
+        SELECT
             f.id as file_id,
-            COALESCE(iup.permission, 0) as permissions
+            COALESCE(ep.permission, 0) as permissions
         FROM file f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.file_id = f.id
-                OR iup.folder_id = f.folder_id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.file_id = f.id THEN -1
-                    WHEN iup.folder_id = f.folder_id THEN 0
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        LEFT JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FILE'
+            AND ep.item_id = f.id
+        )
         WHERE f.id = ANY(:fileIds)
         """, nativeQuery = true)
     List<Object[]> findEffectivePermissionsForFiles(
@@ -62,27 +51,15 @@ public interface FileRepository extends JpaRepository<File, String> {
             f.created_at,
             f.updated_at,
             f.tenant_id,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM file f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.file_id = f.id
-                OR iup.folder_id = f.folder_id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.file_id = f.id THEN -1
-                    WHEN iup.folder_id = f.folder_id THEN 0
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FILE'
+            AND ep.item_id = f.id
+        )
         WHERE f.tenant_id = :tenantId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY f.rank, f.created_at
         """, nativeQuery = true)
     List<Object[]> findAllAccessibleFiles(
@@ -90,6 +67,42 @@ public interface FileRepository extends JpaRepository<File, String> {
             @Param("tenantId") String tenantId
     );
 
+    /**
+     * Страница доступных файлов (keyset-пагинация по rank, created_at, id)
+     * Возвращает строки строго после курсора (afterRank, afterCreatedAt, afterId)
+     * NULL в rank/created_at сортируются последними, как в findAllAccessibleFiles
+     */
+    @Query(value = """
+        SELECT
+            f.id,
+            f.folder_id,
+            f.rank,
+            f.created_at,
+            f.updated_at,
+            f.tenant_id,
+            ep.permission as effective_permissions
+        FROM file f
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FILE'
+            AND ep.item_id = f.id
+        )
+        WHERE f.tenant_id = :tenantId
+        AND ep.permission > 0
+        AND (COALESCE(f.rank, 2147483647), COALESCE(f.created_at, CAST('infinity' AS TIMESTAMP)), f.id)
+            > (:afterRank, CAST(:afterCreatedAt AS TIMESTAMP), :afterId)
+        ORDER BY COALESCE(f.rank, 2147483647), COALESCE(f.created_at, CAST('infinity' AS TIMESTAMP)), f.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findAccessibleFilesPage(
+            @Param("userId") String userId,
+            @Param("tenantId") String tenantId,
+            @Param("afterRank") int afterRank,
+            @Param("afterCreatedAt") String afterCreatedAt,
+            @Param("afterId") String afterId,
+            @Param("limit") int limit
+    );
+
     // ==================== ПОЛУЧЕНИЕ ФАЙЛОВ В ПАПКЕ ====================
 
     /**
@@ -101,27 +114,15 @@ public interface FileRepository extends JpaRepository<File, String> {
             f.folder_id,
             f.rank,
             f.created_at,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM file f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.file_id = f.id
-                OR iup.folder_id = f.folder_id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.file_id = f.id THEN -1
-                    WHEN iup.folder_id = f.folder_id THEN 0
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FILE'
+            AND ep.item_id = f.id
+        )
         WHERE f.folder_id = :folderId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY f.rank, f.created_at
         """, nativeQuery = true)
     List<Object[]> findFilesInFolderWithPermissions(
@@ -11,6 +11,7 @@ import java.util.List;
 /**
  * Репозиторий для работы с папками
  * Включает методы получения папок с учетом прав доступа пользователей
+ * Списки и подсчеты читают материализованные права из effective_permission
  */
 @Repository
 public interface FolderRepository extends JpaRepository<Folder, String> {
@@ -21,25 +22,15 @@ public interface FolderRepository extends JpaRepository<Folder, String> {
      * Получить права для нескольких папок одновременно
      */
     @Query(value = """
-        SELECT DISTINCT ON (f.id)
+        SELECT
             f.id as folder_id,
-            COALESCE(iup.permission, 0) as permissions
+            COALESCE(ep.permission, 0) as permissions
         FROM folder f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.folder_id = f.id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.folder_id = f.id THEN -1
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        LEFT JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FOLDER'
+            AND ep.item_id = f.id
+        )
         WHERE f.id = ANY(:folderIds)
         """, nativeQuery = true)
     List<Object[]> findEffectivePermissionsForFolders(
@@ -62,25 +53,15 @@ public interface FolderRepository extends JpaRepository<Folder, String> {
             f.created_at,
             f.updated_at,
             f.tenant_id,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM folder f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.folder_id = f.id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.folder_id = f.id THEN -1
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FOLDER'
+            AND ep.item_id = f.id
+        )
         WHERE f.tenant_id = :tenantId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY f.rank, f.created_at
         """, nativeQuery = true)
     List<Object[]> findAllAccessibleFolders(
@@ -88,6 +69,44 @@ public interface FolderRepository extends JpaRepository<Folder, String> {
             @Param("tenantId") String tenantId
     );
 
+    /**
+     * Страница доступных папок (keyset-пагинация по rank, created_at, id)
+     * Возвращает строки строго после курсора (afterRank, afterCreatedAt, afterId)
+     * NULL в rank/created_at сортируются последними, как в findAllAccessibleFolders
+     */
+    @Query(value = """
+        SELECT
+            f.id,
+            f.name,
+            f.parent_id,
+            f.rank,
+            f.has_children,
+            f.created_at,
+            f.updated_at,
+            f.tenant_id,
+            ep.permission as effective_permissions
+        FROM folder f
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FOLDER'
+            AND ep.item_id = f.id
+        )
+        WHERE f.tenant_id = :tenantId
+        AND ep.permission > 0
+        AND (COALESCE(f.rank, 2147483647), COALESCE(f.created_at, CAST('infinity' AS TIMESTAMP)), f.id)
+            > (:afterRank, CAST(:afterCreatedAt AS TIMESTAMP), :afterId)
+        ORDER BY COALESCE(f.rank, 2147483647), COALESCE(f.created_at, CAST('infinity' AS TIMESTAMP)), f.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findAccessibleFoldersPage(
+            @Param("userId") String userId,
+            @Param("tenantId") String tenantId,
+            @Param("afterRank") int afterRank,
+            @Param("afterCreatedAt") String afterCreatedAt,
+            @Param("afterId") String afterId,
+            @Param("limit") int limit
+    );
+
     // ==================== ПОЛУЧЕНИЕ ДОЧЕРНИХ ПАПОК ====================
 
     /**
@@ -101,29 +120,186 @@ public interface FolderRepository extends JpaRepository<Folder, String> {
             f.rank,
             f.has_children,
             f.created_at,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM folder f
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.folder_id = f.id
-                OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.folder_id = f.id THEN -1
-                    ELSE array_position(f.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'FOLDER'
+            AND ep.item_id = f.id
+        )
         WHERE f.parent_id = :parentFolderId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY f.rank, f.created_at
         """, nativeQuery = true)
     List<Object[]> findSubfoldersWithPermissions(
             @Param("userId") String userId,
             @Param("parentFolderId") String parentFolderId
     );
-}
\ No newline at end of file
+
+    // ==================== СОДЕРЖИМОЕ ПАПКИ ОДНИМ ЗАПРОСОМ ====================
+
+    /**
+     * Получить дочерние папки, проекты, блоки и файлы папки с правами доступа одним запросом
+     * <p/>
+     * Цепочка наследования вычисляется один раз - для самой папки (parent).
+     * Для дочернего элемента ближайший уровень - его прямой грант (пользователя,
+     * иначе объединение грантов групп), а без прямого гранта права равны правам папки
+     * <p/>
+     * Возвращает (item_type, id, name, parent_id, rank, has_children, created_at, effective_permissions)
+     */
+    @Query(value = """
+        WITH parent AS (
+            SELECT COALESCE((
+                SELECT
+                    CASE
+                        WHEN g.is_group THEN bit_or(g.permission) OVER (PARTITION BY g.level, g.is_group)
+                        ELSE g.permission
+                    END
+                FROM (
+                    SELECT
+                        iup.permission,
+                        false AS is_group,
+                        CASE
+                            WHEN iup.folder_id = :folderId THEN -1
+                            ELSE array_position(f.all_parent_ids, iup.folder_id)
+                        END AS level
+                    FROM item_user_permission iup
+                    INNER JOIN folder f ON f.id = :folderId
+                    WHERE iup.user_id = :userId
+                    AND (
+                        iup.folder_id = :folderId
+                        OR (f.all_parent_ids @> ARRAY[iup.folder_id])
+                    )
+                    UNION ALL
+                    SELECT
+                        igp.permission,
+                        true AS is_group,
+                        CASE
+                            WHEN igp.folder_id = :folderId THEN -1
+                            ELSE array_position(f.all_parent_ids, igp.folder_id)
+                        END AS level
+                    FROM item_group_permission igp
+                    INNER JOIN folder f ON f.id = :folderId
+                    WHERE igp.group_id = ANY(:groupIds)
+                    AND (
+                        igp.folder_id = :folderId
+                        OR (f.all_parent_ids @> ARRAY[igp.folder_id])
+                    )
+                ) g
+                ORDER BY g.level ASC NULLS LAST, g.is_group
+                LIMIT 1
+            ), 0) AS permission
+        ),
+        children AS (
+            SELECT
+                'FOLDER' AS item_type,
+                f.id,
+                f.name AS name,
+                f.parent_id AS parent_id,
+                f.rank,
+                f.has_children AS has_children,
+                f.created_at,
+                (
+                    SELECT iup.permission
+                    FROM item_user_permission iup
+                    WHERE iup.user_id = :userId
+                    AND iup.folder_id = f.id
+                ) AS user_permission,
+                (
+                    SELECT bit_or(igp.permission)
+                    FROM item_group_permission igp
+                    WHERE igp.group_id = ANY(:groupIds)
+                    AND igp.folder_id = f.id
+                ) AS group_permission
+            FROM folder f
+            WHERE f.parent_id = :folderId
+            UNION ALL
+            SELECT
+                'PROJECT' AS item_type,
+                p.id,
+                NULL AS name,
+                p.folder_id AS parent_id,
+                p.rank,
+                NULL AS has_children,
+                p.created_at,
+                (
+                    SELECT iup.permission
+                    FROM item_user_permission iup
+                    WHERE iup.user_id = :userId
+                    AND iup.project_id = p.id
+                ) AS user_permission,
+                (
+                    SELECT bit_or(igp.permission)
+                    FROM item_group_permission igp
+                    WHERE igp.group_id = ANY(:groupIds)
+                    AND igp.project_id = p.id
+                ) AS group_permission
+            FROM project p
+            WHERE p.folder_id = :folderId
+            UNION ALL
+            SELECT
+                'BLOCK' AS item_type,
+                b.id,
+                NULL AS name,
+                b.folder_id AS parent_id,
+                b.rank,
+                NULL AS has_children,
+                b.created_at,
+                (
+                    SELECT iup.permission
+                    FROM item_user_permission iup
+                    WHERE iup.user_id = :userId
+                    AND iup.block_id = b.id
+                ) AS user_permission,
+                (
+                    SELECT bit_or(igp.permission)
+                    FROM item_group_permission igp
+                    WHERE igp.group_id = ANY(:groupIds)
+                    AND igp.block_id = b.id
+                ) AS group_permission
+            FROM block b
+            WHERE b.folder_id = :folderId
+            UNION ALL
+            SELECT
+                'FILE' AS item_type,
+                fl.id,
+                NULL AS name,
+                fl.folder_id AS parent_id,
+                fl.rank,
+                NULL AS has_children,
+                fl.created_at,
+                (
+                    SELECT iup.permission
+                    FROM item_user_permission iup
+                    WHERE iup.user_id = :userId
+                    AND iup.file_id = fl.id
+                ) AS user_permission,
+                (
+                    SELECT bit_or(igp.permission)
+                    FROM item_group_permission igp
+                    WHERE igp.group_id = ANY(:groupIds)
+                    AND igp.file_id = fl.id
+                ) AS group_permission
+            FROM file fl
+            WHERE fl.folder_id = :folderId
+        )
+        SELECT
+            c.item_type,
+            c.id,
+            c.name,
+            c.parent_id,
+            c.rank,
+            c.has_children,
+            c.created_at,
+            COALESCE(c.user_permission, c.group_permission, parent.permission) as effective_permissions
+        FROM children c
+        CROSS JOIN parent
+        WHERE COALESCE(c.user_permission, c.group_permission, parent.permission) > 0
+        ORDER BY c.item_type, c.rank, c.created_at
+        """, nativeQuery = true)
+    List<Object[]> findFolderContentsWithPermissions(
+            @Param("userId") String userId,
+            @Param("folderId") String folderId,
+            @Param("groupIds") String[] groupIds
+    );
+}
@@ -1,11 +1,13 @@
 package ru.platik777.backauth.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.platik777.backauth.entity.ItemUserPermission;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -17,6 +19,14 @@ import java.util.Optional;
  * - BlockRepository - для работы с блоками
  * - FileRepository - для работы с файлами
  * - FolderRepository - для работы с папками
+ *
+ * Эффективные права учитывают гранты групп (item_group_permission) по правилу
+ * ближайшего уровня: прямой грант, грант на folder_id, затем all_parent_ids.
+ * На одном уровне грант пользователя важнее групповых, гранты нескольких групп
+ * одного уровня объединяются (bit_or). Правило реализовано один раз -
+ * в SQL функции resolve_effective_permissions (changelog-group-permission.xml)
+ *
+ * Запись грантов - по одному запросу: INSERT ... ON CONFLICT / UPDATE ... RETURNING / DELETE
  */
 @Repository
 public interface ItemUserPermissionRepository extends JpaRepository<ItemUserPermission, String> {
@@ -31,112 +41,52 @@ public interface ItemUserPermissionRepository extends JpaRepository<ItemUserPerm
 
     Optional<ItemUserPermission> findByUserIdAndBlockId(String userId, String blockId);
 
-    // ==================== ПОЛУЧЕНИЕ ЭФФЕКТИВНЫХ ПРАВ (для одного элемента) ====================
+    // ==================== ПОЛУЧЕНИЕ ЭФФЕКТИВНЫХ ПРАВ ====================
 
     /**
-     * Получить эффективные права на проект (возвращает только битовую маску)
-     * Учитывает наследование от родительских папок
+     * Получить эффективные права на элемент (возвращает только битовую маску)
+     * Учитывает наследование от родительских папок и гранты групп пользователя
+     *
+     * @param groupIds группы пользователя (GroupMembershipService) - гранты групп читаются без group_user
+     * @param itemType FOLDER, PROJECT, BLOCK или FILE
+     * @return битовая маска или null, если грантов нет
      */
     @Query(value = """
-        SELECT iup.permission
-        FROM item_user_permission iup
-        INNER JOIN project p ON p.id = :projectId
-        WHERE iup.user_id = :userId
-        AND (
-            iup.project_id = :projectId
-            OR iup.folder_id = p.folder_id
-            OR (p.all_parent_ids @> ARRAY[iup.folder_id])
-        )
-        ORDER BY
-            CASE
-                WHEN iup.project_id = :projectId THEN -1
-                WHEN iup.folder_id = p.folder_id THEN 0
-                ELSE array_position(p.all_parent_ids, iup.folder_id)
-            END ASC NULLS LAST
-        LIMIT 1
+        SELECT rp.permission
+        FROM resolve_effective_permissions(
+            ARRAY[CAST(:userId AS TEXT)], CAST(NULL AS TEXT),
+            ARRAY[CAST(:itemType AS TEXT)], ARRAY[CAST(:itemId AS TEXT)],
+            CAST(:groupIds AS TEXT[])
+        ) rp
         """, nativeQuery = true)
-    Short findEffectivePermissionForProject(
+    Short findEffectivePermission(
             @Param("userId") String userId,
-            @Param("projectId") String projectId
+            @Param("groupIds") String[] groupIds,
+            @Param("itemType") String itemType,
+            @Param("itemId") String itemId
     );
 
     /**
-     * Получить эффективные права на блок
+     * Эффективные права пользователя на набор элементов разных типов одним запросом
+     * itemTypes[i] и itemIds[i] описывают один элемент, groupIds - группы пользователя
+     * Возвращает тройки (item_type, item_id, permission) только для элементов с грантами
      */
     @Query(value = """
-        SELECT iup.permission
-        FROM item_user_permission iup
-        INNER JOIN block b ON b.id = :blockId
-        WHERE iup.user_id = :userId
-        AND (
-            iup.block_id = :blockId
-            OR iup.folder_id = b.folder_id
-            OR (b.all_parent_ids @> ARRAY[iup.folder_id])
-        )
-        ORDER BY
-            CASE
-                WHEN iup.block_id = :blockId THEN -1
-                WHEN iup.folder_id = b.folder_id THEN 0
-                ELSE array_position(b.all_parent_ids, iup.folder_id)
-            END ASC NULLS LAST
-        LIMIT 1
+        SELECT rp.item_type, rp.item_id, rp.permission
+        FROM resolve_effective_permissions(
+            ARRAY[CAST(:userId AS TEXT)], CAST(NULL AS TEXT),
+            CAST(:itemTypes AS TEXT[]), CAST(:itemIds AS TEXT[]),
+            CAST(:groupIds AS TEXT[])
+        ) rp
         """, nativeQuery = true)
-    Short findEffectivePermissionForBlock(
+    List<Object[]> findEffectivePermissions(
             @Param("userId") String userId,
-            @Param("blockId") String blockId
+            @Param("groupIds") String[] groupIds,
+            @Param("itemTypes") String[] itemTypes,
+            @Param("itemIds") String[] itemIds
     );
 
-    /**
-     * Получить эффективные права на файл
-     */
-    @Query(value = """
-        SELECT iup.permission
-        FROM item_user_permission iup
-        INNER JOIN file f ON f.id = :fileId
-        WHERE iup.user_id = :userId
-        AND (
-            iup.file_id = :fileId
-            OR iup.folder_id = f.folder_id
-            OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-        )
-        ORDER BY
-            CASE
-                WHEN iup.file_id = :fileId THEN -1
-                WHEN iup.folder_id = f.folder_id THEN 0
-                ELSE array_position(f.all_parent_ids, iup.folder_id)
-            END ASC NULLS LAST
-        LIMIT 1
-        """, nativeQuery = true)
-    Short findEffectivePermissionForFile(
-            @Param("userId") String userId,
-            @Param("fileId") String fileId
-    );
-
-    /**
-     * Получить эффективные права на папку
-     */
-    @Query(value = """
-        SELECT iup.permission
-        FROM item_user_permission iup
-        INNER JOIN folder f ON f.id = :folderId
-        WHERE iup.user_id = :userId
-        AND (
-            iup.folder_id = :folderId
-            OR (f.all_parent_ids @> ARRAY[iup.folder_id])
-        )
-        ORDER BY
-            CASE
-                WHEN iup.folder_id = :folderId THEN -1
-                ELSE array_position(f.all_parent_ids, iup.folder_id)
-            END ASC NULLS LAST
-        LIMIT 1
-        """, nativeQuery = true)
-    Short findEffectivePermissionForFolder(
-            @Param("userId") String userId,
-            @Param("folderId") String folderId
-    );
-
-    // ==================== БЫСТРЫЕ ПРОВЕРКИ ПРАВ (boolean) ====================
+    // ==================== БЫСТРЫЕ ПРОВЕРКИ ПРАВ (boolean, только прямые гранты пользователя) ====================
 
     /**
      * Быстрая проверка наличия определенного права на проект
@@ -256,4 +206,277 @@ public interface ItemUserPermissionRepository extends JpaRepository<ItemUserPerm
             @Param("folderId") String folderId,
             @Param("permissionMask") short permissionMask
     );
-}
\ No newline at end of file
+
+    // ==================== ЗАПИСЬ ГРАНТОВ (один запрос на операцию) ====================
+    // Уникальность (user_id, <item>_id) обеспечивают partial индексы idx_unique_permission_user_*,
+    // поэтому ON CONFLICT указывает тот же предикат WHERE <item>_id IS NOT NULL.
+    // Несуществующие пользователь/элемент дают нарушение FK (fk_permission_*)
+
+    /**
+     * Создать грант на проект, если его еще нет
+     * @return id созданной записи или пусто, если грант уже существует
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, project_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :projectId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, project_id) WHERE project_id IS NOT NULL DO NOTHING
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> insertProjectPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("projectId") String projectId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать грант на папку, если его еще нет
+     * @return id созданной записи или пусто, если грант уже существует
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, folder_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :folderId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, folder_id) WHERE folder_id IS NOT NULL DO NOTHING
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> insertFolderPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("folderId") String folderId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать грант на файл, если его еще нет
+     * @return id созданной записи или пусто, если грант уже существует
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, file_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :fileId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, file_id) WHERE file_id IS NOT NULL DO NOTHING
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> insertFilePermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("fileId") String fileId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать грант на блок, если его еще нет
+     * @return id созданной записи или пусто, если грант уже существует
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, block_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :blockId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, block_id) WHERE block_id IS NOT NULL DO NOTHING
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> insertBlockPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("blockId") String blockId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Изменить существующий грант на проект
+     * @return id записи или пусто, если гранта нет
+     */
+    @Query(value = """
+        UPDATE item_user_permission
+        SET permission = :permission, updated_at = CURRENT_TIMESTAMP
+        WHERE user_id = :userId
+        AND project_id = :projectId
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> updateProjectPermission(
+            @Param("userId") String userId,
+            @Param("projectId") String projectId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Изменить существующий грант на папку
+     * @return id записи или пусто, если гранта нет
+     */
+    @Query(value = """
+        UPDATE item_user_permission
+        SET permission = :permission, updated_at = CURRENT_TIMESTAMP
+        WHERE user_id = :userId
+        AND folder_id = :folderId
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> updateFolderPermission(
+            @Param("userId") String userId,
+            @Param("folderId") String folderId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Изменить существующий грант на файл
+     * @return id записи или пусто, если гранта нет
+     */
+    @Query(value = """
+        UPDATE item_user_permission
+        SET permission = :permission, updated_at = CURRENT_TIMESTAMP
+        WHERE user_id = :userId
+        AND file_id = :fileId
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> updateFilePermission(
+            @Param("userId") String userId,
+            @Param("fileId") String fileId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Изменить существующий грант на блок
+     * @return id записи или пусто, если гранта нет
+     */
+    @Query(value = """
+        UPDATE item_user_permission
+        SET permission = :permission, updated_at = CURRENT_TIMESTAMP
+        WHERE user_id = :userId
+        AND block_id = :blockId
+        RETURNING id
+        """, nativeQuery = true)
+    Optional<String> updateBlockPermission(
+            @Param("userId") String userId,
+            @Param("blockId") String blockId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать или изменить грант на проект
+     * @return [id, inserted] - inserted = true, если запись создана (xmax = 0)
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, project_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :projectId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, project_id) WHERE project_id IS NOT NULL DO UPDATE
+        SET permission = EXCLUDED.permission, updated_at = CURRENT_TIMESTAMP
+        RETURNING id, (xmax = 0) AS inserted
+        """, nativeQuery = true)
+    List<Object[]> upsertProjectPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("projectId") String projectId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать или изменить грант на папку
+     * @return [id, inserted] - inserted = true, если запись создана (xmax = 0)
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, folder_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :folderId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, folder_id) WHERE folder_id IS NOT NULL DO UPDATE
+        SET permission = EXCLUDED.permission, updated_at = CURRENT_TIMESTAMP
+        RETURNING id, (xmax = 0) AS inserted
+        """, nativeQuery = true)
+    List<Object[]> upsertFolderPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("folderId") String folderId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать или изменить грант на файл
+     * @return [id, inserted] - inserted = true, если запись создана (xmax = 0)
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, file_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :fileId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, file_id) WHERE file_id IS NOT NULL DO UPDATE
+        SET permission = EXCLUDED.permission, updated_at = CURRENT_TIMESTAMP
+        RETURNING id, (xmax = 0) AS inserted
+        """, nativeQuery = true)
+    List<Object[]> upsertFilePermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("fileId") String fileId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Создать или изменить грант на блок
+     * @return [id, inserted] - inserted = true, если запись создана (xmax = 0)
+     */
+    @Query(value = """
+        INSERT INTO item_user_permission (id, user_id, block_id, permission, created_at, updated_at)
+        VALUES (:id, :userId, :blockId, :permission, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (user_id, block_id) WHERE block_id IS NOT NULL DO UPDATE
+        SET permission = EXCLUDED.permission, updated_at = CURRENT_TIMESTAMP
+        RETURNING id, (xmax = 0) AS inserted
+        """, nativeQuery = true)
+    List<Object[]> upsertBlockPermission(
+            @Param("id") String id,
+            @Param("userId") String userId,
+            @Param("blockId") String blockId,
+            @Param("permission") short permission
+    );
+
+    /**
+     * Отозвать грант на проект
+     * @return число удаленных записей (0 - гранта нет)
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM item_user_permission
+        WHERE user_id = :userId
+        AND project_id = :projectId
+        """, nativeQuery = true)
+    int deleteProjectPermission(
+            @Param("userId") String userId,
+            @Param("projectId") String projectId
+    );
+
+    /**
+     * Отозвать грант на папку
+     * @return число удаленных записей (0 - гранта нет)
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM item_user_permission
+        WHERE user_id = :userId
+        AND folder_id = :folderId
+        """, nativeQuery = true)
+    int deleteFolderPermission(
+            @Param("userId") String userId,
+            @Param("folderId") String folderId
+    );
+
+    /**
+     * Отозвать грант на файл
+     * @return число удаленных записей (0 - гранта нет)
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM item_user_permission
+        WHERE user_id = :userId
+        AND file_id = :fileId
+        """, nativeQuery = true)
+    int deleteFilePermission(
+            @Param("userId") String userId,
+            @Param("fileId") String fileId
+    );
+
+    /**
+     * Отозвать грант на блок
+     * @return число удаленных записей (0 - гранта нет)
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM item_user_permission
+        WHERE user_id = :userId
+        AND block_id = :blockId
+        """, nativeQuery = true)
+    int deleteBlockPermission(
+            @Param("userId") String userId,
+            @Param("blockId") String blockId
+    );
+}
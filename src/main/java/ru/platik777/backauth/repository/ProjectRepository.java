@@ -11,6 +11,7 @@ import java.util.List;
 /**
  * Репозиторий для работы с проектами
  * Включает методы получения проектов с учетом прав доступа пользователей
+ * Списки и подсчеты читают материализованные права из effective_permission
  */
 @Repository
 public interface ProjectRepository extends JpaRepository<Project, String> {
@@ -22,27 +23,15 @@ public interface ProjectRepository extends JpaRepository<Project, String> {
      * Возвращает пары (project_id, permissions)
      */
     @Query(value = """
-        SELECT DISTINCT ON (p.id)
+        SELECT
             p.id as project_id,
-            COALESCE(iup.permission, 0) as permissions
+            COALESCE(ep.permission, 0) as permissions
         FROM project p
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.project_id = p.id
-                OR iup.folder_id = p.folder_id
-                OR (p.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.project_id = p.id THEN -1
-                    WHEN iup.folder_id = p.folder_id THEN 0
-                    ELSE array_position(p.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        LEFT JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'PROJECT'
+            AND ep.item_id = p.id
+        )
         WHERE p.id = ANY(:projectIds)
         """, nativeQuery = true)
     List<Object[]> findEffectivePermissionsForProjects(
@@ -64,27 +53,15 @@ public interface ProjectRepository extends JpaRepository<Project, String> {
             p.created_at,
             p.updated_at,
             p.tenant_id,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM project p
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.project_id = p.id
-                OR iup.folder_id = p.folder_id
-                OR (p.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.project_id = p.id THEN -1
-                    WHEN iup.folder_id = p.folder_id THEN 0
-                    ELSE array_position(p.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'PROJECT'
+            AND ep.item_id = p.id
+        )
         WHERE p.tenant_id = :tenantId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY p.rank, p.created_at
         """, nativeQuery = true)
     List<Object[]> findAllAccessibleProjects(
@@ -92,6 +69,42 @@ public interface ProjectRepository extends JpaRepository<Project, String> {
             @Param("tenantId") String tenantId
     );
 
+    /**
+     * Страница доступных проектов (keyset-пагинация по rank, created_at, id)
+     * Возвращает строки строго после курсора (afterRank, afterCreatedAt, afterId)
+     * NULL в rank/created_at сортируются последними, как в findAllAccessibleProjects
+     */
+    @Query(value = """
+        SELECT
+            p.id,
+            p.folder_id,
+            p.rank,
+            p.created_at,
+            p.updated_at,
+            p.tenant_id,
+            ep.permission as effective_permissions
+        FROM project p
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'PROJECT'
+            AND ep.item_id = p.id
+        )
+        WHERE p.tenant_id = :tenantId
+        AND ep.permission > 0
+        AND (COALESCE(p.rank, 2147483647), COALESCE(p.created_at, CAST('infinity' AS TIMESTAMP)), p.id)
+            > (:afterRank, CAST(:afterCreatedAt AS TIMESTAMP), :afterId)
+        ORDER BY COALESCE(p.rank, 2147483647), COALESCE(p.created_at, CAST('infinity' AS TIMESTAMP)), p.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findAccessibleProjectsPage(
+            @Param("userId") String userId,
+            @Param("tenantId") String tenantId,
+            @Param("afterRank") int afterRank,
+            @Param("afterCreatedAt") String afterCreatedAt,
+            @Param("afterId") String afterId,
+            @Param("limit") int limit
+    );
+
     // ==================== ПОЛУЧЕНИЕ ПРОЕКТОВ В ПАПКЕ ====================
 
     /**
@@ -103,27 +116,15 @@ public interface ProjectRepository extends JpaRepository<Project, String> {
             p.folder_id,
             p.rank,
             p.created_at,
-            COALESCE(iup.permission, 0) as effective_permissions
+            ep.permission as effective_permissions
         FROM project p
-        LEFT JOIN LATERAL (
-            SELECT iup.permission
-            FROM item_user_permission iup
-            WHERE iup.user_id = :userId
-            AND (
-                iup.project_id = p.id
-                OR iup.folder_id = p.folder_id
-                OR (p.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            ORDER BY
-                CASE
-                    WHEN iup.project_id = p.id THEN -1
-                    WHEN iup.folder_id = p.folder_id THEN 0
-                    ELSE array_position(p.all_parent_ids, iup.folder_id)
-                END ASC NULLS LAST
-            LIMIT 1
-        ) iup ON true
+        INNER JOIN effective_permission ep ON (
+            ep.user_id = :userId
+            AND ep.item_type = 'PROJECT'
+            AND ep.item_id = p.id
+        )
         WHERE p.folder_id = :folderId
-        AND COALESCE(iup.permission, 0) > 0
+        AND ep.permission > 0
         ORDER BY p.rank, p.created_at
         """, nativeQuery = true)
     List<Object[]> findProjectsInFolderWithPermissions(
@@ -137,18 +138,13 @@ public interface ProjectRepository extends JpaRepository<Project, String> {
      * Подсчитать количество проектов с минимальным уровнем доступа
      */
     @Query(value = """
-        SELECT COUNT(DISTINCT p.id)
-        FROM project p
-        INNER JOIN item_user_permission iup ON (
-            iup.user_id = :userId
-            AND (
-                iup.project_id = p.id
-                OR iup.folder_id = p.folder_id
-                OR (p.all_parent_ids @> ARRAY[iup.folder_id])
-            )
-            AND (iup.permission & :minPermissionMask) > 0
-        )
-        WHERE p.tenant_id = :tenantId
+        SELECT COUNT(*)
+        FROM effective_permission ep
+        INNER JOIN project p ON p.id = ep.item_id
+        WHERE ep.user_id = :userId
+        AND ep.item_type = 'PROJECT'
+        AND ep.tenant_id = :tenantId
+        AND (ep.permission & :minPermissionMask) > 0
         """, nativeQuery = true)
     long countAccessibleProjects(
             @Param("userId") String userId,
@@ -2,8 +2,11 @@ package ru.platik777.backauth.repository;
 
 import ru.platik777.backauth.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.platik777.backauth.entity.types.AccountType;
 
 import java.util.List;
@@ -42,4 +45,15 @@ public interface UserRepository extends JpaRepository<User, String> {
     Optional<User> findByLogin(String login);
 
     Optional<User> findByEmail(String email);
+
+    /**
+     * Замена хеша пароля после входа (пересчет в BCrypt / рост стоимости)
+     * Отдельная короткая транзакция; обновляется только если хеш не сменили параллельно
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.passwordHash = :newHash WHERE u.id = :userId AND u.passwordHash = :oldHash")
+    int updatePasswordHash(@Param("userId") String userId,
+                           @Param("oldHash") String oldHash,
+                           @Param("newHash") String newHash);
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+package ru.platik777.backauth.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Быстрая проверка access токенов, выпущенных JwtService.createToken (HS256)
+ * <p/>
+ * - заголовок: {"alg":"HS256"} или {"kid":...,"alg":"HS256"}; разобранные заголовки
+ *   кэшируются (их столько же, сколько ключей в кольце), ключ ищется по kid за O(1)
+ * - HMAC считается по байтам токена переиспользуемым Mac (ThreadLocal, повторный
+ *   init только при смене ключа) и сравнивается с подписью за постоянное время
+ * - подпись принимается только в канонической base64url форме (без '=', с нулевыми
+ *   неиспользуемыми битами): иначе одной подписи соответствуют несколько строк
+ *   токена с разными digest, и черный список по digest обходится
+ * - из payload потоковым парсером Jackson читаются только userId, tenant_id,
+ *   type и exp, без построения Claims и Map
+ * <p/>
+ * Любой нестандартный токен (другой заголовок, неожиданная структура claims,
+ * неверная подпись, истекший exp) дает null - вызывающий код переходит
+ * к полной проверке JJWT, которая и формирует ошибку
+ */
+public final class Hs256TokenVerifier {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+    private static final Base64.Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    // Предел кэша заголовков: больше - значит заголовки подбирают, кэш сбрасывается
+    private static final int MAX_CACHED_HEADERS = 64;
+
+    // Значение для заголовка без kid и для неподходящего заголовка
+    private static final Optional<String> NO_KID = Optional.of("");
+    private static final Optional<String> INVALID_HEADER = Optional.empty();
+
+    private final String expectedType;
+    private final Function<String, SecretKey> keyResolver;
+    private final Map<String, Optional<String>> headerKids = new ConcurrentHashMap<>();
+    private final ThreadLocal<KeyedMac> mac = ThreadLocal.withInitial(KeyedMac::new);
+
+    /**
+     * @param keyResolver ключ по kid ("" - заголовок без kid) или null, если ключа нет
+     */
+    public Hs256TokenVerifier(Function<String, SecretKey> keyResolver, String expectedType) {
+        this.keyResolver = keyResolver;
+        this.expectedType = expectedType;
+    }
+
+    /**
+     * Один ключ, токены без kid
+     */
+    public Hs256TokenVerifier(SecretKey key, String expectedType) {
+        this(kid -> kid.isEmpty() ? key : null, expectedType);
+    }
+
+    /**
+     * Claims access токена
+     */
+    public record AccessClaims(String userId, String tenantId, long expiresAtMillis) {
+    }
+
+    /**
+     * @return claims проверенного токена или null, если нужна полная проверка JJWT
+     */
+    public AccessClaims verify(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (firstDot <= 0 || secondDot < 0 || secondDot == token.length() - 1
+                || token.indexOf('.', secondDot + 1) >= 0) {
+            return null;
+        }
+
+        Optional<String> kid = headerKid(token.substring(0, firstDot));
+        if (kid.isEmpty()) {
+            return null;
+        }
+
+        SecretKey key = keyResolver.apply(kid.get());
+        if (key == null) {
+            return null;
+        }
+
+        byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+
+        byte[] signatureSegment = slice(bytes, secondDot + 1, bytes.length);
+        byte[] signature;
+        byte[] payload;
+        try {
+            signature = BASE64_URL.decode(signatureSegment);
+            payload = BASE64_URL.decode(slice(bytes, firstDot + 1, secondDot));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        // Декодер нестрогий: принимает '=' и ненулевые хвостовые биты
+        if (!Arrays.equals(BASE64_URL_ENCODER.encode(signature), signatureSegment)) {
+            return null;
+        }
+
+        Mac hmac = mac.get().forKey(key);
+        if (hmac == null) {
+            return null;
+        }
+        hmac.update(bytes, 0, secondDot);
+        byte[] expected = hmac.doFinal();
+
+        if (!MessageDigest.isEqual(expected, signature)) {
+            return null;
+        }
+
+        AccessClaims claims = readClaims(payload);
+        if (claims == null || claims.expiresAtMillis() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * kid из заголовка с кэшем по строке заголовка
+     *
+     * @return "" - HS256 без kid, kid - HS256 с kid, empty - заголовок не подходит
+     */
+    private Optional<String> headerKid(String header) {
+        Optional<String> cached = headerKids.get(header);
+        if (cached != null) {
+            return cached;
+        }
+
+        Optional<String> parsed = parseHeader(header);
+        if (headerKids.size() >= MAX_CACHED_HEADERS) {
+            headerKids.clear();
+        }
+        headerKids.put(header, parsed);
+        return parsed;
+    }
+
+    /**
+     * Заголовок: только alg (строго HS256) и необязательный kid
+     */
+    private static Optional<String> parseHeader(String header) {
+        String alg = null;
+        String kid = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(BASE64_URL.decode(header))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return INVALID_HEADER;
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                    return INVALID_HEADER;
+                }
+                switch (field) {
+                    case "alg" -> alg = parser.getText();
+                    case "kid" -> kid = parser.getText();
+                    default -> {
+                        return INVALID_HEADER;
+                    }
+                }
+            }
+
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return INVALID_HEADER;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return INVALID_HEADER;
+        }
+
+        if (!"HS256".equals(alg)) {
+            return INVALID_HEADER;
+        }
+        return kid == null ? NO_KID : Optional.of(kid);
+    }
+
+    /**
+     * Разбор payload: плоский JSON-объект, из которого берутся четыре поля
+     * Вложенные объекты/массивы в известных полях считаются нестандартным токеном
+     */
+    private AccessClaims readClaims(byte[] payload) {
+        String userId = null;
+        String tenantId = null;
+        String type = null;
+        long exp = -1;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "userId" -> {
+                        if (value != JsonToken.VALUE_STRING) {
+                            return null;
+                        }
+                        userId = parser.getText();
+                    }
+                    case "tenant_id" -> {
+                        if (value == JsonToken.VALUE_STRING) {
+                            tenantId = parser.getText();
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                    }
+                    case "type" -> {
+                        if (value != JsonToken.VALUE_STRING) {
+                            return null;
+                        }
+                        type = parser.getText();
+                    }
+                    case "exp" -> {
+                        if (value != JsonToken.VALUE_NUMBER_INT) {
+                            return null;
+                        }
+                        exp = parser.getLongValue();
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (userId == null || exp < 0 || !expectedType.equals(type)) {
+            return null;
+        }
+        return new AccessClaims(userId, tenantId, exp * 1000);
+    }
+
+    /**
+     * Mac потока, инициализированный последним использованным ключом
+     */
+    private static final class KeyedMac {
+
+        private Mac mac;
+        private SecretKey key;
+
+        Mac forKey(SecretKey required) {
+            if (required == key) {
+                return mac;
+            }
+            try {
+                if (mac == null) {
+                    mac = Mac.getInstance("HmacSHA256");
+                }
+                mac.init(required);
+                key = required;
+                return mac;
+            } catch (GeneralSecurityException e) {
+                key = null;
+                return null;
+            }
+        }
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to) {
+        byte[] result = new byte[to - from];
+        System.arraycopy(bytes, from, result, 0, result.length);
+        return result;
+    }
+}
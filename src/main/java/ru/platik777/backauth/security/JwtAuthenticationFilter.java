@@ -18,7 +18,9 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import ru.platik777.backauth.dto.AuthenticatedUser;
 import ru.platik777.backauth.entity.types.TokenType;
 import ru.platik777.backauth.service.JwtService;
-import ru.platik777.backauth.service.KeyService;
+import ru.platik777.backauth.service.TokenBlacklistService;
+import ru.platik777.backauth.service.VerifiedTokenCache;
+import ru.platik777.backauth.util.TokenDigest;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -41,29 +43,11 @@ import java.util.UUID;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final KeyService keyService;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final TokenBlacklistService tokenBlacklistService;
+    private final RouteTable routeTable;
     private final ObjectMapper objectMapper;
 
-    // Публичные endpoint'ы, не требующие токена
-    private static final String[] PUBLIC_ENDPOINTS = {
-            "/auth/signIn",
-            "/auth/signUp",
-            "/api/v1/resetPassword",
-            "/api/v1/auth/checkFieldForUniqueness",
-            "/api/v1/educationalInstitutions",
-            "/api/v1/internal",
-            "/monitor",
-            "/actuator",
-            "/metrics",
-            "/api/v1/key/check",  // Проверка API ключа
-
-            // Swagger UI и документация
-            "/swagger-ui",
-            "/v3/api-docs",
-            "/swagger-resources",
-            "/webjars"
-    };
-
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
@@ -71,8 +55,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String requestPath = request.getRequestURI();
 
+        // Публичность и тип токена - один поиск в RouteTable
+        RouteTable.Route route = routeTable.resolve(requestPath);
+
         // 1. Пропускаем публичные endpoint'ы БЕЗ проверки токена
-        if (isPublicEndpoint(requestPath)) {
+        if (route.publicRoute()) {
             filterChain.doFilter(request, response);
             return;
         }
@@ -94,8 +81,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            // 3. Определяем тип токена по пути
-            TokenType tokenType = determineTokenType(requestPath);
+            // 3. Тип токена по маршруту
+            TokenType tokenType = route.tokenType();
 
             // 4. Валидируем токен соответствующим ключом
             AuthenticatedUser authenticatedUser = validateToken(token, tokenType);
@@ -140,55 +127,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     }
 
     /**
-     * Проверка, является ли endpoint публичным
+     * Валидация токена соответствующим ключом
+     * Ключ и парсер берутся готовыми из JwtKeyRegistry,
+     * повторно предъявленный токен берется из VerifiedTokenCache без разбора
+     * Digest токена считается один раз и служит ключом и черного списка, и кэша
      */
-    private boolean isPublicEndpoint(String path) {
-        for (String publicPath : PUBLIC_ENDPOINTS) {
-            if (path.startsWith(publicPath)) {
-                return true;
+    private AuthenticatedUser validateToken(String token, TokenType tokenType) {
+        try {
+            if (tokenType == TokenType.RESET_PASSWORD || tokenType == TokenType.API_KEY) {
+                throw new JwtException("Unsupported token type for request authentication: " + tokenType);
             }
-        }
-        return false;
-    }
 
-    /**
-     * Определение типа токена по пути запроса
-     */
-    private TokenType determineTokenType(String path) {
-        // Base токены
-        if (path.startsWith("/api/v1/base/")) {
-            return TokenType.BASE_ACCESS;
-        }
-        return switch (path) {
-            case "/auth/isBaseAuthorization" -> TokenType.BASE_ACCESS;
-            case "/auth/refreshToken" -> TokenType.APP_REFRESH;
-            case "/auth/refreshTokenByBaseToken", "/auth/refreshBaseToken" -> TokenType.BASE_REFRESH;
-            default ->
-                // По умолчанию - App Access
-                    TokenType.APP_ACCESS;
-        };
+            String tokenDigest = TokenDigest.of(token);
 
-    }
+            if (tokenBlacklistService.isDigestBlacklisted(tokenDigest)) {
+                throw new JwtException("Token has been revoked");
+            }
 
-    /**
-     * Валидация токена соответствующим ключом
-     */
-    private AuthenticatedUser validateToken(String token, TokenType tokenType) {
-        try {
-            String signingKey = switch (tokenType) {
-                case APP_ACCESS -> keyService.getSigningAppKeyAccess();
-                case APP_REFRESH -> keyService.getSigningAppKeyRefresh();
-                case BASE_ACCESS -> keyService.getSigningBaseKeyAccess();
-                case BASE_REFRESH -> keyService.getSigningBaseKeyRefresh();
-                case RESET_PASSWORD, API_KEY -> null;
-            };
-
-            if (signingKey == null) {
-                throw new JwtException("Null signingKey");
+            AuthenticatedUser cached = verifiedTokenCache.get(tokenDigest, tokenType);
+            if (cached != null) {
+                return cached;
             }
 
+            long start = System.nanoTime();
+            JwtService.VerifiedToken verified = jwtService.verifyToken(token, tokenType);
+            verifiedTokenCache.put(tokenDigest, tokenType, verified.user(), verified.expiresAtMillis(),
+                    System.nanoTime() - start);
 
-            return jwtService.parseToken(token, signingKey);
+            return verified.user();
 
         } catch (JwtException e) {
             log.debug("Token validation failed: tokenType={}, error={}", tokenType, e.getMessage());
@@ -0,0 +1,80 @@
+package ru.platik777.backauth.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.platik777.backauth.exception.RateLimitExceededException;
+import ru.platik777.backauth.service.RateLimiter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ограничение частоты запросов по пользователю и тенанту
+ * <p/>
+ * Стоит сразу после JwtAuthenticationFilter и берет userId/tenantId из атрибутов,
+ * которые тот выставил. Публичные маршруты (без атрибутов) пропускаются:
+ * API ключ из /api/v1/key/check ограничивает ApiKeyService, когда ключ уже разобран
+ * <p/>
+ * При превышении - 429 Too Many Requests с заголовком Retry-After
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        Object userId = request.getAttribute("userId");
+
+        if (userId != null) {
+            Object tenantId = request.getAttribute("tenantId");
+            try {
+                rateLimiter.acquireForUser(userId.toString(), tenantId != null ? tenantId.toString() : null);
+            } catch (RateLimitExceededException e) {
+                log.warn("Rate limit exceeded: userId={}, path={}", userId, request.getRequestURI());
+                sendTooManyRequestsError(response, e);
+                return;
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Отправка 429 Too Many Requests с JSON ошибкой
+     */
+    private void sendTooManyRequestsError(HttpServletResponse response, RateLimitExceededException e)
+            throws IOException {
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        Map<String, Object> errorDetails = new HashMap<>();
+        errorDetails.put("timestamp", LocalDateTime.now().toString());
+        errorDetails.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+        errorDetails.put("error", "Too Many Requests");
+        errorDetails.put("message", e.getMessage());
+
+        objectMapper.writeValue(response.getWriter(), errorDetails);
+    }
+}
@@ -0,0 +1,209 @@
+package ru.platik777.backauth.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.platik777.backauth.entity.types.TokenType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Таблица маршрутов: путь -> публичный или требуемый TokenType
+ * <p/>
+ * Единственное описание маршрутов (ROUTES), из которого при старте строится
+ * префиксное дерево по символам пути. JwtAuthenticationFilter и SecurityConfig
+ * используют одну и ту же таблицу.
+ * <p/>
+ * Поиск - один проход по символам пути, время не зависит от числа маршрутов:
+ * - EXACT - путь совпадает с шаблоном целиком (отдельный endpoint), приоритетнее поддеревьев
+ * - SUBTREE - сам шаблон или путь под ним с границей '/' (как "/x/**" в Spring):
+ *   "/monitor" и "/monitor/status", но не "/monitorX"; побеждает самое глубокое поддерево
+ * - без совпадений - защищенный маршрут с App Access токеном
+ * Префикса без границы '/' нет: SecurityConfig пропускает публичные маршруты без токена,
+ * и "/auth/signInX" не должен считаться публичным из-за общего начала с "/auth/signIn"
+ */
+@Slf4j
+@Component
+public class RouteTable {
+
+    /**
+     * Результат поиска маршрута
+     *
+     * @param publicRoute маршрут без токена
+     * @param tokenType   тип токена для защищенного маршрута (null для публичного)
+     */
+    public record Route(boolean publicRoute, TokenType tokenType) {
+
+        static Route publicRoute() {
+            return new Route(true, null);
+        }
+
+        static Route secured(TokenType tokenType) {
+            return new Route(false, tokenType);
+        }
+    }
+
+    private enum Match {
+        SUBTREE,
+        EXACT
+    }
+
+    private record RouteRule(String pattern, Match match, Route route) {
+    }
+
+    private static final Route DEFAULT_ROUTE = Route.secured(TokenType.APP_ACCESS);
+
+    // ==================== МАРШРУТЫ ====================
+
+    private static final List<RouteRule> ROUTES = List.of(
+            // Регистрация и вход
+            publicExact("/auth/signIn"),
+            publicExact("/auth/signUp"),
+
+            // Восстановление пароля, проверка уникальности, справочники
+            publicSubtree("/api/v1/resetPassword"),
+            publicExact("/api/v1/auth/checkFieldForUniqueness"),
+            publicSubtree("/api/v1/educationalInstitutions"),
+
+            // Internal endpoints (защищены на уровне сети), в т.ч. пакетная проверка токенов шлюзом
+            publicSubtree("/api/v1/internal"),
+
+            // Мониторинг
+            publicSubtree("/monitor"),
+            publicSubtree("/actuator"),
+            publicExact("/metrics"),
+
+            // Проверка API ключа (одиночная и пакетная)
+            publicExact("/api/v1/key/check"),
+            publicExact("/api/v1/key/check/batch"),
+
+            // Открытые ключи подписи
+            publicExact("/.well-known/jwks.json"),
+
+            // Swagger UI и документация
+            publicSubtree("/swagger-ui"),
+            publicExact("/swagger-ui.html"),
+            publicSubtree("/v3/api-docs"),
+            publicSubtree("/api-docs"),
+            publicSubtree("/swagger-resources"),
+            publicSubtree("/webjars"),
+
+            // Base токены
+            securedSubtree("/api/v1/base", TokenType.BASE_ACCESS),
+            securedExact("/auth/isBaseAuthorization", TokenType.BASE_ACCESS),
+
+            // Обновление токенов - соответствующий Refresh Token
+            securedExact("/auth/refreshToken", TokenType.APP_REFRESH),
+            securedExact("/auth/refreshTokenByBaseToken", TokenType.BASE_REFRESH),
+            securedExact("/auth/refreshBaseToken", TokenType.BASE_REFRESH)
+
+            // Остальное - App Access токен (DEFAULT_ROUTE)
+    );
+
+    private final Node root = new Node();
+
+    public RouteTable() {
+        for (RouteRule rule : ROUTES) {
+            insert(rule);
+        }
+        log.info("RouteTable compiled: {} routes", ROUTES.size());
+    }
+
+    /**
+     * Маршрут для пути запроса
+     */
+    public Route resolve(String path) {
+        Route subtreeRoute = DEFAULT_ROUTE;
+        Node node = root;
+
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return subtreeRoute;
+            }
+            // Узел шаблона + '/' - путь внутри поддерева
+            if (node.subtreeRoute != null) {
+                subtreeRoute = node.subtreeRoute;
+            }
+        }
+
+        return node.exactRoute != null ? node.exactRoute : subtreeRoute;
+    }
+
+    /**
+     * Публичный ли маршрут запроса (для SecurityConfig)
+     */
+    public boolean isPublic(HttpServletRequest request) {
+        return resolve(request.getRequestURI()).publicRoute();
+    }
+
+    private void insert(RouteRule rule) {
+        Node node = root;
+        for (int i = 0; i < rule.pattern().length(); i++) {
+            node = node.childOrCreate(rule.pattern().charAt(i));
+        }
+
+        if (rule.match() == Match.EXACT) {
+            node.exactRoute = rule.route();
+            return;
+        }
+
+        // Поддерево: сам шаблон как точный маршрут (если не задан отдельно) и все пути под шаблоном + '/'
+        if (node.exactRoute == null) {
+            node.exactRoute = rule.route();
+        }
+        node.childOrCreate('/').subtreeRoute = rule.route();
+    }
+
+    private static RouteRule publicExact(String pattern) {
+        return new RouteRule(pattern, Match.EXACT, Route.publicRoute());
+    }
+
+    private static RouteRule publicSubtree(String pattern) {
+        return new RouteRule(pattern, Match.SUBTREE, Route.publicRoute());
+    }
+
+    private static RouteRule securedSubtree(String pattern, TokenType tokenType) {
+        return new RouteRule(pattern, Match.SUBTREE, Route.secured(tokenType));
+    }
+
+    private static RouteRule securedExact(String pattern, TokenType tokenType) {
+        return new RouteRule(pattern, Match.EXACT, Route.secured(tokenType));
+    }
+
+    /**
+     * Узел дерева: дети в параллельных массивах (символ -> узел), у путей мало ветвлений
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Route subtreeRoute;
+        private Route exactRoute;
+
+        Node child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+
+            Node created = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = created;
+            return created;
+        }
+    }
+}
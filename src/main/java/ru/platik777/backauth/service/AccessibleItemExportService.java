@@ -0,0 +1,241 @@
+package ru.platik777.backauth.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.platik777.backauth.entity.types.ItemType;
+import ru.platik777.backauth.exception.ServiceUnavailableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Потоковая выгрузка доступных пользователю элементов тенанта в NDJSON
+ * <p/>
+ * - строки читаются серверным курсором PostgreSQL (fetch size внутри транзакции),
+ *   в памяти одновременно держится не больше одной порции строк
+ * - каждая строка сразу пишется в ответ как отдельный JSON-объект + '\n',
+ *   без промежуточных списков и DTO
+ * - ORDER BY не используется: синхронизации порядок не нужен, а сортировка
+ *   заставила бы БД материализовать весь результат до первой строки
+ * - выгрузка держит соединение пула и транзакцию все время передачи (медленный
+ *   клиент - минуты), поэтому число одновременных выгрузок ограничено:
+ *   сверх лимита - сразу 503 с Retry-After, остальным запросам остается пул
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AccessibleItemExportService {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final long RETRY_AFTER_SECONDS = 5;
+
+    private static final String ITEMS_SQL = """
+            SELECT x.id, x.folder_id, x.created_at, ep.permission
+            FROM %s x
+            INNER JOIN effective_permission ep ON (
+                ep.user_id = ?
+                AND ep.item_type = ?
+                AND ep.item_id = x.id
+            )
+            WHERE x.tenant_id = ?
+            AND ep.permission > 0
+            """;
+
+    private static final String FOLDERS_SQL = """
+            SELECT f.id, f.parent_id, f.created_at, ep.permission, f.name, f.has_children
+            FROM folder f
+            INNER JOIN effective_permission ep ON (
+                ep.user_id = ?
+                AND ep.item_type = 'FOLDER'
+                AND ep.item_id = f.id
+            )
+            WHERE f.tenant_id = ?
+            AND ep.permission > 0
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.permissions.export.fetch-size:1000}")
+    private int fetchSize;
+
+    // Одновременных выгрузок на узел, должно быть заметно меньше размера пула соединений
+    @Value("${app.permissions.export.max-concurrent:3}")
+    private int maxConcurrent;
+
+    private JdbcTemplate streamingJdbcTemplate;
+    private TransactionTemplate readOnlyTransaction;
+    private Semaphore exportSlots;
+
+    @PostConstruct
+    public void initialize() {
+        // Отдельный JdbcTemplate, чтобы fetch size не влиял на остальные запросы
+        streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+
+        // PostgreSQL использует курсор только при выключенном autocommit, т.е. внутри транзакции
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        exportSlots = new Semaphore(maxConcurrent);
+
+        log.info("AccessibleItemExportService initialized: fetchSize={}, maxConcurrent={}",
+                fetchSize, maxConcurrent);
+    }
+
+    /**
+     * Занять слот выгрузки; вызывается в потоке запроса, до начала ответа,
+     * чтобы отказ успел уйти клиенту как 503. Слот освобождается close()
+     * после завершения export
+     *
+     * @throws ServiceUnavailableException все слоты заняты
+     */
+    public ExportSlot acquireSlot() {
+        if (!exportSlots.tryAcquire()) {
+            log.warn("Export rejected: {} exports already running", maxConcurrent);
+            throw new ServiceUnavailableException("Too many concurrent exports", RETRY_AFTER_SECONDS);
+        }
+        return new ExportSlot();
+    }
+
+    /**
+     * Выгрузить доступные элементы в поток
+     *
+     * @param itemTypes типы элементов для выгрузки (в указанном порядке)
+     * @return количество выгруженных строк
+     */
+    public long export(String userId, String tenantId, List<ItemType> itemTypes, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        // Поток закрывает контейнер сервлетов, генератор только сбрасывает буфер
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Разделитель строк пишется явно, пробел между корневыми значениями не нужен
+        generator.setRootValueSeparator(null);
+
+        long[] exported = new long[1];
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                for (ItemType itemType : itemTypes) {
+                    exported[0] += exportType(userId, tenantId, itemType, generator);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Клиент закрыл соединение - курсор и транзакция уже освобождены
+            throw e.getCause();
+        } finally {
+            generator.close();
+        }
+
+        log.debug("Exported {} accessible items for user={}, tenant={}, types={}",
+                exported[0], userId, tenantId, itemTypes);
+        return exported[0];
+    }
+
+    private long exportType(String userId, String tenantId, ItemType itemType, JsonGenerator generator) {
+        long[] rows = new long[1];
+
+        if (itemType == ItemType.FOLDER) {
+            streamingJdbcTemplate.query(FOLDERS_SQL, rs -> {
+                writeRow(generator, itemType, rs, true);
+                flushEveryFetch(generator, ++rows[0]);
+            }, userId, tenantId);
+        } else {
+            String sql = ITEMS_SQL.formatted(tableName(itemType));
+            streamingJdbcTemplate.query(sql, rs -> {
+                writeRow(generator, itemType, rs, false);
+                flushEveryFetch(generator, ++rows[0]);
+            }, userId, itemType.name(), tenantId);
+        }
+
+        return rows[0];
+    }
+
+    /**
+     * Одна строка NDJSON: itemType, id, folderId, effectivePermissions, createdAt
+     * Для папок folderId - родительская папка, дополнительно name и hasChildren
+     */
+    private void writeRow(JsonGenerator generator, ItemType itemType, ResultSet rs, boolean folder)
+            throws SQLException {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("itemType", itemType.name());
+            generator.writeStringField("id", rs.getString(1));
+            generator.writeStringField("folderId", rs.getString(2));
+            generator.writeNumberField("effectivePermissions", rs.getShort(4));
+
+            Timestamp createdAt = rs.getTimestamp(3);
+            if (createdAt != null) {
+                generator.writeStringField("createdAt", createdAt.toLocalDateTime().toString());
+            } else {
+                generator.writeNullField("createdAt");
+            }
+
+            if (folder) {
+                generator.writeStringField("name", rs.getString(5));
+                generator.writeBooleanField("hasChildren", rs.getBoolean(6));
+            }
+
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывать ответ клиенту порциями по fetch size, а не держать весь буфер до конца
+     */
+    private void flushEveryFetch(JsonGenerator generator, long rows) {
+        if (rows % fetchSize != 0) {
+            return;
+        }
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Занятый слот выгрузки, повторный close() ничего не делает
+     */
+    public final class ExportSlot implements AutoCloseable {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportSlot() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                exportSlots.release();
+            }
+        }
+    }
+
+    private static String tableName(ItemType itemType) {
+        return switch (itemType) {
+            case PROJECT -> "project";
+            case BLOCK -> "block";
+            case FILE -> "file";
+            case FOLDER -> "folder";
+        };
+    }
+}
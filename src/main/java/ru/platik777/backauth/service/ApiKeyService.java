@@ -1,28 +1,43 @@
 package ru.platik777.backauth.service;
 
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.platik777.backauth.dto.AuthenticatedUser;
+import ru.platik777.backauth.dto.request.ApiKeyCheckRequest;
 import ru.platik777.backauth.dto.response.ApiKeyAuthResponse;
+import ru.platik777.backauth.dto.response.ApiKeyBatchCheckResponse;
 import ru.platik777.backauth.dto.response.ApiKeyResponse;
 import ru.platik777.backauth.dto.response.StatusResponse;
 import ru.platik777.backauth.entity.ApiKey;
 import ru.platik777.backauth.entity.User;
+import ru.platik777.backauth.entity.types.TokenType;
 import ru.platik777.backauth.exception.ApiKeyException;
-import ru.platik777.backauth.exception.CustomJwtException;
+import ru.platik777.backauth.exception.RateLimitExceededException;
 import ru.platik777.backauth.repository.ApiKeyRepository;
 import ru.platik777.backauth.repository.UserRepository;
+import ru.platik777.backauth.util.TokenDigest;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -36,7 +51,14 @@ public class ApiKeyService {
     private final ApiKeyRepository apiKeyRepository;
     private final UserRepository userRepository;
     private final JwtService jwtService;
-    private final KeyService keyService;
+    private final ApiKeyVerificationCache verificationCache;
+    private final TokenBlacklistService tokenBlacklistService;
+    private final ApiKeyUsageMeter usageMeter;
+    private final RateLimiter rateLimiter;
+    private final VerificationExecutor verificationExecutor;
+
+    @Value("${app.api-key.batch.max-size:1000}")
+    private int maxBatchSize;
 
     private static final String DEFAULT_EXPIRE_DATE = "2099-01-01";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -47,11 +69,14 @@ public class ApiKeyService {
      * @param userId ID пользователя
      * @param name Название API ключа
      * @param expireAt Дата истечения (формат: yyyy-MM-dd)
+     * @param rateLimit Лимит проверок ключа в секунду (null - по умолчанию)
+     * @param rateLimitBurst Допустимый всплеск проверок ключа (null - по умолчанию)
      * @return ApiKeyResponse с созданным ключом
      * @throws ApiKeyException если создание не удалось
      */
     @Transactional
-    public ApiKeyResponse createApiKey(String userId, String name, String expireAt) {
+    public ApiKeyResponse createApiKey(String userId, String name, String expireAt,
+                                       Double rateLimit, Integer rateLimitBurst) {
         log.debug("Creating API key for userId: {}, name: {}", userId, name);
 
         validateUserId(userId);
@@ -67,6 +92,14 @@ public class ApiKeyService {
 
         LocalDateTime expireAtDateTime = parseAndValidateExpirationDate(expireAt);
 
+        if (rateLimit != null && rateLimit <= 0) {
+            throw new ApiKeyException("Rate limit must be positive", "rateLimit");
+        }
+
+        if (rateLimitBurst != null && rateLimitBurst < 1) {
+            throw new ApiKeyException("Rate limit burst must be positive", "rateLimitBurst");
+        }
+
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> {
                     log.error("User not found: {}", userId);
@@ -79,10 +112,13 @@ public class ApiKeyService {
             // Создание ApiKey entity
             ApiKey apiKey = new ApiKey();
             apiKey.setApiKey(apiKeyToken);
+            apiKey.setApiKeyDigest(TokenDigest.of(apiKeyToken));
             apiKey.setUser(user);
             apiKey.setExpireAt(Instant.from(expireAtDateTime));
             apiKey.setName(name.trim());
             apiKey.setIsDeleted(false);
+            apiKey.setRateLimit(rateLimit);
+            apiKey.setRateLimitBurst(rateLimitBurst);
 
             ApiKey savedApiKey = apiKeyRepository.save(apiKey);
 
@@ -98,6 +134,10 @@ public class ApiKeyService {
 
     /**
      * Мягкое удаление API ключа
+     * <p/>
+     * Digest ключа попадает в общий черный список (в той же транзакции) на срок,
+     * за который истекут положительные записи ApiKeyVerificationCache на всех узлах:
+     * другие узлы отклоняют ключ по уведомлению после коммита (TokenBlacklistListener), не дожидаясь positive-ttl
      * @param userId ID пользователя
      * @param apiKey API ключ для удаления
      * @return StatusResponse с результатом
@@ -113,13 +153,21 @@ public class ApiKeyService {
             throw new ApiKeyException("API key cannot be empty", "apiKey");
         }
 
-        int deleted = apiKeyRepository.softDeleteByApiKeyAndUserId(apiKey, userId);
+        String digest = TokenDigest.of(apiKey);
+        int deleted = apiKeyRepository.softDeleteByDigestAndUserId(digest, userId);
 
         if (deleted == 0) {
             log.warn("API key not found or already deleted. UserId: {}", userId);
             throw new ApiKeyException("API key not found or already deleted", "apiKey");
         }
 
+        // Запас в positive-ttl: запись, положенная в кэш до коммита, истекает раньше записи черного списка
+        tokenBlacklistService.addToken(apiKey, System.currentTimeMillis() + 2 * verificationCache.getPositiveTtl());
+
+        // Сразу и после коммита: проверка, прочитавшая ключ до коммита, не оставит его в кэше
+        verificationCache.invalidate(digest);
+        afterCommit(() -> verificationCache.invalidate(digest));
+
         log.info("API key deleted successfully for userId: {}", userId);
 
         return StatusResponse.builder()
@@ -143,18 +191,29 @@ public class ApiKeyService {
 
         log.debug("Found {} active API keys for userId: {}", apiKeys.size(), userId);
 
+        Map<String, ApiKeyUsageStore.Usage> usage = usageMeter.getUsage(
+                userId,
+                apiKeys.stream().map(ApiKey::getId).toList()
+        );
+
         return apiKeys.stream()
-                .map(ApiKeyResponse::fromApiKey)
+                .map(apiKey -> withUsage(ApiKeyResponse.fromApiKey(apiKey), usage.get(apiKey.getId())))
                 .collect(Collectors.toList());
     }
 
     /**
      * Проверка авторизации по API ключу
+     * <p/>
+     * Без транзакции: попадание в ApiKeyVerificationCache не берет соединение из пула.
+     * Ключ, удаленный на любом узле, отклоняется по черному списку раньше кэша.
+     * Промах - проверка подписи и поиск по digest ключа, результат (в т.ч. отрицательный) кэшируется.
+     * Принятый ключ проходит ограничение частоты (ключ, владелец, тенант) и учитывается в usage
+     *
      * @param apiKeyToken API ключ для проверки
      * @return ApiKeyAuthResponse с userId
      * @throws ApiKeyException если ключ невалидный
+     * @throws RateLimitExceededException если лимит частоты исчерпан
      */
-    @Transactional(readOnly = true)
     public ApiKeyAuthResponse checkApiKeyAuthorization(String apiKeyToken) {
         log.debug("Checking API key authorization");
 
@@ -162,41 +221,259 @@ public class ApiKeyService {
             throw new ApiKeyException("API key cannot be empty", "apiKey");
         }
 
-        AuthenticatedUser user;
+        String digest = TokenDigest.of(apiKeyToken);
+
+        if (isDeleted(digest)) {
+            throw new ApiKeyException("Invalid API key", "apiKey");
+        }
+
+        ApiKeyVerificationCache.Entry cached = verificationCache.get(digest);
+        if (cached != null) {
+            if (!cached.valid()) {
+                throw new ApiKeyException("Invalid API key", "apiKey");
+            }
+            return authorize(cached);
+        }
+
+        JwtService.VerifiedToken verified;
 
         try {
-            user = jwtService.parseToken(
+            verified = jwtService.verifyToken(
                     apiKeyToken,
-                    keyService.getSigningKeyApiKey()
+                    TokenType.API_KEY
             );
 
-        } catch (ExpiredJwtException e) {
-            log.warn("API key expired: {}", e.getMessage());
-            throw new ApiKeyException("API key expired", "apiKey");
+        } catch (JwtException | IllegalArgumentException e) {
+            // verifyToken оборачивает любую ошибку JJWT в JwtException, истечение - в cause
+            if (e.getCause() instanceof ExpiredJwtException) {
+                log.debug("API key expired: {}", e.getMessage());
+                throw new ApiKeyException("API key expired", "apiKey");
+            }
 
-        } catch (CustomJwtException e) {
             log.warn("Invalid API key: {}", e.getMessage());
+            verificationCache.putInvalid(digest);
             throw new ApiKeyException("Invalid API key", "apiKey");
-
-        } catch (Exception e) {
-            log.error("Error parsing API key", e);
-            throw new ApiKeyException("Invalid API key", e);
         }
 
-        boolean exists = apiKeyRepository.existsByApiKeyAndUserIdAndIsDeletedFalse(apiKeyToken, user.getUserId());
+        AuthenticatedUser user = verified.user();
+
+        ApiKeyRepository.ActiveApiKey activeKey = apiKeyRepository.findActiveByDigest(digest, user.getUserId())
+                .orElse(null);
 
-        if (!exists) {
+        if (activeKey == null) {
             log.warn("API key not found in database. UserId: {}", user.getUserId());
+            verificationCache.putInvalid(digest);
             throw new ApiKeyException("Invalid API key", "apiKey");
         }
 
+        ApiKeyVerificationCache.Entry entry = verificationCache.putValid(
+                digest,
+                activeKey.getId(),
+                user.getUserId(),
+                user.getTenantId(),
+                activeKey.getRateLimit(),
+                activeKey.getRateLimitBurst(),
+                verified.expiresAtMillis()
+        );
+
         log.debug("API key authorized successfully for userId: {}", user.getUserId());
 
+        return authorize(entry);
+    }
+
+    /**
+     * Пакетная проверка API ключей
+     * <p/>
+     * 1. Кэш и подписи - параллельно в VerificationExecutor (без БД)
+     * 2. Ключи с верной подписью, которых нет в кэше, - один запрос по digest (= ANY)
+     * 3. Лимиты частоты и учет использования - как у одиночной проверки
+     * Ошибки не пробрасываются, а попадают в результат ключа
+     *
+     * @return результат по каждому ключу в порядке запроса
+     */
+    public List<ApiKeyBatchCheckResponse> checkApiKeyAuthorizationBatch(List<ApiKeyCheckRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "Too many API keys in batch request: " + requests.size() + ", max " + maxBatchSize
+            );
+        }
+
+        int count = requests.size();
+        String[] digests = new String[count];
+        ApiKeyVerificationCache.Entry[] entries = new ApiKeyVerificationCache.Entry[count];
+        JwtService.VerifiedToken[] verified = new JwtService.VerifiedToken[count];
+        ApiKeyBatchCheckResponse[] results = new ApiKeyBatchCheckResponse[count];
+
+        // 1. Кэш и подписи
+        verificationExecutor.forEach(count, i -> {
+            ApiKeyCheckRequest request = requests.get(i);
+            String token = request != null ? request.getToken() : null;
+
+            if (token == null || token.trim().isEmpty()) {
+                results[i] = rejected(i, "API key cannot be empty", null);
+                return;
+            }
+
+            digests[i] = TokenDigest.of(token);
+
+            if (isDeleted(digests[i])) {
+                results[i] = rejected(i, "Invalid API key", null);
+                return;
+            }
+
+            ApiKeyVerificationCache.Entry cached = verificationCache.get(digests[i]);
+            if (cached != null) {
+                if (cached.valid()) {
+                    entries[i] = cached;
+                } else {
+                    results[i] = rejected(i, "Invalid API key", null);
+                }
+                return;
+            }
+
+            try {
+                verified[i] = jwtService.verifyToken(token, TokenType.API_KEY);
+            } catch (Exception e) {
+                log.debug("Invalid API key in batch: index={}, error={}", i, e.getMessage());
+                verificationCache.putInvalid(digests[i]);
+                results[i] = rejected(i, "Invalid API key", null);
+            }
+        });
+
+        // 2. Существование ключей - один запрос
+        Set<String> pending = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            if (verified[i] != null) {
+                pending.add(digests[i]);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            List<ApiKeyRepository.ActiveApiKey> found = apiKeyRepository.findActiveByDigests(
+                    pending.toArray(String[]::new));
+
+            Map<String, ApiKeyRepository.ActiveApiKey> activeKeys = new HashMap<>();
+            for (ApiKeyRepository.ActiveApiKey activeKey : found) {
+                activeKeys.put(activeKey.getDigest(), activeKey);
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (verified[i] == null) {
+                    continue;
+                }
+
+                AuthenticatedUser user = verified[i].user();
+                ApiKeyRepository.ActiveApiKey activeKey = activeKeys.get(digests[i]);
+
+                if (activeKey == null || !activeKey.getUserId().equals(user.getUserId())) {
+                    verificationCache.putInvalid(digests[i]);
+                    results[i] = rejected(i, "Invalid API key", null);
+                    continue;
+                }
+
+                entries[i] = verificationCache.putValid(
+                        digests[i],
+                        activeKey.getId(),
+                        user.getUserId(),
+                        user.getTenantId(),
+                        activeKey.getRateLimit(),
+                        activeKey.getRateLimitBurst(),
+                        verified[i].expiresAtMillis()
+                );
+            }
+        }
+
+        // 3. Лимиты и учет
+        for (int i = 0; i < count; i++) {
+            if (entries[i] == null) {
+                continue;
+            }
+
+            try {
+                results[i] = ApiKeyBatchCheckResponse.builder()
+                        .index(i)
+                        .valid(true)
+                        .authorization(authorize(entries[i]))
+                        .build();
+            } catch (RateLimitExceededException e) {
+                results[i] = rejected(i, e.getMessage(), e.getRetryAfterSeconds());
+            }
+        }
+
+        log.debug("Batch API key check completed: {} keys, {} looked up in database", count, pending.size());
+        return Arrays.asList(results);
+    }
+
+    private static ApiKeyBatchCheckResponse rejected(int index, String message, Long retryAfterSeconds) {
+        return ApiKeyBatchCheckResponse.builder()
+                .index(index)
+                .valid(false)
+                .message(message)
+                .retryAfterSeconds(retryAfterSeconds)
+                .build();
+    }
+
+    /**
+     * Ключ удален (на этом или другом узле) - его положительная запись в кэше больше не нужна
+     */
+    private boolean isDeleted(String digest) {
+        if (!tokenBlacklistService.isDigestBlacklisted(digest)) {
+            return false;
+        }
+        verificationCache.invalidate(digest);
+        return true;
+    }
+
+    /**
+     * Ограничение частоты и учет использования принятого ключа
+     */
+    private ApiKeyAuthResponse authorize(ApiKeyVerificationCache.Entry entry) {
+        rateLimiter.acquireForApiKey(
+                entry.apiKeyId(),
+                entry.tenantId(),
+                entry.rateLimit(),
+                entry.rateLimitBurst()
+        );
+        usageMeter.record(entry.apiKeyId());
+
         return ApiKeyAuthResponse.builder()
-                .userId(user.getUserId())
+                .userId(entry.userId())
                 .build();
     }
 
+    private ApiKeyResponse withUsage(ApiKeyResponse response, ApiKeyUsageStore.Usage usage) {
+        if (usage == null) {
+            return response;
+        }
+
+        response.setUsageCount(usage.usageCount());
+        if (usage.lastUsedMillis() > 0) {
+            response.setLastUsedAt(LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(usage.lastUsedMillis()), ZoneId.systemDefault()));
+        }
+        return response;
+    }
+
+    /**
+     * Выполнить действие после коммита текущей транзакции (или сразу, если транзакции нет)
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     private void validateUserId(String userId) {
         if (userId == null) {
             throw new ApiKeyException("Invalid userId", "userId");
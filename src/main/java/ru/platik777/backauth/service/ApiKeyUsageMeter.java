@@ -0,0 +1,261 @@
+package ru.platik777.backauth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Учет использования API ключей: ID ключа -> число проверок и время последней
+ * <p/>
+ * Поток запроса только увеличивает счетчик в памяти:
+ * - LongAdder - счетчик с разнесенными по ячейкам слагаемыми, без спора потоков за одну переменную
+ * - время последней проверки обновляется только при росте (без CAS-цикла)
+ * <p/>
+ * Раз в flush-interval планировщик собирает приращения с прошлого сброса и пишет
+ * их в api_key_usage одним пакетным upsert (ApiKeyUsageStore). Счетчики не обнуляются:
+ * сброшенная часть запоминается отдельно, поэтому проверки во время сброса не теряются,
+ * а при ошибке БД приращение уйдет следующим сбросом
+ * <p/>
+ * Полностью сброшенный ключ без проверок дольше idle-eviction удаляется из памяти
+ * (remove(key, value)), иначе карта растет на каждый когда-либо проверенный ключ.
+ * Проверка, успевшая взять удаляемые счетчики до remove, может увеличить их и после:
+ * удаленные счетчики еще один сброс перечитываются, и приращение переносится в карту
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiKeyUsageMeter {
+
+    private final ApiKeyUsageStore usageStore;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.api-key.usage.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.api-key.usage.batch-size:500}")
+    private int batchSize;
+
+    // Простой ключа (мс), после которого сброшенные счетчики удаляются из памяти
+    @Value("${app.api-key.usage.idle-eviction:600000}")
+    private long idleEviction;
+
+    // ID ключа -> счетчики узла
+    private final Map<String, KeyUsage> usages = new ConcurrentHashMap<>();
+
+    // Удаленные прошлым сбросом счетчики - только поток сброса
+    private List<RetiredUsage> retired = new ArrayList<>();
+
+    private Counter flushedCalls;
+    private Counter flushFailures;
+
+    @PostConstruct
+    public void initialize() {
+        flushedCalls = Counter.builder("api.key.usage.flushed")
+                .description("Проверки API ключей, записанные в api_key_usage")
+                .register(meterRegistry);
+        flushFailures = Counter.builder("api.key.usage.flush.failures")
+                .description("Неудачные сбросы учета использования API ключей")
+                .register(meterRegistry);
+        Gauge.builder("api.key.usage.pending", this, ApiKeyUsageMeter::pendingCalls)
+                .description("Проверки API ключей, еще не записанные в БД")
+                .register(meterRegistry);
+
+        log.info("ApiKeyUsageMeter initialized: enabled={}, batchSize={}, idleEviction={}ms",
+                enabled, batchSize, idleEviction);
+    }
+
+    /**
+     * Учесть успешную проверку ключа (только память, без обращения к БД)
+     */
+    public void record(String apiKeyId) {
+        if (!enabled || apiKeyId == null) {
+            return;
+        }
+
+        KeyUsage usage = usages.get(apiKeyId);
+        if (usage == null) {
+            usage = usages.computeIfAbsent(apiKeyId, id -> new KeyUsage());
+        }
+        usage.record(System.currentTimeMillis());
+    }
+
+    /**
+     * Использование ключей пользователя: записанное в БД плюс еще не сброшенное этим узлом
+     *
+     * @param apiKeyIds ключи пользователя из списка
+     * @return ID ключа -> использование (для каждого ключа из apiKeyIds)
+     */
+    public Map<String, ApiKeyUsageStore.Usage> getUsage(String userId, Collection<String> apiKeyIds) {
+        Map<String, ApiKeyUsageStore.Usage> stored = usageStore.findByUserId(userId);
+        Map<String, ApiKeyUsageStore.Usage> result = new HashMap<>();
+
+        for (String apiKeyId : apiKeyIds) {
+            ApiKeyUsageStore.Usage usage = stored.getOrDefault(apiKeyId, new ApiKeyUsageStore.Usage(0, 0));
+            KeyUsage pending = usages.get(apiKeyId);
+            if (pending != null) {
+                usage = new ApiKeyUsageStore.Usage(
+                        usage.usageCount() + pending.pendingCalls(),
+                        Math.max(usage.lastUsedMillis(), pending.lastUsedMillis));
+            }
+            result.put(apiKeyId, usage);
+        }
+
+        return result;
+    }
+
+    /**
+     * Сброс приращений в БД пакетами
+     */
+    @Scheduled(fixedDelayString = "${app.api-key.usage.flush-interval:10000}")
+    public synchronized void flush() {
+        if (!enabled || (usages.isEmpty() && retired.isEmpty())) {
+            return;
+        }
+
+        // Поздние приращения удаленных счетчиков уходят в этот же сброс
+        List<RetiredUsage> lastRetired = retired;
+        retired = new ArrayList<>();
+        for (RetiredUsage usage : lastRetired) {
+            transferLeftover(usage.apiKeyId(), usage.usage());
+        }
+
+        List<ApiKeyUsageStore.Delta> batch = new ArrayList<>(batchSize);
+        List<KeyUsage> batchUsages = new ArrayList<>(batchSize);
+        long idleBefore = System.currentTimeMillis() - idleEviction;
+
+        for (Map.Entry<String, KeyUsage> entry : usages.entrySet()) {
+            KeyUsage usage = entry.getValue();
+            long total = usage.calls.sum();
+            long delta = total - usage.flushedCalls;
+            if (delta <= 0) {
+                // Все записано в БД (после неудачного сброса delta > 0 и ключ остается)
+                if (usage.lastUsedMillis < idleBefore) {
+                    evict(entry.getKey(), usage);
+                }
+                continue;
+            }
+
+            batch.add(new ApiKeyUsageStore.Delta(entry.getKey(), delta, usage.lastUsedMillis));
+            batchUsages.add(usage);
+            usage.snapshotCalls = total;
+
+            if (batch.size() >= batchSize) {
+                writeBatch(batch, batchUsages);
+                batch.clear();
+                batchUsages.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            writeBatch(batch, batchUsages);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void writeBatch(List<ApiKeyUsageStore.Delta> batch, List<KeyUsage> batchUsages) {
+        try {
+            usageStore.upsertBatch(batch);
+        } catch (Exception e) {
+            // Сброшенная часть не сдвигается - приращение уйдет следующим сбросом
+            flushFailures.increment();
+            log.error("Failed to flush API key usage ({} keys): {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        long calls = 0;
+        for (KeyUsage usage : batchUsages) {
+            calls += usage.snapshotCalls - usage.flushedCalls;
+            usage.flushedCalls = usage.snapshotCalls;
+        }
+        flushedCalls.increment(calls);
+        log.debug("Flushed API key usage: {} keys, {} calls", batch.size(), calls);
+    }
+
+    /**
+     * Удалить сброшенные счетчики ключа
+     * Объект перечитывается сейчас и на следующем сбросе (retired): проверка, взявшая его
+     * до remove, переносится в новый объект, даже если увеличила счетчик после этого чтения
+     */
+    private void evict(String apiKeyId, KeyUsage usage) {
+        if (!usages.remove(apiKeyId, usage)) {
+            return;
+        }
+        transferLeftover(apiKeyId, usage);
+        retired.add(new RetiredUsage(apiKeyId, usage));
+    }
+
+    /**
+     * Перенести несброшенные проверки удаленного объекта в текущий объект ключа
+     * Перенесенная часть считается сброшенной - повторное чтение видит только новые приращения
+     */
+    private void transferLeftover(String apiKeyId, KeyUsage usage) {
+        long total = usage.calls.sum();
+        long leftover = total - usage.flushedCalls;
+        if (leftover <= 0) {
+            return;
+        }
+        usage.flushedCalls = total;
+        usages.computeIfAbsent(apiKeyId, id -> new KeyUsage())
+                .add(leftover, usage.lastUsedMillis);
+    }
+
+    private double pendingCalls() {
+        long pending = 0;
+        for (KeyUsage usage : usages.values()) {
+            pending += usage.pendingCalls();
+        }
+        return pending;
+    }
+
+    private record RetiredUsage(String apiKeyId, KeyUsage usage) {
+    }
+
+    /**
+     * Счетчики одного ключа
+     * calls и lastUsedMillis пишут потоки запросов, flushedCalls/snapshotCalls - только поток сброса
+     */
+    private static final class KeyUsage {
+
+        private final LongAdder calls = new LongAdder();
+        private volatile long lastUsedMillis;
+        private volatile long flushedCalls;
+        private long snapshotCalls;
+
+        void record(long now) {
+            calls.increment();
+            if (now > lastUsedMillis) {
+                lastUsedMillis = now;
+            }
+        }
+
+        void add(long count, long lastUsed) {
+            calls.add(count);
+            if (lastUsed > lastUsedMillis) {
+                lastUsedMillis = lastUsed;
+            }
+        }
+
+        long pendingCalls() {
+            return calls.sum() - flushedCalls;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ru.platik777.backauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Учет использования API ключей в таблице api_key_usage (api_key_id, usage_count, last_used_at)
+ * <p/>
+ * Узлы пишут не итоговые значения, а приращения: upsert складывает счетчики,
+ * поэтому сбросы нескольких узлов не перетирают друг друга
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiKeyUsageStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Приращение использования ключа с прошлого сброса
+     *
+     * @param calls          число проверок ключа
+     * @param lastUsedMillis время последней проверки
+     */
+    public record Delta(String apiKeyId, long calls, long lastUsedMillis) {
+    }
+
+    /**
+     * Накопленное использование ключа
+     *
+     * @param lastUsedMillis время последней проверки, 0 - не использовался
+     */
+    public record Usage(long usageCount, long lastUsedMillis) {
+    }
+
+    /**
+     * Пакетный upsert приращений - один round-trip на пакет
+     * Ключи, удаленные из api_key вместе с пользователем, пропускаются (иначе FK уронит весь пакет)
+     */
+    public void upsertBatch(List<Delta> deltas) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO api_key_usage (api_key_id, usage_count, last_used_at, updated_at) " +
+                "SELECT k.id, ?, ?, CURRENT_TIMESTAMP FROM api_key k WHERE k.id = ? " +
+                "ON CONFLICT (api_key_id) DO UPDATE SET " +
+                "usage_count = api_key_usage.usage_count + EXCLUDED.usage_count, " +
+                "last_used_at = GREATEST(api_key_usage.last_used_at, EXCLUDED.last_used_at), " +
+                "updated_at = CURRENT_TIMESTAMP",
+                deltas,
+                deltas.size(),
+                (ps, delta) -> {
+                    ps.setLong(1, delta.calls());
+                    ps.setTimestamp(2, new Timestamp(delta.lastUsedMillis()));
+                    ps.setString(3, delta.apiKeyId());
+                });
+    }
+
+    /**
+     * Использование активных ключей пользователя
+     *
+     * @return ID ключа -> использование (ключи без записей отсутствуют)
+     */
+    public Map<String, Usage> findByUserId(String userId) {
+        Map<String, Usage> result = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT u.api_key_id, u.usage_count, u.last_used_at FROM api_key_usage u " +
+                "JOIN api_key k ON k.id = u.api_key_id " +
+                "WHERE k.user_id = ? AND k.is_deleted = false",
+                rs -> {
+                    Timestamp lastUsed = rs.getTimestamp("last_used_at");
+                    result.put(rs.getString("api_key_id"), new Usage(
+                            rs.getLong("usage_count"),
+                            lastUsed != null ? lastUsed.getTime() : 0));
+                },
+                userId);
+        return result;
+    }
+}
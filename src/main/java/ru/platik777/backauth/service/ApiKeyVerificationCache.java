@@ -0,0 +1,158 @@
+package ru.platik777.backauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш результатов проверки API ключей: digest ключа -> ключ активен / невалиден
+ * <p/>
+ * - положительная запись (ID ключа, пользователь, лимиты частоты) избавляет от проверки подписи и запроса в БД,
+ *   живет positive-ttl, но не дольше exp ключа
+ * - отрицательная запись (подпись не сошлась, ключа нет в БД) живет negative-ttl -
+ *   повторы одного и того же неверного ключа не доходят до БД
+ * - при удалении ключа запись удаляется сразу (invalidate), на других узлах ключ отклоняет
+ *   общий черный список токенов (ApiKeyService.deleteApiKey), пока живут их положительные записи
+ * - размер ограничен, метрики: api.key.verification.*
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiKeyVerificationCache {
+
+    private static final String CACHE_NAME = "api.key.verification";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.api-key.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.api-key.cache.max-size:100000}")
+    private long maxSize;
+
+    @Getter
+    @Value("${app.api-key.cache.positive-ttl:60000}")
+    private long positiveTtl;
+
+    @Value("${app.api-key.cache.negative-ttl:10000}")
+    private long negativeTtl;
+
+    private Cache<String, Entry> cache;
+
+    /**
+     * Результат проверки ключа
+     *
+     * @param apiKeyId        ID ключа (null для отрицательной записи)
+     * @param userId          владелец ключа (null для отрицательной записи)
+     * @param tenantId        тенант из ключа
+     * @param rateLimit       лимит ключа из api_key (null - по умолчанию)
+     * @param rateLimitBurst  всплеск ключа из api_key (null - по умолчанию)
+     * @param expiresAtMillis момент, после которого запись недействительна
+     */
+    public record Entry(String apiKeyId, String userId, String tenantId,
+                        Double rateLimit, Integer rateLimitBurst, long expiresAtMillis) {
+
+        public boolean valid() {
+            return apiKeyId != null;
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+        log.info("ApiKeyVerificationCache initialized: enabled={}, maxSize={}, positiveTtl={}ms, negativeTtl={}ms",
+                enabled, maxSize, positiveTtl, negativeTtl);
+    }
+
+    /**
+     * @param digest TokenDigest.of(apiKey)
+     * @return результат прошлой проверки или null
+     */
+    public Entry get(String digest) {
+        if (!enabled) {
+            return null;
+        }
+
+        Entry entry = cache.getIfPresent(digest);
+        if (entry == null || entry.expiresAtMillis() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Запомнить активный ключ
+     *
+     * @param keyExpiresAtMillis exp ключа - запись не переживает сам ключ
+     * @return запись кэша (создается и при выключенном кэше)
+     */
+    public Entry putValid(String digest, String apiKeyId, String userId, String tenantId,
+                          Double rateLimit, Integer rateLimitBurst, long keyExpiresAtMillis) {
+        long expiresAt = Math.min(System.currentTimeMillis() + positiveTtl, keyExpiresAtMillis);
+        Entry entry = new Entry(apiKeyId, userId, tenantId, rateLimit, rateLimitBurst, expiresAt);
+
+        if (enabled) {
+            cache.put(digest, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Запомнить невалидный ключ
+     */
+    public void putInvalid(String digest) {
+        if (!enabled) {
+            return;
+        }
+        cache.put(digest, new Entry(null, null, null, null, null, System.currentTimeMillis() + negativeTtl));
+    }
+
+    /**
+     * Удалить ключ из кэша (ключ удален)
+     *
+     * @param digest TokenDigest.of(apiKey)
+     */
+    public void invalidate(String digest) {
+        if (!enabled || digest == null) {
+            return;
+        }
+        cache.invalidate(digest);
+    }
+
+    private static long remainingNanos(Entry entry) {
+        long remainingMillis = entry.expiresAtMillis() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+    }
+}
@@ -8,8 +8,10 @@ import ru.platik777.backauth.dto.AuthenticatedUser;
 import ru.platik777.backauth.dto.response.*;
 import ru.platik777.backauth.entity.*;
 import ru.platik777.backauth.entity.embedded.UserSettings;
+import ru.platik777.backauth.entity.types.TokenType;
 import ru.platik777.backauth.exception.AuthException;
 import ru.platik777.backauth.exception.CustomJwtException;
+import ru.platik777.backauth.exception.ServiceUnavailableException;
 import ru.platik777.backauth.exception.ValidationException;
 import ru.platik777.backauth.repository.*;
 
@@ -30,7 +32,6 @@ public class AuthService {
     private final ValidationService validationService;
     private final PasswordService passwordService;
     private final JwtService jwtService;
-    private final KeyService keyService;
     private final RoleService roleService;
 
     /**
@@ -42,9 +43,11 @@ public class AuthService {
 
         try {
             setDefaultUserData(user);
+            validationService.validateSignUp(user, tenant);
+
+            // BCrypt только для прошедших валидацию данных
             String hashedPassword = passwordService.generatePasswordHash(user.getPasswordHash());
             user.setPasswordHash(hashedPassword);
-            validationService.validateSignUp(user, tenant);
 
             // 4. Получение ролей и модулей
             // RoleService.RolesResponse rolesData = roleService.getAvailableRoles();
@@ -86,6 +89,8 @@ public class AuthService {
         } catch (ValidationException e) {
             log.warn("Validation failed during sign up: {}", e.getMessage());
             throw new AuthException("Registration validation failed: " + e.getMessage(), e);
+        } catch (ServiceUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during sign up for login: {}", user.getLogin(), e);
             throw new AuthException("Registration failed", e);
@@ -94,8 +99,14 @@ public class AuthService {
 
     /**
      * Вход пользователя
+     * <p/>
+     * Пароль проверяется на пуле PasswordHashingEngine (при перегрузке - 503).
+     * Старый SHA-1 хеш или BCrypt с устаревшей стоимостью после успешного входа
+     * пересчитывается; если пул перегружен - пересчет откладывается до следующего входа
+     * <p/>
+     * Без общей транзакции: ожидание пула BCrypt не держит соединение с БД,
+     * чтение пользователя и сохранение нового хеша - отдельные короткие запросы
      */
-    @Transactional
     public SignInResponse signIn(String login, String password, String agentHeader) {
         log.debug("SignIn started for login: {}", login);
 
@@ -107,13 +118,20 @@ public class AuthService {
         }
 
         try {
-            String passwordHash = passwordService.generatePasswordHash(password);
-            User user = userRepository.findByLogin(login)
-                    .orElseThrow(() -> new AuthException("Invalid login or password"));
+            User user = userRepository.findByLogin(login).orElse(null);
 
-            if (!user.getPasswordHash().equals(passwordHash)) {
+            if (user == null) {
+                // Та же работа, что и для существующего логина - время ответа не выдает его отсутствие
+                passwordService.verifyDummyPassword(password);
                 throw new AuthException("Invalid login or password");
             }
+
+            if (!passwordService.verifyPassword(password, user.getPasswordHash())) {
+                throw new AuthException("Invalid login or password");
+            }
+
+            rehashIfNeeded(user, password);
+
             TokenResponse tokens = jwtService.createAllTokens(user.getId(), user.getTenantId());
 
             log.info("User signed in successfully: userId={}, login={}", user.getId(), login);
@@ -129,12 +147,42 @@ public class AuthService {
         } catch (AuthException e) {
             log.warn("Authentication failed for login: {}", login);
             throw e;
+        } catch (ServiceUnavailableException e) {
+            log.warn("Sign in rejected, password hashing is overloaded: login={}", login);
+            throw e;
         } catch (Exception e) {
             log.error("Error during sign in for login: {}", login, e);
             throw new AuthException("Sign in failed", e);
         }
     }
 
+    /**
+     * Пересчет хеша пароля после успешного входа (SHA-1 -> BCrypt, рост стоимости BCrypt)
+     * Хеш считается вне транзакции, сохраняется отдельным UPDATE с проверкой старого хеша
+     * Пересчет - по возможности: любая ошибка (пул перегружен, БД, старый пароль длиннее 72 байт)
+     * не мешает входу с верным паролем, хеш останется прежним до следующего входа
+     */
+    private void rehashIfNeeded(User user, String password) {
+        String oldHash = user.getPasswordHash();
+        if (!passwordService.needsRehash(oldHash)) {
+            return;
+        }
+
+        try {
+            String newHash = passwordService.generatePasswordHash(password);
+            if (userRepository.updatePasswordHash(user.getId(), oldHash, newHash) > 0) {
+                user.setPasswordHash(newHash);
+                log.info("Password hash upgraded for userId={}", user.getId());
+            } else {
+                log.debug("Password rehash skipped for userId={}: hash changed concurrently", user.getId());
+            }
+        } catch (ServiceUnavailableException e) {
+            log.debug("Password rehash postponed for userId={}: {}", user.getId(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Password rehash failed for userId={}, keeping the current hash: {}", user.getId(), e.getMessage());
+        }
+    }
+
     /**
      * Проверка уникальности поля
      */
@@ -232,7 +280,7 @@ public class AuthService {
         try {
             AuthenticatedUser user = jwtService.parseToken(
                     accessToken,
-                    keyService.getSigningAppKeyAccess()
+                    TokenType.APP_ACCESS
             );
 
             return AuthorizationResponse.builder()
@@ -258,7 +306,7 @@ public class AuthService {
         try {
             AuthenticatedUser user = jwtService.parseToken(
                     accessToken,
-                    keyService.getSigningBaseKeyAccess()
+                    TokenType.BASE_ACCESS
             );
 
             return AuthorizationResponse.builder()
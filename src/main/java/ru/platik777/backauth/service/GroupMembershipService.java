@@ -0,0 +1,71 @@
+package ru.platik777.backauth.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Членство пользователей в группах
+ * <p/>
+ * Группы пользователя загружаются одним запросом и держатся в кэше как
+ * отсортированный String[] - компактно и сразу пригодно для "group_id = ANY(:groupIds)"
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GroupMembershipService {
+
+    private static final String[] NO_GROUPS = new String[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.permissions.groups.max-size:50000}")
+    private long maxSize;
+
+    @Value("${app.permissions.groups.expire-after-write:60000}")
+    private long expireAfterWriteMs;
+
+    private LoadingCache<String, String[]> groupsByUser;
+
+    @PostConstruct
+    public void initialize() {
+        groupsByUser = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                .recordStats()
+                .build(this::loadGroupIds);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, groupsByUser, "permission.group.memberships");
+    }
+
+    /**
+     * Группы пользователя (отсортированный массив, пустой если групп нет)
+     */
+    public String[] getGroupIds(String userId) {
+        return groupsByUser.get(userId);
+    }
+
+    /**
+     * Сбросить закэшированное членство пользователя
+     */
+    public void invalidate(String userId) {
+        groupsByUser.invalidate(userId);
+    }
+
+    private String[] loadGroupIds(String userId) {
+        List<String> groupIds = jdbcTemplate.queryForList(
+                "SELECT group_id FROM group_user WHERE user_id = ? ORDER BY group_id", String.class, userId);
+        return groupIds.isEmpty() ? NO_GROUPS : groupIds.toArray(String[]::new);
+    }
+}
@@ -2,17 +2,29 @@ package ru.platik777.backauth.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.platik777.backauth.dto.request.CheckItemPermissionRequest;
+import ru.platik777.backauth.dto.request.PermissionChangeRequest;
+import ru.platik777.backauth.dto.response.PermissionChangeResponse;
+import ru.platik777.backauth.dto.response.PermissionCheckResponse;
+import ru.platik777.backauth.dto.response.PermissionGrantResponse;
 import ru.platik777.backauth.entity.*;
 import ru.platik777.backauth.entity.types.ItemType;
 import ru.platik777.backauth.entity.types.Permission;
 import ru.platik777.backauth.exception.PermissionDeniedException;
 import ru.platik777.backauth.repository.*;
+import ru.platik777.backauth.util.KeysetCursor;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -23,7 +35,15 @@ import java.util.stream.Collectors;
  * - WRITE (2): запись (требует READ)
  * - EXECUTE (4): выполнение (требует READ)
  * <p/>
- * Поддерживает наследование прав от родительских папок
+ * Поддерживает наследование прав от родительских папок и гранты групп
+ * (ближайший уровень важнее, на одном уровне грант пользователя важнее групповых)
+ * <p/>
+ * При включенном PermissionEngine (app.permissions.engine.enabled) проверки
+ * отвечаются из памяти; иначе - кэш решений PermissionDecisionCache, затем SQL
+ * <p/>
+ * Списки и подсчеты читают материализованную таблицу effective_permission,
+ * которую пересчитывают триггеры в БД в той же транзакции, что и изменение гранта
+ * (в том числе в обход сервиса), создание, перемещение или удаление элемента
  */
 @Slf4j
 @Service
@@ -31,11 +51,26 @@ import java.util.stream.Collectors;
 public class ItemPermissionService {
 
     private final ItemUserPermissionRepository permissionRepository;
-    private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
     private final FolderRepository folderRepository;
     private final FileRepository fileRepository;
     private final BlockRepository blockRepository;
+    private final PermissionEngine permissionEngine;
+    private final PermissionDecisionCache decisionCache;
+    private final GroupMembershipService groupMembershipService;
+    private final PermissionBatchWriter batchWriter;
+
+    @Value("${app.permissions.batch.max-size:500}")
+    private int batchMaxSize;
+
+    @Value("${app.permissions.bulk.max-size:10000}")
+    private int bulkMaxSize;
+
+    @Value("${app.permissions.page.default-size:100}")
+    private int pageDefaultSize;
+
+    @Value("${app.permissions.page.max-size:1000}")
+    private int pageMaxSize;
 
     // ==================== УПРАВЛЕНИЕ ПРАВАМИ (GRANT/UPDATE/REVOKE) ====================
 
@@ -52,9 +87,9 @@ public class ItemPermissionService {
      * @throws IllegalArgumentException если данные невалидны
      */
     @Transactional
-    public ItemUserPermission grantPermission(String granterId, String targetUserId,
-                                              String itemId, ItemType itemType,
-                                              short permissions) {
+    public PermissionGrantResponse grantPermission(String granterId, String targetUserId,
+                                                   String itemId, ItemType itemType,
+                                                   short permissions) {
         log.info("Granting permission: granter={}, target={}, item={}, type={}, permissions={}",
                 granterId, targetUserId, itemId, itemType, permissions);
 
@@ -71,32 +106,22 @@ public class ItemPermissionService {
             );
         }
 
-        // Проверка что пользователь существует
-        if (!userRepository.existsById(targetUserId)) {
-            throw new IllegalArgumentException("Target user not found: " + targetUserId);
-        }
+        // Один INSERT ... ON CONFLICT DO NOTHING вместо проверок существования пользователя,
+        // элемента и гранта: отсутствие пользователя/элемента приходит как нарушение FK
+        String id = insertPermissionRow(targetUserId, itemId, itemType, permissions)
+                .orElseThrow(() -> new IllegalStateException(
+                        "User " + targetUserId + " already has permission for item " + itemId +
+                        ". Use updatePermission() to modify existing permissions."));
 
-        // Проверка что элемент существует
-        validateItemExists(itemId, itemType);
-
-        // Проверка что у пользователя еще нет прав на этот элемент
-        Optional<ItemUserPermission> existing = getPermissionEntity(targetUserId, itemId, itemType);
-        if (existing.isPresent()) {
-            throw new IllegalStateException("User " + targetUserId + " already has permission for item " + itemId +
-                    ". Use updatePermission() to modify existing permissions.");
-        }
-
-        // Создаем новую запись прав
-        ItemUserPermission permission = createPermissionEntity(
-                targetUserId, itemId, itemType, permissions
-        );
-
-        ItemUserPermission saved = permissionRepository.save(permission);
+        afterCommit(() -> {
+            permissionEngine.onPermissionGranted(targetUserId, itemId, itemType, permissions);
+            decisionCache.invalidate(targetUserId, itemId, itemType);
+        });
 
         log.info("Permission granted successfully: id={}, user={}, item={}, permissions={}",
-                saved.getId(), targetUserId, itemId, permissions);
+                id, targetUserId, itemId, permissions);
 
-        return saved;
+        return buildGrantResponse(id, targetUserId, itemId, itemType, permissions, true);
     }
 
     /**
@@ -110,9 +135,9 @@ public class ItemPermissionService {
      * @return обновленная запись прав доступа
      */
     @Transactional
-    public ItemUserPermission updatePermission(String updaterId, String targetUserId,
-                                               String itemId, ItemType itemType,
-                                               short newPermissions) {
+    public PermissionGrantResponse updatePermission(String updaterId, String targetUserId,
+                                                    String itemId, ItemType itemType,
+                                                    short newPermissions) {
         log.info("Updating permission: updater={}, target={}, item={}, newPermissions={}",
                 updaterId, targetUserId, itemId, newPermissions);
 
@@ -129,22 +154,66 @@ public class ItemPermissionService {
             );
         }
 
-        // Получаем существующую запись
-        ItemUserPermission permission = getPermissionEntity(targetUserId, itemId, itemType)
+        // UPDATE ... RETURNING: чтение записи перед изменением не нужно
+        String id = updatePermissionRow(targetUserId, itemId, itemType, newPermissions)
                 .orElseThrow(() -> new IllegalArgumentException(
                         "Permission not found for user " + targetUserId + " and item " + itemId
                 ));
 
-        short oldPermissions = permission.getPermission();
+        afterCommit(() -> {
+            permissionEngine.onPermissionGranted(targetUserId, itemId, itemType, newPermissions);
+            decisionCache.invalidate(targetUserId, itemId, itemType);
+        });
+
+        log.info("Permission updated successfully: id={}, user={}, item={}, newPermissions={}",
+                id, targetUserId, itemId, newPermissions);
+
+        return buildGrantResponse(id, targetUserId, itemId, itemType, newPermissions, false);
+    }
+
+    /**
+     * Выдать или изменить права доступа пользователя на элемент (upsert)
+     * Не требует знать, есть ли уже грант - удобно для массового онбординга
+     *
+     * @param granterId ID пользователя, выдающего права (должен иметь WRITE)
+     * @param targetUserId ID пользователя, которому выдаются права
+     * @param itemId ID элемента
+     * @param itemType тип элемента
+     * @param permissions битовая маска прав (0-7)
+     * @return запись прав доступа (created = true, если грант создан)
+     */
+    @Transactional
+    public PermissionGrantResponse setPermission(String granterId, String targetUserId,
+                                                 String itemId, ItemType itemType,
+                                                 short permissions) {
+        log.info("Setting permission: granter={}, target={}, item={}, type={}, permissions={}",
+                granterId, targetUserId, itemId, itemType, permissions);
+
+        validateUserId(granterId);
+        validateUserId(targetUserId);
+        validateItemId(itemId);
+        validateItemType(itemType);
+        Permission.validate(permissions);
+
+        if (!hasReadWritePermission(granterId, itemId, itemType)) {
+            throw new PermissionDeniedException(
+                    "User " + granterId + " does not have WRITE permission to grant access to item " + itemId
+            );
+        }
 
-        // Обновляем права
-        permission.setPermission(newPermissions);
-        ItemUserPermission updated = permissionRepository.save(permission);
+        Object[] row = upsertPermissionRow(targetUserId, itemId, itemType, permissions);
+        String id = (String) row[0];
+        boolean created = Boolean.TRUE.equals(row[1]);
 
-        log.info("Permission updated successfully: id={}, user={}, item={}, oldPermissions={}, newPermissions={}",
-                updated.getId(), targetUserId, itemId, oldPermissions, newPermissions);
+        afterCommit(() -> {
+            permissionEngine.onPermissionGranted(targetUserId, itemId, itemType, permissions);
+            decisionCache.invalidate(targetUserId, itemId, itemType);
+        });
 
-        return updated;
+        log.info("Permission set successfully: id={}, user={}, item={}, permissions={}, created={}",
+                id, targetUserId, itemId, permissions, created);
+
+        return buildGrantResponse(id, targetUserId, itemId, itemType, permissions, created);
     }
 
     /**
@@ -174,17 +243,213 @@ public class ItemPermissionService {
             );
         }
 
-        // Находим и удаляем запись
-        ItemUserPermission permission = getPermissionEntity(targetUserId, itemId, itemType)
-                .orElseThrow(() -> new IllegalArgumentException(
-                        "Permission not found for user " + targetUserId + " and item " + itemId
-                ));
+        // Один DELETE: отсутствие гранта видно по числу удаленных строк
+        if (deletePermissionRow(targetUserId, itemId, itemType) == 0) {
+            throw new IllegalArgumentException(
+                    "Permission not found for user " + targetUserId + " and item " + itemId
+            );
+        }
 
-        permissionRepository.delete(permission);
+        afterCommit(() -> {
+            permissionEngine.onPermissionRevoked(targetUserId, itemId, itemType);
+            decisionCache.invalidate(targetUserId, itemId, itemType);
+        });
 
         log.info("Permission revoked successfully: user={}, item={}", targetUserId, itemId);
     }
 
+    // ==================== МАССОВОЕ УПРАВЛЕНИЕ ПРАВАМИ ====================
+
+    /**
+     * Массово выдать, изменить и отозвать права пользователей
+     * <p/>
+     * - WRITE вызывающего проверяется один раз на каждый уникальный элемент, одним запросом
+     * - изменения применяются JDBC batch-ами в одной транзакции
+     * - материализованные права пересчитывают триггеры - по одному разу на элемент в каждом batch
+     * Ошибки отдельных изменений не прерывают запрос, а возвращаются в результате
+     *
+     * @param actorId ID пользователя, выполняющего изменения (должен иметь WRITE на элементы)
+     * @param changes список изменений
+     * @return результат по каждому изменению в порядке запроса
+     */
+    @Transactional
+    public List<PermissionChangeResponse> applyPermissionChanges(String actorId, List<PermissionChangeRequest> changes) {
+        validateUserId(actorId);
+        if (changes == null || changes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (changes.size() > bulkMaxSize) {
+            throw new IllegalArgumentException(
+                    "Too many changes in bulk request: " + changes.size() + ", max " + bulkMaxSize
+            );
+        }
+
+        log.info("Applying bulk permission changes: actor={}, count={}", actorId, changes.size());
+
+        int count = changes.size();
+        PermissionChangeResponse.Status[] statuses = new PermissionChangeResponse.Status[count];
+        String[] messages = new String[count];
+
+        // Валидация, отсев повторов одной пары (пользователь, элемент) и сбор уникальных элементов
+        Set<String> seenPairs = new HashSet<>();
+        Map<String, Integer> itemPositions = new LinkedHashMap<>();
+        List<PermissionChangeRequest> distinctItems = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            PermissionChangeRequest change = changes.get(i);
+            String error = validateChange(change);
+            if (error != null) {
+                statuses[i] = PermissionChangeResponse.Status.INVALID;
+                messages[i] = error;
+                continue;
+            }
+
+            String itemKey = change.getItemType().name() + ":" + change.getItemId();
+            if (!seenPairs.add(change.getTargetUserId() + ":" + itemKey)) {
+                statuses[i] = PermissionChangeResponse.Status.INVALID;
+                messages[i] = "Duplicate change for user " + change.getTargetUserId() + " and item " + change.getItemId();
+                continue;
+            }
+
+            if (itemPositions.putIfAbsent(itemKey, distinctItems.size()) == null) {
+                distinctItems.add(change);
+            }
+        }
+
+        // WRITE вызывающего на все уникальные элементы (движок/кэш + один запрос)
+        String[] itemIds = new String[distinctItems.size()];
+        ItemType[] itemTypes = new ItemType[distinctItems.size()];
+        for (int j = 0; j < distinctItems.size(); j++) {
+            itemIds[j] = distinctItems.get(j).getItemId();
+            itemTypes[j] = distinctItems.get(j).getItemType();
+        }
+        short[] actorPermissions = resolvePermissions(actorId, itemIds, itemTypes);
+        int writeMask = Permission.combine(Permission.READ, Permission.WRITE);
+
+        Set<String> targetUserIds = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            if (statuses[i] == null) {
+                targetUserIds.add(changes.get(i).getTargetUserId());
+            }
+        }
+        Set<String> existingUserIds = batchWriter.findExistingUserIds(targetUserIds);
+
+        Map<PermissionChangeRequest.Operation, List<Integer>> positionsByOperation =
+                new EnumMap<>(PermissionChangeRequest.Operation.class);
+
+        for (int i = 0; i < count; i++) {
+            if (statuses[i] != null) {
+                continue;
+            }
+            PermissionChangeRequest change = changes.get(i);
+            int itemPosition = itemPositions.get(change.getItemType().name() + ":" + change.getItemId());
+
+            if ((actorPermissions[itemPosition] & writeMask) != writeMask) {
+                statuses[i] = PermissionChangeResponse.Status.FORBIDDEN;
+                messages[i] = "User " + actorId + " does not have WRITE permission on item " + change.getItemId();
+            } else if (!existingUserIds.contains(change.getTargetUserId())) {
+                statuses[i] = PermissionChangeResponse.Status.USER_NOT_FOUND;
+                messages[i] = "Target user not found: " + change.getTargetUserId();
+            } else {
+                positionsByOperation.computeIfAbsent(change.getOperation(), operation -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Запись: по одному batch на операцию и тип элемента
+        positionsByOperation.forEach((operation, positions) -> {
+            List<PermissionBatchWriter.Row> rows = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                PermissionChangeRequest change = changes.get(position);
+                short permissions = change.getPermissions() != null ? change.getPermissions() : 0;
+                rows.add(new PermissionBatchWriter.Row(
+                        change.getTargetUserId(), change.getItemId(), change.getItemType(), permissions));
+            }
+
+            int[] affected = switch (operation) {
+                case GRANT -> batchWriter.insert(rows);
+                case UPDATE -> batchWriter.update(rows);
+                case REVOKE -> batchWriter.delete(rows);
+            };
+
+            for (int j = 0; j < positions.size(); j++) {
+                int position = positions.get(j);
+                if (affected[j] != 0) {
+                    statuses[position] = PermissionChangeResponse.Status.APPLIED;
+                } else if (operation == PermissionChangeRequest.Operation.GRANT) {
+                    statuses[position] = PermissionChangeResponse.Status.ALREADY_EXISTS;
+                    messages[position] = "Permission already exists, use UPDATE";
+                } else {
+                    statuses[position] = PermissionChangeResponse.Status.NOT_FOUND;
+                    messages[position] = "Permission not found";
+                }
+            }
+        });
+
+        List<PermissionChangeRequest> applied = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (statuses[i] == PermissionChangeResponse.Status.APPLIED) {
+                applied.add(changes.get(i));
+            }
+        }
+
+        afterCommit(() -> {
+            for (PermissionChangeRequest change : applied) {
+                if (change.getOperation() == PermissionChangeRequest.Operation.REVOKE) {
+                    permissionEngine.onPermissionRevoked(change.getTargetUserId(), change.getItemId(), change.getItemType());
+                } else {
+                    permissionEngine.onPermissionGranted(change.getTargetUserId(), change.getItemId(),
+                            change.getItemType(), change.getPermissions());
+                }
+                decisionCache.invalidate(change.getTargetUserId(), change.getItemId(), change.getItemType());
+            }
+        });
+
+        List<PermissionChangeResponse> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PermissionChangeRequest change = changes.get(i);
+            responses.add(PermissionChangeResponse.builder()
+                    .index(i)
+                    .operation(change != null && change.getOperation() != null ? change.getOperation().name() : null)
+                    .targetUserId(change != null ? change.getTargetUserId() : null)
+                    .itemId(change != null ? change.getItemId() : null)
+                    .itemType(change != null && change.getItemType() != null ? change.getItemType().name() : null)
+                    .status(statuses[i])
+                    .message(messages[i])
+                    .build());
+        }
+
+        log.info("Bulk permission changes applied: actor={}, requested={}, applied={}, items={}",
+                actorId, count, applied.size(), distinctItems.size());
+
+        return responses;
+    }
+
+    /**
+     * @return описание ошибки или null, если изменение корректно
+     */
+    private String validateChange(PermissionChangeRequest change) {
+        if (change == null) {
+            return "Change cannot be null";
+        }
+        if (change.getOperation() == null) {
+            return "Operation cannot be null";
+        }
+        try {
+            validateUserId(change.getTargetUserId());
+            validateItemId(change.getItemId());
+            validateItemType(change.getItemType());
+            if (change.getOperation() != PermissionChangeRequest.Operation.REVOKE) {
+                if (change.getPermissions() == null) {
+                    return "Permissions cannot be null for " + change.getOperation();
+                }
+                Permission.validate(change.getPermissions());
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
     // ==================== ПОЛУЧЕНИЕ ЭФФЕКТИВНЫХ ПРАВ С НАСЛЕДОВАНИЕМ ====================
 
     /**
@@ -194,10 +459,7 @@ public class ItemPermissionService {
     public Short getProjectPermissions(String userId, String projectId) {
         log.debug("Getting project permissions for user={}, project={}", userId, projectId);
 
-        // Теперь возвращается Short напрямую, а не ItemUserPermission
-        Short permissions = permissionRepository.findEffectivePermissionForProject(userId, projectId);
-
-        short result = permissions != null ? permissions : 0;
+        short result = resolvePermission(userId, projectId, ItemType.PROJECT);
 
         log.debug("Project permissions result: {} for user={}, project={}", result, userId, projectId);
         return result;
@@ -210,9 +472,7 @@ public class ItemPermissionService {
     public Short getBlockPermissions(String userId, String blockId) {
         log.debug("Getting block permissions for user={}, block={}", userId, blockId);
 
-        Short permissions = permissionRepository.findEffectivePermissionForBlock(userId, blockId);
-
-        short result = permissions != null ? permissions : 0;
+        short result = resolvePermission(userId, blockId, ItemType.BLOCK);
 
         log.debug("Block permissions result: {} for user={}, block={}", result, userId, blockId);
         return result;
@@ -225,9 +485,7 @@ public class ItemPermissionService {
     public Short getFilePermissions(String userId, String fileId) {
         log.debug("Getting file permissions for user={}, file={}", userId, fileId);
 
-        Short permissions = permissionRepository.findEffectivePermissionForFile(userId, fileId);
-
-        short result = permissions != null ? permissions : 0;
+        short result = resolvePermission(userId, fileId, ItemType.FILE);
 
         log.debug("File permissions result: {} for user={}, file={}", result, userId, fileId);
         return result;
@@ -240,9 +498,7 @@ public class ItemPermissionService {
     public Short getFolderPermissions(String userId, String folderId) {
         log.debug("Getting folder permissions for user={}, folder={}", userId, folderId);
 
-        Short permissions = permissionRepository.findEffectivePermissionForFolder(userId, folderId);
-
-        short result = permissions != null ? permissions : 0;
+        short result = resolvePermission(userId, folderId, ItemType.FOLDER);
 
         log.debug("Folder permissions result: {} for user={}, folder={}", result, userId, folderId);
         return result;
@@ -270,12 +526,7 @@ public class ItemPermissionService {
             );
         }
 
-        boolean hasPermission = switch (itemType) {
-            case FOLDER -> permissionRepository.hasFolderPermission(userId, itemId, (short) requiredPermissions);
-            case PROJECT -> permissionRepository.hasProjectPermission(userId, itemId, (short) requiredPermissions);
-            case BLOCK -> permissionRepository.hasBlockPermission(userId, itemId, (short) requiredPermissions);
-            case FILE -> permissionRepository.hasFilePermission(userId, itemId, (short) requiredPermissions);
-        };
+        boolean hasPermission = checkPermission(userId, itemId, itemType, (short) requiredPermissions);
 
         log.debug("Permission check result: {} for userId: {}, itemId: {}, itemType: {}",
                 hasPermission, userId, itemId, itemType);
@@ -325,7 +576,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canReadProject(String userId, String projectId) {
-        return permissionRepository.hasProjectPermission(userId, projectId, (short) 1);
+        return checkPermission(userId, projectId, ItemType.PROJECT, (short) 1);
     }
 
     /**
@@ -333,7 +584,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canWriteProject(String userId, String projectId) {
-        return permissionRepository.hasProjectPermission(userId, projectId, (short) 3); // READ + WRITE
+        return checkPermission(userId, projectId, ItemType.PROJECT, (short) 3); // READ + WRITE
     }
 
     /**
@@ -341,7 +592,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canExecuteProject(String userId, String projectId) {
-        return permissionRepository.hasProjectPermission(userId, projectId, (short) 5); // READ + EXECUTE
+        return checkPermission(userId, projectId, ItemType.PROJECT, (short) 5); // READ + EXECUTE
     }
 
     /**
@@ -349,7 +600,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canReadBlock(String userId, String blockId) {
-        return permissionRepository.hasBlockPermission(userId, blockId, (short) 1);
+        return checkPermission(userId, blockId, ItemType.BLOCK, (short) 1);
     }
 
     /**
@@ -357,7 +608,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canWriteBlock(String userId, String blockId) {
-        return permissionRepository.hasBlockPermission(userId, blockId, (short) 3);
+        return checkPermission(userId, blockId, ItemType.BLOCK, (short) 3);
     }
 
     /**
@@ -365,7 +616,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canReadFile(String userId, String fileId) {
-        return permissionRepository.hasFilePermission(userId, fileId, (short) 1);
+        return checkPermission(userId, fileId, ItemType.FILE, (short) 1);
     }
 
     /**
@@ -373,7 +624,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canWriteFile(String userId, String fileId) {
-        return permissionRepository.hasFilePermission(userId, fileId, (short) 3);
+        return checkPermission(userId, fileId, ItemType.FILE, (short) 3);
     }
 
     /**
@@ -381,7 +632,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canReadFolder(String userId, String folderId) {
-        return permissionRepository.hasFolderPermission(userId, folderId, (short) 1);
+        return checkPermission(userId, folderId, ItemType.FOLDER, (short) 1);
     }
 
     /**
@@ -389,7 +640,7 @@ public class ItemPermissionService {
      */
     @Transactional(readOnly = true)
     public boolean canWriteFolder(String userId, String folderId) {
-        return permissionRepository.hasFolderPermission(userId, folderId, (short) 3);
+        return checkPermission(userId, folderId, ItemType.FOLDER, (short) 3);
     }
 
     // ==================== МАССОВЫЕ ОПЕРАЦИИ ====================
@@ -490,6 +741,81 @@ public class ItemPermissionService {
         return permissions;
     }
 
+    // ==================== МАССОВАЯ ПРОВЕРКА ПРАВ (СМЕШАННЫЕ ТИПЫ) ====================
+
+    /**
+     * Проверить права на набор элементов разных типов
+     * <p/>
+     * Ответы из in-memory движка и кэша решений не ходят в БД, остальные
+     * разрешаются одним запросом по грантам - тем же правилом, что и одиночная проверка.
+     * Маска с WRITE или EXECUTE без READ дает результат INVALID для этого элемента
+     *
+     * @return результаты в порядке запросов
+     */
+    @Transactional(readOnly = true)
+    public List<PermissionCheckResponse> checkPermissionsBatch(String userId, List<CheckItemPermissionRequest> requests) {
+        validateUserId(userId);
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (requests.size() > batchMaxSize) {
+            throw new IllegalArgumentException(
+                    "Too many items in batch: " + requests.size() + ", max " + batchMaxSize
+            );
+        }
+
+        log.debug("Batch permission check for user={}, count={}", userId, requests.size());
+
+        for (CheckItemPermissionRequest request : requests) {
+            if (request == null) {
+                throw new IllegalArgumentException("Batch item cannot be null");
+            }
+            validateItemId(request.getItemId());
+            validateItemType(request.getItemType());
+            validatePermissionValue(request.getRequiredPermissions() != null ? request.getRequiredPermissions() : -1);
+        }
+
+        String[] itemIds = new String[requests.size()];
+        ItemType[] itemTypes = new ItemType[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            itemIds[i] = requests.get(i).getItemId();
+            itemTypes[i] = requests.get(i).getItemType();
+        }
+
+        short[] effective = resolvePermissions(userId, itemIds, itemTypes);
+
+        List<PermissionCheckResponse> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            CheckItemPermissionRequest request = requests.get(i);
+            int required = request.getRequiredPermissions();
+            PermissionCheckResponse.PermissionCheckResponseBuilder response = PermissionCheckResponse.builder()
+                    .userId(userId)
+                    .itemId(request.getItemId())
+                    .itemType(request.getItemType().name())
+                    .requiredPermissions(required);
+
+            // То же правило, что в hasPermission: WRITE и EXECUTE проверяются только вместе с READ
+            if (!Permission.isValid(required)) {
+                responses.add(response
+                        .hasPermission(false)
+                        .status(PermissionCheckResponse.Status.INVALID)
+                        .message("Invalid required permissions: " + required + ". Cannot check WRITE or EXECUTE without READ")
+                        .build());
+                continue;
+            }
+
+            boolean allowed = (effective[i] & required) == required;
+            responses.add(response
+                    .hasPermission(allowed)
+                    .status(allowed ? PermissionCheckResponse.Status.ALLOWED : PermissionCheckResponse.Status.DENIED)
+                    .message(allowed ? null : "Insufficient permissions: required " + required + ", effective " + effective[i])
+                    .build());
+        }
+
+        log.debug("Batch permission check for user={}: {} items", userId, requests.size());
+        return responses;
+    }
+
     // ==================== ПОЛУЧЕНИЕ ДОСТУПНЫХ ЭЛЕМЕНТОВ ====================
 
     /**
@@ -585,6 +911,96 @@ public class ItemPermissionService {
         return folders;
     }
 
+    // ==================== ПОСТРАНИЧНОЕ ПОЛУЧЕНИЕ ДОСТУПНЫХ ЭЛЕМЕНТОВ ====================
+
+    /**
+     * Страница доступных проектов (keyset-пагинация по rank, created_at, id)
+     *
+     * @param cursor курсор из предыдущей страницы или null для первой
+     * @param limit размер страницы (null - значение по умолчанию, ограничен сверху)
+     */
+    @Transactional(readOnly = true)
+    public ItemsPage<ItemWithPermissions> getAccessibleProjectsPage(String userId, String tenantId,
+                                                                    String cursor, Integer limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int pageSize = normalizePageSize(limit);
+
+        List<Object[]> results = projectRepository.findAccessibleProjectsPage(
+                userId, tenantId, after.rank(), after.createdAt(), after.id(), pageSize + 1);
+
+        return toPage(results, pageSize, 2, 3, row -> new ItemWithPermissions(
+                (String) row[0],
+                (String) row[1],
+                ((Number) row[6]).shortValue(),
+                ((Timestamp) row[3]).toLocalDateTime(),
+                ItemType.PROJECT
+        ));
+    }
+
+    /**
+     * Страница доступных блоков
+     */
+    @Transactional(readOnly = true)
+    public ItemsPage<ItemWithPermissions> getAccessibleBlocksPage(String userId, String tenantId,
+                                                                  String cursor, Integer limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int pageSize = normalizePageSize(limit);
+
+        List<Object[]> results = blockRepository.findAccessibleBlocksPage(
+                userId, tenantId, after.rank(), after.createdAt(), after.id(), pageSize + 1);
+
+        return toPage(results, pageSize, 2, 3, row -> new ItemWithPermissions(
+                (String) row[0],
+                (String) row[1],
+                ((Number) row[6]).shortValue(),
+                ((Timestamp) row[3]).toLocalDateTime(),
+                ItemType.BLOCK
+        ));
+    }
+
+    /**
+     * Страница доступных файлов
+     */
+    @Transactional(readOnly = true)
+    public ItemsPage<ItemWithPermissions> getAccessibleFilesPage(String userId, String tenantId,
+                                                                 String cursor, Integer limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int pageSize = normalizePageSize(limit);
+
+        List<Object[]> results = fileRepository.findAccessibleFilesPage(
+                userId, tenantId, after.rank(), after.createdAt(), after.id(), pageSize + 1);
+
+        return toPage(results, pageSize, 2, 3, row -> new ItemWithPermissions(
+                (String) row[0],
+                (String) row[1],
+                ((Number) row[6]).shortValue(),
+                ((Timestamp) row[3]).toLocalDateTime(),
+                ItemType.FILE
+        ));
+    }
+
+    /**
+     * Страница доступных папок
+     */
+    @Transactional(readOnly = true)
+    public ItemsPage<FolderWithPermissions> getAccessibleFoldersPage(String userId, String tenantId,
+                                                                     String cursor, Integer limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int pageSize = normalizePageSize(limit);
+
+        List<Object[]> results = folderRepository.findAccessibleFoldersPage(
+                userId, tenantId, after.rank(), after.createdAt(), after.id(), pageSize + 1);
+
+        return toPage(results, pageSize, 3, 5, row -> new FolderWithPermissions(
+                (String) row[0],
+                (String) row[1],
+                (String) row[2],
+                (Boolean) row[4],
+                ((Number) row[8]).shortValue(),
+                ((Timestamp) row[5]).toLocalDateTime()
+        ));
+    }
+
     // ==================== ПОЛУЧЕНИЕ ЭЛЕМЕНТОВ В ПАПКЕ ====================
 
     /**
@@ -681,16 +1097,35 @@ public class ItemPermissionService {
     }
 
     /**
-     * Получить все содержимое папки с правами доступа
+     * Получить все содержимое папки с правами доступа (один запрос на все типы)
      */
     @Transactional(readOnly = true)
     public FolderContents getFolderContents(String userId, String folderId) {
         log.debug("Getting folder contents for folder={}, user={}", folderId, userId);
 
-        List<FolderWithPermissions> subfolders = getSubfolders(userId, folderId);
-        List<ItemWithPermissions> projects = getProjectsInFolder(userId, folderId);
-        List<ItemWithPermissions> blocks = getBlocksInFolder(userId, folderId);
-        List<ItemWithPermissions> files = getFilesInFolder(userId, folderId);
+        String[] groupIds = groupMembershipService.getGroupIds(userId);
+        List<Object[]> results = folderRepository.findFolderContentsWithPermissions(userId, folderId, groupIds);
+
+        List<FolderWithPermissions> subfolders = new ArrayList<>();
+        List<ItemWithPermissions> projects = new ArrayList<>();
+        List<ItemWithPermissions> blocks = new ArrayList<>();
+        List<ItemWithPermissions> files = new ArrayList<>();
+
+        for (Object[] row : results) {
+            ItemType itemType = ItemType.valueOf((String) row[0]);
+            String id = (String) row[1];
+            String parentId = (String) row[3];
+            LocalDateTime createdAt = ((Timestamp) row[6]).toLocalDateTime();
+            short permissions = ((Number) row[7]).shortValue();
+
+            switch (itemType) {
+                case FOLDER -> subfolders.add(new FolderWithPermissions(
+                        id, (String) row[2], parentId, (Boolean) row[5], permissions, createdAt));
+                case PROJECT -> projects.add(new ItemWithPermissions(id, parentId, permissions, createdAt, itemType));
+                case BLOCK -> blocks.add(new ItemWithPermissions(id, parentId, permissions, createdAt, itemType));
+                case FILE -> files.add(new ItemWithPermissions(id, parentId, permissions, createdAt, itemType));
+            }
+        }
 
         FolderContents contents = new FolderContents(subfolders, projects, blocks, files);
 
@@ -733,72 +1168,228 @@ public class ItemPermissionService {
     // ==================== ПРИВАТНЫЕ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
 
     /**
-     * Получить сущность прав доступа (только прямой доступ, без наследования)
+     * Проверка маски прав по эффективным правам
      */
-    private Optional<ItemUserPermission> getPermissionEntity(String userId, String itemId, ItemType itemType) {
-        return switch (itemType) {
-            case PROJECT -> permissionRepository.findByUserIdAndProjectId(userId, itemId);
-            case FOLDER -> permissionRepository.findByUserIdAndFolderId(userId, itemId);
-            case FILE -> permissionRepository.findByUserIdAndFileId(userId, itemId);
-            case BLOCK -> permissionRepository.findByUserIdAndBlockId(userId, itemId);
-        };
+    private boolean checkPermission(String userId, String itemId, ItemType itemType, short permissionMask) {
+        return (resolvePermission(userId, itemId, itemType) & permissionMask) == permissionMask;
     }
 
     /**
-     * Создать новую сущность прав доступа
+     * Эффективные права: in-memory движок, затем кэш решений, затем SQL (результат кэшируется)
      */
-    private ItemUserPermission createPermissionEntity(String userId, String itemId, ItemType itemType, short permissions) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found: " + userId));
+    private short resolvePermission(String userId, String itemId, ItemType itemType) {
+        Short permissions = findResolvedPermission(userId, itemId, itemType);
+        if (permissions != null) {
+            return permissions;
+        }
 
-        ItemUserPermission permission = ItemUserPermission.builder()
-                .user(user)
-                .permission(permissions)
-                .build();
+        // Группы из кэша после поколения: смена членства во время запроса не попадет в кэш решений
+        long generation = decisionCache.generation(userId);
+        String[] groupIds = groupMembershipService.getGroupIds(userId);
+        permissions = permissionRepository.findEffectivePermission(userId, groupIds, itemType.name(), itemId);
 
-        // Привязываем к соответствующему элементу
-        switch (itemType) {
-            case PROJECT -> {
-                Project project = projectRepository.findById(itemId)
-                        .orElseThrow(() -> new IllegalArgumentException("Project not found: " + itemId));
-                permission.setProject(project);
-            }
-            case FOLDER -> {
-                Folder folder = folderRepository.findById(itemId)
-                        .orElseThrow(() -> new IllegalArgumentException("Folder not found: " + itemId));
-                permission.setFolder(folder);
-            }
-            case FILE -> {
-                File file = fileRepository.findById(itemId)
-                        .orElseThrow(() -> new IllegalArgumentException("File not found: " + itemId));
-                permission.setFile(file);
+        short result = permissions != null ? permissions : 0;
+        decisionCache.put(userId, itemId, itemType, result, generation);
+        return result;
+    }
+
+    private int normalizePageSize(Integer limit) {
+        if (limit == null) {
+            return pageDefaultSize;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive, got: " + limit);
+        }
+        return Math.min(limit, pageMaxSize);
+    }
+
+    /**
+     * Собрать страницу из pageSize + 1 строк: лишняя строка означает, что есть продолжение
+     * id всегда в row[0], индексы rank и created_at зависят от запроса
+     */
+    private <T> ItemsPage<T> toPage(List<Object[]> rows, int pageSize, int rankIndex, int createdAtIndex,
+                                    Function<Object[], T> mapper) {
+        boolean hasMore = rows.size() > pageSize;
+        List<Object[]> pageRows = hasMore ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = null;
+        if (hasMore) {
+            Object[] last = pageRows.get(pageRows.size() - 1);
+            nextCursor = KeysetCursor.after((Number) last[rankIndex], (Timestamp) last[createdAtIndex], (String) last[0])
+                    .encode();
+        }
+
+        List<T> items = pageRows.stream().map(mapper).collect(Collectors.toList());
+        return new ItemsPage<>(items, nextCursor);
+    }
+
+    /**
+     * Права пользователя на набор элементов: движок/кэш, затем один запрос
+     * по грантам для всех промахов (результаты кладутся в кэш)
+     * Промахи разрешаются так же, как в resolvePermission (resolve_effective_permissions по живым грантам),
+     * поэтому одиночная и массовая проверки кэшируют одинаковые решения
+     * itemIds[i] и itemTypes[i] описывают один элемент
+     */
+    private short[] resolvePermissions(String userId, String[] itemIds, ItemType[] itemTypes) {
+        short[] effective = new short[itemIds.length];
+        List<Integer> misses = new ArrayList<>();
+
+        for (int i = 0; i < itemIds.length; i++) {
+            Short permissions = findResolvedPermission(userId, itemIds[i], itemTypes[i]);
+            if (permissions != null) {
+                effective[i] = permissions;
+            } else {
+                misses.add(i);
             }
-            case BLOCK -> {
-                Block block = blockRepository.findById(itemId)
-                        .orElseThrow(() -> new IllegalArgumentException("Block not found: " + itemId));
-                permission.setBlock(block);
+        }
+
+        if (misses.isEmpty()) {
+            return effective;
+        }
+
+        String[] missTypes = new String[misses.size()];
+        String[] missIds = new String[misses.size()];
+        for (int j = 0; j < misses.size(); j++) {
+            missTypes[j] = itemTypes[misses.get(j)].name();
+            missIds[j] = itemIds[misses.get(j)];
+        }
+
+        long generation = decisionCache.generation(userId);
+        String[] groupIds = groupMembershipService.getGroupIds(userId);
+        Map<String, Short> found = new HashMap<>();
+        for (Object[] row : permissionRepository.findEffectivePermissions(userId, groupIds, missTypes, missIds)) {
+            found.put(row[0] + ":" + row[1], ((Number) row[2]).shortValue());
+        }
+
+        for (int index : misses) {
+            short permissions = found.getOrDefault(itemTypes[index].name() + ":" + itemIds[index], (short) 0);
+            effective[index] = permissions;
+            decisionCache.put(userId, itemIds[index], itemTypes[index], permissions, generation);
+        }
+
+        log.debug("Resolved {} permissions for user={}, {} from DB", itemIds.length, userId, misses.size());
+        return effective;
+    }
+
+    /**
+     * Права без обращения к БД: in-memory движок или кэш решений
+     *
+     * @return битовая маска или null, если ответа в памяти нет
+     */
+    private Short findResolvedPermission(String userId, String itemId, ItemType itemType) {
+        Short permissions = permissionEngine.findEffectivePermission(userId, itemId, itemType);
+        if (permissions != null) {
+            return permissions;
+        }
+        return decisionCache.get(userId, itemId, itemType);
+    }
+
+    /**
+     * Выполнить действие после коммита текущей транзакции
+     * Используется для синхронизации in-memory структур только с зафиксированными данными
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
+        });
+    }
+
+    // ==================== ЗАПИСЬ ГРАНТОВ ====================
+
+    private Optional<String> insertPermissionRow(String userId, String itemId, ItemType itemType, short permissions) {
+        String id = UUID.randomUUID().toString();
+        try {
+            return switch (itemType) {
+                case PROJECT -> permissionRepository.insertProjectPermission(id, userId, itemId, permissions);
+                case FOLDER -> permissionRepository.insertFolderPermission(id, userId, itemId, permissions);
+                case FILE -> permissionRepository.insertFilePermission(id, userId, itemId, permissions);
+                case BLOCK -> permissionRepository.insertBlockPermission(id, userId, itemId, permissions);
+            };
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e, userId, itemId, itemType);
         }
+    }
 
-        return permission;
+    private Optional<String> updatePermissionRow(String userId, String itemId, ItemType itemType, short permissions) {
+        return switch (itemType) {
+            case PROJECT -> permissionRepository.updateProjectPermission(userId, itemId, permissions);
+            case FOLDER -> permissionRepository.updateFolderPermission(userId, itemId, permissions);
+            case FILE -> permissionRepository.updateFilePermission(userId, itemId, permissions);
+            case BLOCK -> permissionRepository.updateBlockPermission(userId, itemId, permissions);
+        };
     }
 
     /**
-     * Проверить что элемент существует
+     * @return [id, inserted]
      */
-    private void validateItemExists(String itemId, ItemType itemType) {
-        boolean exists = switch (itemType) {
-            case PROJECT -> projectRepository.existsById(itemId);
-            case FOLDER -> folderRepository.existsById(itemId);
-            case FILE -> fileRepository.existsById(itemId);
-            case BLOCK -> blockRepository.existsById(itemId);
+    private int deletePermissionRow(String userId, String itemId, ItemType itemType) {
+        return switch (itemType) {
+            case PROJECT -> permissionRepository.deleteProjectPermission(userId, itemId);
+            case FOLDER -> permissionRepository.deleteFolderPermission(userId, itemId);
+            case FILE -> permissionRepository.deleteFilePermission(userId, itemId);
+            case BLOCK -> permissionRepository.deleteBlockPermission(userId, itemId);
         };
+    }
 
-        if (!exists) {
-            throw new IllegalArgumentException(
-                    itemType + " not found: " + itemId
-            );
+    private Object[] upsertPermissionRow(String userId, String itemId, ItemType itemType, short permissions) {
+        String id = UUID.randomUUID().toString();
+        try {
+            List<Object[]> rows = switch (itemType) {
+                case PROJECT -> permissionRepository.upsertProjectPermission(id, userId, itemId, permissions);
+                case FOLDER -> permissionRepository.upsertFolderPermission(id, userId, itemId, permissions);
+                case FILE -> permissionRepository.upsertFilePermission(id, userId, itemId, permissions);
+                case BLOCK -> permissionRepository.upsertBlockPermission(id, userId, itemId, permissions);
+            };
+            return rows.get(0);
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e, userId, itemId, itemType);
+        }
+    }
+
+    /**
+     * Нарушение FK при записи гранта -> те же исключения, что давали проверки существования
+     */
+    private RuntimeException translateIntegrityViolation(DataIntegrityViolationException e,
+                                                         String userId, String itemId, ItemType itemType) {
+        String constraint = findConstraintName(e);
+
+        if (constraint.contains("fk_permission_user")) {
+            return new IllegalArgumentException("Target user not found: " + userId);
+        }
+        if (constraint.contains("fk_permission_" + itemType.name().toLowerCase())) {
+            return new IllegalArgumentException(itemType + " not found: " + itemId);
         }
+        return e;
+    }
+
+    private static String findConstraintName(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName();
+            }
+        }
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null ? message : "";
+    }
+
+    private PermissionGrantResponse buildGrantResponse(String id, String userId, String itemId,
+                                                       ItemType itemType, short permissions, boolean created) {
+        return PermissionGrantResponse.builder()
+                .id(id)
+                .userId(userId)
+                .itemId(itemId)
+                .itemType(itemType)
+                .permissions(permissions)
+                .created(created)
+                .build();
     }
 
     // ==================== ВАЛИДАЦИЯ ====================
@@ -980,6 +1571,34 @@ public class ItemPermissionService {
         }
     }
 
+    /**
+     * DTO страницы элементов с курсором продолжения
+     */
+    public static class ItemsPage<T> {
+        private final List<T> items;
+        private final String nextCursor;
+
+        public ItemsPage(List<T> items, String nextCursor) {
+            this.items = items != null ? items : Collections.emptyList();
+            this.nextCursor = nextCursor;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * Курсор следующей страницы или null, если это последняя страница
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean isHasMore() {
+            return nextCursor != null;
+        }
+    }
+
     /**
      * DTO для содержимого папки
      */
@@ -0,0 +1,631 @@
+package ru.platik777.backauth.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.entity.types.TokenType;
+import ru.platik777.backauth.security.Hs256TokenVerifier;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Реестр ключей подписи и парсеров JWT по типу токена
+ * <p/>
+ * SecretKey и JwtParser строятся один раз при старте из KeyService.
+ * Оба неизменяемы и потокобезопасны, поэтому создание и проверка токена
+ * не тратят время на getBytes/SHA-256/hmacShaKeyFor и сборку парсера
+ * <p/>
+ * Асимметричная подпись (app.jwt.asymmetric.enabled): access токены подписываются
+ * ES256 или EdDSA с kid в заголовке, открытый ключ публикуется в JWKS
+ * (/.well-known/jwks.json), и другие сервисы проверяют токены сами.
+ * HMAC ключи из KeyService остаются: refresh/reset/API токены подписываются ими,
+ * а ранее выпущенные HS256 access токены принимаются до истечения
+ * <p/>
+ * Ротация HMAC ключей (app.jwt.rotation):
+ * - подпись с kid выключена по умолчанию (enabled=false), проверка по kid работает всегда.
+ *   Включение в два шага: 1) выкатить эту версию на все узлы (и внешним потребителям HS256
+ *   дать проверку по kid), 2) следующим деплоем включить enabled=true. Иначе при rolling deploy
+ *   старые узлы отвергают токены новых, а откат делает недействительными все выпущенные сессии
+ * - время делится на эпохи длиной period, ключ эпохи n выводится из корневого секрета:
+ *   HMAC-SHA256(секрет, "тип:n") - все узлы получают одинаковые ключи без обмена
+ * - корневые секреты версионированы и лежат в root-secrets-file (properties):
+ *   current=N, secret.N=base64 (не короче 32 байт); подписывает текущая версия
+ *   (kid = "ТИП.rN.n"), остальные версии файла только принимаются.
+ *   Файл перечитывается при изменении вместе с проверкой эпохи, без перезапуска:
+ *   1) добавить secret.N+1, 2) через check-interval (все узлы его знают) сменить current,
+ *   3) через время жизни самого долгого токена удалить старую версию.
+ *   Утечка версии - ее удаление из файла: отзываются только ее токены
+ * - без root-secrets-file корень - ключ KeyService (kid = "ТИП.n"); такие kid принимаются
+ *   и после перехода на файл, пока accept-legacy - как и токены без kid
+ * - кольцо хранит ключи от эпохи, в которую мог быть выпущен самый старый живой токен
+ *   типа, до следующей (на расхождение часов узлов); смена эпохи - атомарная замена кольца
+ * - ключ проверки ищется по kid в Map за O(1), без перебора ключей
+ * - токены без kid (выпущенные до ротации) проверяются ключом KeyService, пока accept-legacy
+ * - API ключи живут месяцами и хранятся у клиентов, поэтому не ротируются
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JwtKeyRegistry {
+
+    private final KeyService keyService;
+    private final ObjectMapper objectMapper;
+
+    // Типы токенов, которые проверяют другие сервисы
+    private static final Set<TokenType> ASYMMETRIC_TYPES = EnumSet.of(TokenType.APP_ACCESS, TokenType.BASE_ACCESS);
+
+    // Типы токенов с ротацией HMAC ключей
+    private static final Set<TokenType> ROTATED_TYPES = EnumSet.complementOf(EnumSet.of(TokenType.API_KEY));
+
+    // Ключи KeyService - ключи токенов без kid и исходный материал для ключей эпох
+    private final Map<TokenType, SecretKey> keys = new EnumMap<>(TokenType.class);
+    private final Map<TokenType, JwtParser> parsers = new EnumMap<>(TokenType.class);
+    private final Map<TokenType, Hs256TokenVerifier> fastVerifiers = new EnumMap<>(TokenType.class);
+
+    // Открытые ключи асимметричной подписи по kid (текущий и предыдущий)
+    private final Map<String, PublicKey> publicKeys = new LinkedHashMap<>();
+
+    private volatile KeyRing ring;
+
+    @Value("${app.jwt.fast-verifier.enabled:true}")
+    private boolean fastVerifierEnabled;
+
+    @Value("${app.jwt.asymmetric.enabled:false}")
+    private boolean asymmetricEnabled;
+
+    // ES256 или EdDSA (Ed25519)
+    @Value("${app.jwt.asymmetric.algorithm:ES256}")
+    private String asymmetricAlgorithmName;
+
+    // PKCS#8 DER в base64
+    @Value("${app.jwt.asymmetric.private-key:}")
+    private String asymmetricPrivateKey;
+
+    // X.509 DER в base64
+    @Value("${app.jwt.asymmetric.public-key:}")
+    private String asymmetricPublicKey;
+
+    // Открытый ключ до смены пары (X.509 DER в base64): принимается и публикуется в JWKS
+    @Value("${app.jwt.asymmetric.previous-public-key:}")
+    private String asymmetricPreviousPublicKey;
+
+    // Только для разработки: без ключей в конфигурации сгенерировать временную пару
+    @Value("${app.jwt.asymmetric.allow-generated-keys:false}")
+    private boolean allowGeneratedKeys;
+
+    // Подпись ключом эпохи с kid - только после выката проверки по kid на все узлы
+    @Value("${app.jwt.rotation.enabled:false}")
+    private boolean rotationEnabled;
+
+    // Длина эпохи ключа (в миллисекундах)
+    @Value("${app.jwt.rotation.period:86400000}")
+    private long rotationPeriodMs;
+
+    @Value("${app.jwt.rotation.accept-legacy:true}")
+    private boolean acceptLegacy;
+
+    // Файл версионированных корневых секретов (properties), пусто - корень из KeyService
+    @Value("${app.jwt.rotation.root-secrets-file:}")
+    private String rootSecretsFile;
+
+    @Value("${app.jwt.app.access.expiration}")
+    private long appAccessTokenExpiration;
+
+    @Value("${app.jwt.app.refresh.expiration}")
+    private long appRefreshTokenExpiration;
+
+    @Value("${app.jwt.base.access.expiration}")
+    private long baseAccessTokenExpiration;
+
+    @Value("${app.jwt.base.refresh.expiration}")
+    private long baseRefreshTokenExpiration;
+
+    @Value("${app.jwt.reset-password.expiration}")
+    private long resetPasswordExpiration;
+
+    private SignatureAlgorithm asymmetricAlgorithm;
+    private PrivateKey signingPrivateKey;
+    private PublicKey signingPublicKey;
+    private String signingKeyId;
+
+    // Готовый JSON JWKS - отдается без сериализации на каждый запрос
+    private String jwksJson;
+
+    /**
+     * Ключ кольца
+     */
+    private record RingKey(String kid, TokenType tokenType, SecretKey key) {
+    }
+
+    /**
+     * Неизменяемое кольцо ключей эпохи: все ключи по kid и текущие ключи подписи
+     * roots - корневые секреты, из которых оно собрано (null - ключи KeyService)
+     */
+    private record KeyRing(long epoch, RootSecrets roots,
+                           Map<String, RingKey> byKid, Map<TokenType, RingKey> current) {
+    }
+
+    /**
+     * Версия корневого секрета
+     */
+    private record RootSecret(int version, byte[] secret) {
+    }
+
+    /**
+     * Корневые секреты из файла: current подписывает, retained только принимаются
+     * lastModified - время изменения файла при чтении
+     */
+    private record RootSecrets(RootSecret current, List<RootSecret> retained, long lastModified) {
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (asymmetricEnabled) {
+            initializeAsymmetricKey();
+        }
+
+        for (TokenType tokenType : TokenType.values()) {
+            SecretKey key = createSecretKey(signingKeyFor(tokenType));
+            keys.put(tokenType, key);
+            parsers.put(tokenType, Jwts.parser().keyLocator(new TypeKeyLocator(tokenType)).build());
+        }
+
+        // Кольцо строится и без ротации подписи: токены с kid после ее выключения остаются валидны
+        // Ошибка в файле корневых секретов при старте - отказ запуска
+        ring = buildRing(currentEpoch(), loadRootSecrets());
+
+        jwksJson = buildJwksJson();
+
+        // Быстрая проверка только для access токенов - они проверяются на каждом запросе
+        if (fastVerifierEnabled) {
+            for (TokenType tokenType : new TokenType[]{TokenType.APP_ACCESS, TokenType.BASE_ACCESS}) {
+                fastVerifiers.put(tokenType,
+                        new Hs256TokenVerifier(kid -> resolveHmacKey(tokenType, kid), tokenType.name()));
+            }
+        }
+
+        log.info("JwtKeyRegistry initialized: {} token types, fast verifier for {}, asymmetric: {}, " +
+                        "rotation: {} (epoch {}, root {}, {} ring keys)",
+                keys.size(), fastVerifiers.keySet(),
+                asymmetricEnabled ? asymmetricAlgorithmName + " kid=" + signingKeyId : "off",
+                rotationEnabled ? "on" : "off", ring.epoch(), describeRoots(ring.roots()), ring.byKid().size());
+    }
+
+    /**
+     * Смена эпохи ключей и перечитывание корневых секретов во время работы
+     * Новое кольцо собирается целиком и подменяет старое одной записью volatile поля:
+     * токены предыдущих эпох и оставленных в файле версий остаются в кольце до истечения
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.rotation.check-interval:60000}")
+    public void rotateKeys() {
+        KeyRing previous = ring;
+        long epoch = currentEpoch();
+
+        try {
+            RootSecrets roots = reloadRootSecrets(previous.roots());
+            if (epoch == previous.epoch() && roots == previous.roots()) {
+                return;
+            }
+
+            ring = buildRing(epoch, roots);
+            log.info("JWT signing keys rotated: epoch {}, root {}, {} ring keys",
+                    epoch, describeRoots(roots), ring.byKid().size());
+        } catch (Exception e) {
+            log.error("JWT key rotation failed, keeping epoch {} and root {}",
+                    previous.epoch(), describeRoots(previous.roots()), e);
+        }
+    }
+
+    /**
+     * Подпись токена ключом его типа
+     * Асимметричные типы - приватным ключом с kid в заголовке,
+     * остальные - HS256 ключом текущей эпохи с kid (или ключом KeyService без ротации)
+     */
+    public JwtBuilder sign(JwtBuilder builder, TokenType tokenType) {
+        if (isAsymmetric(tokenType)) {
+            return builder.header().keyId(signingKeyId).and()
+                    .signWith(signingPrivateKey, asymmetricAlgorithm);
+        }
+
+        RingKey signing = rotationEnabled ? ring.current().get(tokenType) : null;
+        if (signing != null) {
+            return builder.header().keyId(signing.kid()).and()
+                    .signWith(signing.key(), io.jsonwebtoken.SignatureAlgorithm.HS256);
+        }
+        return builder.signWith(keys.get(tokenType), io.jsonwebtoken.SignatureAlgorithm.HS256);
+    }
+
+    /**
+     * JWKS с открытыми ключами подписи access токенов ({"keys": []}, если асимметричная подпись выключена)
+     */
+    public String getJwksJson() {
+        return jwksJson;
+    }
+
+    /**
+     * Готовый парсер, проверяющий подпись ключом типа токена
+     */
+    public JwtParser getParser(TokenType tokenType) {
+        return parsers.get(tokenType);
+    }
+
+    /**
+     * Быстрый HS256 верификатор для типа токена или null, если для типа его нет
+     */
+    public Hs256TokenVerifier getFastVerifier(TokenType tokenType) {
+        return fastVerifiers.get(tokenType);
+    }
+
+    /**
+     * HMAC ключ проверки по kid
+     *
+     * @param kid kid из заголовка, "" - токен без kid
+     * @return ключ или null, если kid неизвестен или принадлежит другому типу токена
+     */
+    private SecretKey resolveHmacKey(TokenType tokenType, String kid) {
+        if (kid.isEmpty()) {
+            return acceptLegacy || !ROTATED_TYPES.contains(tokenType) ? keys.get(tokenType) : null;
+        }
+        RingKey ringKey = ring.byKid().get(kid);
+        return ringKey != null && ringKey.tokenType() == tokenType ? ringKey.key() : null;
+    }
+
+    private boolean isAsymmetric(TokenType tokenType) {
+        return asymmetricEnabled && ASYMMETRIC_TYPES.contains(tokenType);
+    }
+
+    // ==================== КОЛЬЦО КЛЮЧЕЙ ====================
+
+    private long currentEpoch() {
+        return System.currentTimeMillis() / rotationPeriodMs;
+    }
+
+    /**
+     * Ключи эпох [epoch - retain(тип), epoch + 1] для всех ротируемых типов
+     * - roots == null - из ключей KeyService, они же подписывают
+     * - иначе из каждой версии корневого секрета, подписывает текущая;
+     *   ключи из KeyService остаются только для проверки, пока accept-legacy
+     */
+    private KeyRing buildRing(long epoch, RootSecrets roots) {
+        Map<String, RingKey> byKid = new HashMap<>();
+        Map<TokenType, RingKey> current = new EnumMap<>(TokenType.class);
+
+        for (TokenType tokenType : ROTATED_TYPES) {
+            // Токен, выпущенный в эпоху epoch - retain, живет не дольше lifetime
+            long retain = (lifetimeOf(tokenType) + rotationPeriodMs - 1) / rotationPeriodMs;
+
+            for (long version = epoch - retain; version <= epoch + 1; version++) {
+                if (roots == null || acceptLegacy) {
+                    RingKey legacy = new RingKey(tokenType.name() + "." + version, tokenType,
+                            deriveKey(keys.get(tokenType).getEncoded(), tokenType, version));
+                    byKid.put(legacy.kid(), legacy);
+                    if (roots == null && version == epoch) {
+                        current.put(tokenType, legacy);
+                    }
+                }
+
+                if (roots == null) {
+                    continue;
+                }
+                for (RootSecret root : roots.retained()) {
+                    RingKey ringKey = new RingKey(
+                            tokenType.name() + ".r" + root.version() + "." + version, tokenType,
+                            deriveKey(root.secret(), tokenType, version));
+                    byKid.put(ringKey.kid(), ringKey);
+                    if (root == roots.current() && version == epoch) {
+                        current.put(tokenType, ringKey);
+                    }
+                }
+            }
+        }
+
+        return new KeyRing(epoch, roots, Map.copyOf(byKid), Collections.unmodifiableMap(current));
+    }
+
+    /**
+     * Ключ эпохи: HMAC-SHA256(корневой секрет, "ТИП:версия")
+     */
+    private static SecretKey deriveKey(byte[] rootKey, TokenType tokenType, long version) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(rootKey, "HmacSHA256"));
+            byte[] derived = mac.doFinal((tokenType.name() + ":" + version).getBytes(StandardCharsets.UTF_8));
+            return Keys.hmacShaKeyFor(derived);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    // ==================== КОРНЕВЫЕ СЕКРЕТЫ ====================
+
+    /**
+     * Корневые секреты из файла, если он изменился с прошлого чтения
+     *
+     * @return loaded, если файл не менялся; null - файл не задан
+     */
+    private RootSecrets reloadRootSecrets(RootSecrets loaded) throws IOException {
+        if (rootSecretsFile.isBlank()) {
+            return null;
+        }
+        long lastModified = Files.getLastModifiedTime(Path.of(rootSecretsFile)).toMillis();
+        if (loaded != null && loaded.lastModified() == lastModified) {
+            return loaded;
+        }
+        return loadRootSecrets();
+    }
+
+    /**
+     * Чтение файла корневых секретов: current=N и secret.N=base64 для каждой версии
+     *
+     * @return null - файл не задан (корень - ключи KeyService)
+     * @throws IllegalStateException файл не читается или заполнен неверно
+     */
+    private RootSecrets loadRootSecrets() {
+        if (rootSecretsFile.isBlank()) {
+            log.warn("app.jwt.rotation.root-secrets-file is not configured - epoch keys are derived " +
+                    "from the static KeyService keys and cannot be rotated without a restart");
+            return null;
+        }
+
+        Path path = Path.of(rootSecretsFile);
+        Properties properties = new Properties();
+        long lastModified;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read JWT root secrets file " + rootSecretsFile, e);
+        }
+
+        List<RootSecret> retained = new ArrayList<>();
+        RootSecret current = null;
+        int currentVersion;
+        try {
+            currentVersion = Integer.parseInt(properties.getProperty("current", "").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("JWT root secrets file must define an integer 'current' version", e);
+        }
+
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith("secret.")) {
+                continue;
+            }
+            try {
+                int version = Integer.parseInt(name.substring("secret.".length()));
+                byte[] secret = Base64.getDecoder().decode(properties.getProperty(name).trim());
+                if (secret.length < 32) {
+                    throw new IllegalStateException("JWT root secret " + name + " is shorter than 32 bytes");
+                }
+
+                RootSecret root = new RootSecret(version, secret);
+                retained.add(root);
+                if (version == currentVersion) {
+                    current = root;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid JWT root secret " + name, e);
+            }
+        }
+
+        if (current == null) {
+            throw new IllegalStateException("JWT root secrets file has no secret." + currentVersion);
+        }
+        return new RootSecrets(current, List.copyOf(retained), lastModified);
+    }
+
+    private static String describeRoots(RootSecrets roots) {
+        if (roots == null) {
+            return "KeyService";
+        }
+        return "r" + roots.current().version() + " (" + roots.retained().size() + " versions)";
+    }
+
+    private long lifetimeOf(TokenType tokenType) {
+        return switch (tokenType) {
+            case APP_ACCESS -> appAccessTokenExpiration;
+            case APP_REFRESH -> appRefreshTokenExpiration;
+            case BASE_ACCESS -> baseAccessTokenExpiration;
+            case BASE_REFRESH -> baseRefreshTokenExpiration;
+            case RESET_PASSWORD -> resetPasswordExpiration;
+            case API_KEY -> Long.MAX_VALUE;
+        };
+    }
+
+    // ==================== АСИММЕТРИЧНЫЕ КЛЮЧИ ====================
+
+    /**
+     * Загрузка пары ключей из конфигурации
+     * Без ключей в конфигурации запуск прерывается. Временная пара генерируется только
+     * при allow-generated-keys (разработка): у каждого узла своя, после перезапуска
+     * выпущенные токены не проверятся
+     */
+    private void initializeAsymmetricKey() {
+        String keyAlgorithm = switch (asymmetricAlgorithmName) {
+            case "ES256" -> {
+                asymmetricAlgorithm = Jwts.SIG.ES256;
+                yield "EC";
+            }
+            case "EdDSA" -> {
+                asymmetricAlgorithm = Jwts.SIG.EdDSA;
+                yield "Ed25519";
+            }
+            default -> throw new IllegalStateException(
+                    "Unsupported app.jwt.asymmetric.algorithm: " + asymmetricAlgorithmName + " (ES256 or EdDSA)");
+        };
+
+        try {
+            if (asymmetricPrivateKey.isBlank() && asymmetricPublicKey.isBlank()) {
+                if (!allowGeneratedKeys) {
+                    throw new IllegalStateException("app.jwt.asymmetric.enabled requires private-key and public-key " +
+                            "(set app.jwt.asymmetric.allow-generated-keys=true only for local development)");
+                }
+                KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+                if ("EC".equals(keyAlgorithm)) {
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                }
+                KeyPair keyPair = generator.generateKeyPair();
+                signingPrivateKey = keyPair.getPrivate();
+                signingPublicKey = keyPair.getPublic();
+                log.warn("Asymmetric JWT keys are not configured - generated an ephemeral {} key pair " +
+                        "(allow-generated-keys, development only)", keyAlgorithm);
+            } else if (asymmetricPrivateKey.isBlank() || asymmetricPublicKey.isBlank()) {
+                throw new IllegalStateException(
+                        "Both app.jwt.asymmetric.private-key and public-key must be configured");
+            } else {
+                KeyFactory keyFactory = KeyFactory.getInstance(keyAlgorithm);
+                signingPrivateKey = keyFactory.generatePrivate(
+                        new PKCS8EncodedKeySpec(Base64.getDecoder().decode(asymmetricPrivateKey.trim())));
+                signingPublicKey = keyFactory.generatePublic(
+                        new X509EncodedKeySpec(Base64.getDecoder().decode(asymmetricPublicKey.trim())));
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Failed to load asymmetric JWT keys", e);
+        }
+
+        // kid - JWK thumbprint (RFC 7638): одинаков на всех узлах с одним ключом
+        signingKeyId = thumbprint(signingPublicKey);
+        publicKeys.put(signingKeyId, signingPublicKey);
+
+        if (!asymmetricPreviousPublicKey.isBlank()) {
+            try {
+                PublicKey previous = KeyFactory.getInstance(keyAlgorithm).generatePublic(
+                        new X509EncodedKeySpec(Base64.getDecoder().decode(asymmetricPreviousPublicKey.trim())));
+                publicKeys.putIfAbsent(thumbprint(previous), previous);
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IllegalStateException("Failed to load previous asymmetric JWT public key", e);
+            }
+        }
+    }
+
+    private static String thumbprint(PublicKey publicKey) {
+        return Jwks.builder().key(publicKey).idFromThumbprint().build().getId();
+    }
+
+    private String buildJwksJson() {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        for (Map.Entry<String, PublicKey> publicKey : publicKeys.entrySet()) {
+            PublicJwk<?> jwk = Jwks.builder().key(publicKey.getValue()).build();
+
+            Map<String, Object> entry = new LinkedHashMap<>(jwk);
+            entry.put("kid", publicKey.getKey());
+            entry.put("alg", asymmetricAlgorithm.getId());
+            entry.put("use", "sig");
+            jwks.add(entry);
+        }
+        try {
+            return objectMapper.writeValueAsString(Map.of("keys", jwks));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize JWKS", e);
+        }
+    }
+
+    /**
+     * Выбор ключа проверки по заголовку токена:
+     * - kid открытого ключа (асимметричные типы) - открытый ключ
+     * - HS256 - ключ эпохи по kid или ключ KeyService без kid
+     * null - ключа нет, JJWT отклоняет токен
+     */
+    private class TypeKeyLocator extends LocatorAdapter<Key> {
+
+        private final TokenType tokenType;
+
+        TypeKeyLocator(TokenType tokenType) {
+            this.tokenType = tokenType;
+        }
+
+        @Override
+        protected Key locate(JwsHeader header) {
+            String keyId = header.getKeyId();
+
+            if (keyId != null && isAsymmetric(tokenType)) {
+                PublicKey publicKey = publicKeys.get(keyId);
+                if (publicKey != null) {
+                    return publicKey;
+                }
+            }
+
+            if (!"HS256".equals(header.getAlgorithm())) {
+                return null;
+            }
+            return resolveHmacKey(tokenType, keyId == null ? "" : keyId);
+        }
+    }
+
+    private String signingKeyFor(TokenType tokenType) {
+        return switch (tokenType) {
+            case APP_ACCESS -> keyService.getSigningAppKeyAccess();
+            case APP_REFRESH -> keyService.getSigningAppKeyRefresh();
+            case BASE_ACCESS -> keyService.getSigningBaseKeyAccess();
+            case BASE_REFRESH -> keyService.getSigningBaseKeyRefresh();
+            case RESET_PASSWORD -> keyService.getSigningKeyResetPassword();
+            case API_KEY -> keyService.getSigningKeyApiKey();
+        };
+    }
+
+    /**
+     * Создание SecretKey из строки
+     *
+     * ВАЖНО: JJWT требует минимум 256 бит (32 байта) для HS256
+     * Если ключ короче - используем SHA-256 для создания ключа нужной длины
+     *
+     * @param keyString Ключ из конфигурации
+     * @return SecretKey для подписи
+     */
+    static SecretKey createSecretKey(String keyString) {
+        byte[] keyBytes = keyString.getBytes(StandardCharsets.UTF_8);
+
+        if (keyBytes.length < 32) {
+            try {
+                keyBytes = MessageDigest.getInstance("SHA-256").digest(keyBytes);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        return Keys.hmacShaKeyFor(keyBytes);
+    }
+}
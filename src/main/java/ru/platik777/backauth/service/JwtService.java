@@ -1,7 +1,6 @@
 package ru.platik777.backauth.service;
 
 import io.jsonwebtoken.*;
-import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,10 +8,8 @@ import org.springframework.stereotype.Service;
 import ru.platik777.backauth.dto.AuthenticatedUser;
 import ru.platik777.backauth.dto.response.TokenResponse;
 import ru.platik777.backauth.entity.types.TokenType;
+import ru.platik777.backauth.security.Hs256TokenVerifier;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
@@ -27,7 +24,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class JwtService {
 
-    private final KeyService keyService;
+    private final JwtKeyRegistry keyRegistry;
     private final TokenBlacklistService tokenBlacklistService;
 
     @Value("${app.jwt.app.access.expiration}")
@@ -82,7 +79,6 @@ public class JwtService {
                 userId,
                 tenantId,
                 appAccessTokenExpiration,
-                keyService.getSigningAppKeyAccess(),
                 TokenType.APP_ACCESS
         );
 
@@ -90,7 +86,6 @@ public class JwtService {
                 userId,
                 tenantId,
                 appRefreshTokenExpiration,
-                keyService.getSigningAppKeyRefresh(),
                 TokenType.APP_REFRESH
         );
 
@@ -117,7 +112,6 @@ public class JwtService {
                 userId,
                 tenantId,
                 baseAccessTokenExpiration,
-                keyService.getSigningBaseKeyAccess(),
                 TokenType.BASE_ACCESS
         );
 
@@ -125,7 +119,6 @@ public class JwtService {
                 userId,
                 tenantId,
                 baseRefreshTokenExpiration,
-                keyService.getSigningBaseKeyRefresh(),
                 TokenType.BASE_REFRESH
         );
 
@@ -152,7 +145,6 @@ public class JwtService {
                 userId,
                 tenantId,
                 resetPasswordExpiration,
-                keyService.getSigningKeyResetPassword(),
                 TokenType.RESET_PASSWORD
         );
 
@@ -185,15 +177,13 @@ public class JwtService {
         Date issuedAt = new Date();
         Date expiration = new Date(expirationMillis);
 
-        SecretKey key = getSecretKey(keyService.getSigningKeyApiKey());
-
-        String token = Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .claim("userId", userId)
                 .claim("type", TokenType.API_KEY.name())
                 .setIssuedAt(issuedAt)
-                .setExpiration(expiration)
-                .signWith(key, SignatureAlgorithm.HS256)
-                .compact();
+                .setExpiration(expiration);
+
+        String token = keyRegistry.sign(builder, TokenType.API_KEY).compact();
 
         log.debug("API key token created for userId: {}", userId);
         return token;
@@ -203,25 +193,44 @@ public class JwtService {
      * Парсинг токена и получение userId
      *
      * @param token JWT токен
-     * @param signingKey Ключ для валидации
+     * @param tokenType Тип токена - определяет ключ для валидации
      * @return userId из токена
      * @throws JwtException если токен невалидный
      */
-    public AuthenticatedUser parseToken(String token, String signingKey) {
+    public AuthenticatedUser parseToken(String token, TokenType tokenType) {
+        return verifyToken(token, tokenType).user();
+    }
+
+    /**
+     * Проверка токена с получением срока действия (exp)
+     * Нужна кэшу проверенных токенов: запись живет до exp
+     *
+     * @param token JWT токен
+     * @param tokenType Тип токена - определяет ключ для валидации
+     * @return пользователь и момент истечения токена
+     * @throws JwtException если токен невалидный
+     */
+    public VerifiedToken verifyToken(String token, TokenType tokenType) {
         if (token == null || token.isEmpty()) {
             throw new IllegalArgumentException("Token cannot be empty");
         }
 
-        if (signingKey == null || signingKey.isEmpty()) {
-            throw new IllegalArgumentException("Signing key cannot be empty");
+        if (tokenType == null) {
+            throw new IllegalArgumentException("Token type cannot be null");
         }
 
-        try {
-            SecretKey key = getSecretKey(signingKey);
+        // Быстрый путь для access токенов; null - токен нестандартный или невалидный,
+        // его проверяет JJWT и формирует точную ошибку
+        Hs256TokenVerifier fastVerifier = keyRegistry.getFastVerifier(tokenType);
+        if (fastVerifier != null) {
+            Hs256TokenVerifier.AccessClaims fast = fastVerifier.verify(token);
+            if (fast != null) {
+                return new VerifiedToken(new AuthenticatedUser(fast.userId(), fast.tenantId()), fast.expiresAtMillis());
+            }
+        }
 
-            Claims claims = Jwts.parser()
-                    .verifyWith(key)
-                    .build()
+        try {
+            Claims claims = keyRegistry.getParser(tokenType)
                     .parseSignedClaims(token)
                     .getPayload();
 
@@ -232,8 +241,18 @@ public class JwtService {
                 throw new JwtException("UserId is empty in token");
             }
 
+            // Та же проверка, что и в Hs256TokenVerifier: оба пути дают одинаковый результат
+            if (!tokenType.name().equals(claims.get("type", String.class))) {
+                throw new JwtException("Invalid token type");
+            }
+
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                throw new JwtException("Expiration is empty in token");
+            }
+
             log.debug("Token parsed successfully. UserId: {}, TenantId: {}", userId, tenantId);
-            return new AuthenticatedUser(userId, tenantId);
+            return new VerifiedToken(new AuthenticatedUser(userId, tenantId), expiration.getTime());
 
         } catch (ExpiredJwtException e) {
             log.debug("Token expired: {}", e.getMessage());
@@ -282,12 +301,11 @@ public class JwtService {
      *
      * @param userId ID пользователя
      * @param validityMillis Время жизни в миллисекундах
-     * @param signingKey Ключ для подписи
-     * @param tokenType Тип токена (для отладки и claims)
+     * @param tokenType Тип токена (ключ подписи и claim type)
      * @return JWT токен
      */
     private String createToken(String userId, String tenantId, long validityMillis,
-                               String signingKey, TokenType tokenType) {
+                               TokenType tokenType) {
 
         validateUserId(userId);
 
@@ -301,16 +319,15 @@ public class JwtService {
         Date expiration = new Date(now.getTime() + validityMillis);
 
         try {
-            SecretKey key = getSecretKey(signingKey);
-
-            String token = Jwts.builder()
+            JwtBuilder builder = Jwts.builder()
                     .claim("userId", userId)
                     .claim("tenant_id", tenantId)
                     .claim("type", tokenType.name())
                     .setIssuedAt(now)
-                    .setExpiration(expiration)
-                    .signWith(key, SignatureAlgorithm.HS256)
-                    .compact();
+                    .setExpiration(expiration);
+
+            // Ключ и алгоритм (HS256 или ES256/EdDSA с kid) выбирает реестр по типу токена
+            String token = keyRegistry.sign(builder, tokenType).compact();
 
             log.debug("Token created: type={}, userId={}, validity={}ms",
                     tokenType, userId, validityMillis);
@@ -324,33 +341,12 @@ public class JwtService {
     }
 
     /**
-     * Создание SecretKey из строки
-     *
-     * ВАЖНО: JJWT требует минимум 256 бит (32 байта) для HS256
-     * Если ключ короче - используем SHA-256 для создания ключа нужной длины
+     * Результат проверки токена
      *
-     * @param keyString Ключ из конфигурации
-     * @return SecretKey для подписи
+     * @param user пользователь из claims
+     * @param expiresAtMillis exp токена в миллисекундах epoch
      */
-    private SecretKey getSecretKey(String keyString) {
-        try {
-            byte[] keyBytes = keyString.getBytes(StandardCharsets.UTF_8);
-
-            // JJWT требует минимум 256 бит (32 байта) для HS256
-            if (keyBytes.length < 32) {
-                log.debug("Key is shorter than 32 bytes, using SHA-256 hash");
-
-                // Используем SHA-256 для получения ключа нужной длины
-                MessageDigest digest = MessageDigest.getInstance("SHA-256");
-                keyBytes = digest.digest(keyBytes);
-            }
-
-            return Keys.hmacShaKeyFor(keyBytes);
-
-        } catch (Exception e) {
-            log.error("Error creating secret key", e);
-            throw new RuntimeException("Failed to create secret key", e);
-        }
+    public record VerifiedToken(AuthenticatedUser user, long expiresAtMillis) {
     }
 
     /**
@@ -102,6 +102,14 @@ public class MonitoringService implements HealthIndicator {
                 .activeBlacklistedTokens(blacklistStats.activeTokens())
                 .expiredBlacklistedTokens(blacklistStats.expiredTokens())
                 .tokenLifetimeMinutes(blacklistStats.tokenLifetimeMinutes())
+                .blacklistedTokensAdded(blacklistStats.totalAdded())
+                .blacklistedTokensExpired(blacklistStats.totalExpired())
+                .bloomTargetFalsePositiveRate(blacklistStats.bloomTargetFalsePositiveRate())
+                .bloomEstimatedFalsePositiveRate(blacklistStats.bloomEstimatedFalsePositiveRate())
+                .bloomBits(blacklistStats.bloomBits())
+                .bloomHashFunctions(blacklistStats.bloomHashFunctions())
+                .bloomNegativeLookups(blacklistStats.bloomNegativeLookups())
+                .bloomFalsePositives(blacklistStats.bloomFalsePositives())
                 .build();
     }
 
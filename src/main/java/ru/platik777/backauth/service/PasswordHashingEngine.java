@@ -0,0 +1,263 @@
+package ru.platik777.backauth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.exception.ServiceUnavailableException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хеширование паролей BCrypt на выделенном ограниченном пуле
+ * <p/>
+ * BCrypt намеренно дорогой (сотни миллисекунд CPU), поэтому хеширование и проверка
+ * выполняются не в потоке Tomcat, а на пуле размером с число ядер с ограниченной очередью:
+ * - всплеск входов не занимает все потоки запросов - они ждут результат, а не считают
+ * - очередь заполнена или результат не готов за timeout - сразу 503 (ServiceUnavailableException)
+ * <p/>
+ * Стоимость (log2 числа раундов) подбирается под target-latency:
+ * - при старте - калибровка от min-cost вверх, пока хеш не станет не быстрее цели
+ * - в работе - только повышение: скользящее среднее вдвое быстрее цели поднимает стоимость на 1.
+ *   Калибровка - нижняя граница: медленное хеширование под нагрузкой на CPU говорит о конкуренции,
+ *   а не о слабом железе, и стоимость не снижается
+ * Хеши с меньшей стоимостью, чем текущая, PasswordService пересчитывает при входе
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PasswordHashingEngine {
+
+    private static final double EWMA_ALPHA = 0.1;
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private final MeterRegistry meterRegistry;
+
+    // Размер пула, 0 - число ядер
+    @Value("${app.password.hashing.threads:0}")
+    private int threads;
+
+    @Value("${app.password.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    // Максимальное ожидание результата (очередь + вычисление), мс
+    @Value("${app.password.hashing.timeout:5000}")
+    private long timeout;
+
+    @Value("${app.password.hashing.target-latency:250}")
+    private long targetLatency;
+
+    @Value("${app.password.hashing.min-cost:10}")
+    private int minCost;
+
+    @Value("${app.password.hashing.max-cost:14}")
+    private int maxCost;
+
+    private ThreadPoolExecutor executor;
+
+    private volatile int cost;
+
+    // Скользящее среднее времени хеширования при текущей стоимости, мс
+    private volatile double averageHashMillis;
+
+    // Хеш для проверки пароля несуществующего пользователя - время ответа не выдает отсутствие логина
+    private String dummyHash;
+
+    private Timer hashTimer;
+    private Timer verifyTimer;
+    private Counter rejected;
+
+    @PostConstruct
+    public void initialize() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        cost = calibrate();
+        averageHashMillis = targetLatency;
+        dummyHash = BCrypt.hashpw("dummy-password", BCrypt.gensalt(cost));
+
+        hashTimer = Timer.builder("password.hashing")
+                .description("Время вычисления BCrypt")
+                .tag("operation", "hash")
+                .register(meterRegistry);
+        verifyTimer = Timer.builder("password.hashing")
+                .description("Время вычисления BCrypt")
+                .tag("operation", "verify")
+                .register(meterRegistry);
+        rejected = Counter.builder("password.hashing.rejected")
+                .description("Запросы хеширования, отклоненные из-за перегрузки (503)")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.cost", this, engine -> engine.cost)
+                .description("Текущая стоимость BCrypt")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue", executor, pool -> pool.getQueue().size())
+                .description("Задачи хеширования в очереди")
+                .register(meterRegistry);
+
+        log.info("PasswordHashingEngine initialized: threads={}, queue={}, cost={}, targetLatency={}ms",
+                poolSize, queueCapacity, cost, targetLatency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Хеш пароля с текущей стоимостью
+     *
+     * @throws ServiceUnavailableException пул перегружен
+     */
+    public String hash(String password) {
+        int hashCost = cost;
+        return submit(() -> {
+            long start = System.nanoTime();
+            String hashed = BCrypt.hashpw(password, BCrypt.gensalt(hashCost));
+            long elapsed = System.nanoTime() - start;
+
+            hashTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            adapt(hashCost, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return hashed;
+        });
+    }
+
+    /**
+     * Проверка пароля по хешу BCrypt
+     *
+     * @throws ServiceUnavailableException пул перегружен
+     */
+    public boolean matches(String password, String hashed) {
+        return submit(() -> {
+            long start = System.nanoTime();
+            boolean result = BCrypt.checkpw(password, hashed);
+            verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        });
+    }
+
+    /**
+     * Проверка пароля для несуществующего пользователя - та же работа, результат всегда false
+     */
+    public void matchesDummy(String password) {
+        matches(password, dummyHash);
+    }
+
+    /**
+     * Хеш в формате BCrypt ($2a$, $2b$, $2y$)
+     */
+    public boolean isSupported(String hashed) {
+        return hashed != null && hashed.length() == 60
+                && hashed.startsWith("$2") && hashed.charAt(3) == '$';
+    }
+
+    /**
+     * Хеш BCrypt посчитан со стоимостью ниже текущей
+     */
+    public boolean isOutdated(String hashed) {
+        try {
+            return Integer.parseInt(hashed.substring(4, 6)) < cost;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("Password hashing rejected: queue is full ({} tasks)", executor.getQueue().size());
+            throw new ServiceUnavailableException("Too many concurrent sign-in requests", RETRY_AFTER_SECONDS);
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            log.warn("Password hashing timed out after {}ms", timeout);
+            throw new ServiceUnavailableException("Too many concurrent sign-in requests", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ServiceUnavailableException("Password hashing interrupted", RETRY_AFTER_SECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Повышение стоимости по скользящему среднему (железо быстрее, чем при калибровке)
+     * Каждый шаг стоимости меняет время примерно в 2 раза; понижения в работе нет
+     */
+    private void adapt(int hashCost, long elapsedMillis) {
+        if (hashCost != cost) {
+            return;
+        }
+
+        double average = averageHashMillis + EWMA_ALPHA * (elapsedMillis - averageHashMillis);
+        averageHashMillis = average;
+
+        if (average < targetLatency / 2.0 && hashCost < maxCost) {
+            changeCost(hashCost, hashCost + 1, average);
+        }
+    }
+
+    private synchronized void changeCost(int from, int to, double average) {
+        if (cost != from) {
+            return;
+        }
+        cost = to;
+        averageHashMillis = targetLatency;
+        log.info("BCrypt cost adjusted: {} -> {} (average {}ms, target {}ms)",
+                from, to, Math.round(average), targetLatency);
+    }
+
+    /**
+     * Наименьшая стоимость, при которой хеш не быстрее target-latency
+     */
+    private int calibrate() {
+        // Прогрев JIT, результат не учитывается
+        BCrypt.hashpw("calibration", BCrypt.gensalt(minCost));
+
+        for (int candidate = minCost; candidate < maxCost; candidate++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration", BCrypt.gensalt(candidate));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            log.debug("BCrypt calibration: cost={}, {}ms", candidate, elapsedMillis);
+            if (elapsedMillis >= targetLatency) {
+                return candidate;
+            }
+        }
+        return maxCost;
+    }
+}
@@ -11,18 +11,66 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * Сервис работы с паролями
+ * <p/>
+ * Новые хеши - BCrypt (PasswordHashingEngine, выделенный пул).
+ * Старые хеши - SHA-1 с общей солью (hex, 40 символов): проверяются по-прежнему
+ * и пересчитываются в BCrypt при успешном входе (needsRehash)
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PasswordService {
+
+    private final PasswordHashingEngine hashingEngine;
+
     @Value("${app.jwt.constants.salt}")
     private String salt;
 
     /**
-     * Генерация хеша пароля
+     * Генерация хеша пароля (BCrypt)
+     *
+     * @throws ru.platik777.backauth.exception.ServiceUnavailableException пул хеширования перегружен
      */
     public String generatePasswordHash(String password) {
+        return hashingEngine.hash(password);
+    }
+
+    /**
+     * Проверка соответствия пароля хешу (BCrypt или старый SHA-1)
+     *
+     * @throws ru.platik777.backauth.exception.ServiceUnavailableException пул хеширования перегружен
+     */
+    public boolean verifyPassword(String password, String hash) {
+        if (password == null || hash == null) {
+            return false;
+        }
+
+        if (hashingEngine.isSupported(hash)) {
+            return hashingEngine.matches(password, hash);
+        }
+
+        byte[] legacyHash = generateLegacyPasswordHash(password).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(legacyHash, hash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Проверка пароля несуществующего пользователя: та же работа, что и для существующего
+     */
+    public void verifyDummyPassword(String password) {
+        hashingEngine.matchesDummy(password);
+    }
+
+    /**
+     * Хеш нужно пересчитать: старый SHA-1 или BCrypt со стоимостью ниже текущей
+     */
+    public boolean needsRehash(String hash) {
+        return !hashingEngine.isSupported(hash) || hashingEngine.isOutdated(hash);
+    }
+
+    /**
+     * Старый хеш пароля: SHA-1(пароль + соль), hex
+     */
+    private String generateLegacyPasswordHash(String password) {
         try {
             // Создаем SHA-1 хеш
             MessageDigest digest = MessageDigest.getInstance("SHA-1");
@@ -40,23 +88,6 @@ public class PasswordService {
         }
     }
 
-    /**
-     * Проверка соответствия пароля хешу
-     */
-    public boolean verifyPassword(String password, String hash) {
-        if (password == null || hash == null) {
-            return false;
-        }
-
-        try {
-            String computedHash = generatePasswordHash(password);
-            return computedHash.equals(hash);
-        } catch (Exception e) {
-            log.error("Error verifying password", e);
-            return false;
-        }
-    }
-
     /**
      * Конвертация байтов в hex строку
      */
@@ -67,4 +98,4 @@ public class PasswordService {
         }
         return result.toString();
     }
-}
\ No newline at end of file
+}
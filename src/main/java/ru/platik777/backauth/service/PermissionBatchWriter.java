@@ -0,0 +1,110 @@
+package ru.platik777.backauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Пакетная запись грантов пользователей через JDBC batch
+ * <p/>
+ * Каждая операция - один PreparedStatement на тип элемента, отправляемый пачкой
+ * (addBatch/executeBatch). Количество затронутых строк по каждой записи
+ * возвращается в порядке входного списка: 1 - применено, 0 - конфликт/нет записи
+ * <p/>
+ * Вызывается внутри транзакции ItemPermissionService - JdbcTemplate использует
+ * то же соединение, что и JPA
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PermissionBatchWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Грант пользователя на элемент
+     */
+    public record Row(String userId, String itemId, ItemType itemType, short permission) {
+    }
+
+    /**
+     * INSERT ... ON CONFLICT DO NOTHING (по partial индексам idx_unique_permission_user_*)
+     */
+    public int[] insert(List<Row> rows) {
+        return execute(rows, itemType -> {
+            String column = itemColumn(itemType);
+            return "INSERT INTO item_user_permission (id, user_id, " + column + ", permission, created_at, updated_at) " +
+                    "VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) " +
+                    "ON CONFLICT (user_id, " + column + ") WHERE " + column + " IS NOT NULL DO NOTHING";
+        }, row -> new Object[]{UUID.randomUUID().toString(), row.userId(), row.itemId(), row.permission()});
+    }
+
+    public int[] update(List<Row> rows) {
+        return execute(rows, itemType ->
+                "UPDATE item_user_permission SET permission = ?, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE user_id = ? AND " + itemColumn(itemType) + " = ?",
+                row -> new Object[]{row.permission(), row.userId(), row.itemId()});
+    }
+
+    public int[] delete(List<Row> rows) {
+        return execute(rows, itemType ->
+                "DELETE FROM item_user_permission WHERE user_id = ? AND " + itemColumn(itemType) + " = ?",
+                row -> new Object[]{row.userId(), row.itemId()});
+    }
+
+    /**
+     * Существующие пользователи из списка (одним запросом)
+     */
+    public Set<String> findExistingUserIds(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM \"user\" WHERE id = ANY(?)", String.class, (Object) userIds.toArray(String[]::new)));
+    }
+
+    /**
+     * Разбить записи по типу элемента, выполнить по batch на тип
+     * и разложить счетчики обратно по исходным позициям
+     */
+    private int[] execute(List<Row> rows,
+                          Function<ItemType, String> sqlForType,
+                          Function<Row, Object[]> argsForRow) {
+        int[] counts = new int[rows.size()];
+
+        Map<ItemType, List<Integer>> positionsByType = new EnumMap<>(ItemType.class);
+        for (int i = 0; i < rows.size(); i++) {
+            positionsByType.computeIfAbsent(rows.get(i).itemType(), type -> new ArrayList<>()).add(i);
+        }
+
+        positionsByType.forEach((itemType, positions) -> {
+            List<Object[]> batchArgs = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                batchArgs.add(argsForRow.apply(rows.get(position)));
+            }
+
+            int[] typeCounts = jdbcTemplate.batchUpdate(sqlForType.apply(itemType), batchArgs);
+            for (int j = 0; j < positions.size(); j++) {
+                counts[positions.get(j)] = typeCounts[j];
+            }
+
+            log.debug("Batch executed: type={}, rows={}", itemType, positions.size());
+        });
+
+        return counts;
+    }
+
+    private static String itemColumn(ItemType itemType) {
+        return switch (itemType) {
+            case PROJECT -> "project_id";
+            case FOLDER -> "folder_id";
+            case FILE -> "file_id";
+            case BLOCK -> "block_id";
+        };
+    }
+}
@@ -0,0 +1,166 @@
+package ru.platik777.backauth.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Рассылка изменений прав между узлами через PostgreSQL LISTEN/NOTIFY
+ * <p/>
+ * Триггеры (changelog-permission-change.xml) на effective_permission, item_user_permission,
+ * item_group_permission и group_user вызывают pg_notify('permission_change', user_id).
+ * PostgreSQL доставляет уведомления только после коммита и схлопывает повторы
+ * одного user_id в транзакции - массовый пересчет дает одно уведомление на пользователя.
+ * Триггеры на folder, project, block и file при перемещении и удалении элемента вызывают
+ * pg_notify('item_change', 'ТИП:id') - движок перечитывает узел элемента в дереве
+ * <p/>
+ * Отдельный поток держит соединение с LISTEN и на каждое уведомление сбрасывает
+ * на этом узле решения пользователя (PermissionDecisionCache), его группы (GroupMembershipService)
+ * и переводит его на SQL до обновления его грантов в PermissionEngine.
+ * Пока соединения нет (старт, обрыв), кэш решений и движок не используются и проверки идут в SQL;
+ * после переподключения кэш начинается с пустого состояния, а движок ждет новый снимок -
+ * пропущенные уведомления не важны
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PermissionChangeListener {
+
+    static final String CHANNEL = "permission_change";
+    static final String ITEM_CHANNEL = "item_change";
+
+    private final DataSource dataSource;
+    private final PermissionDecisionCache decisionCache;
+    private final GroupMembershipService groupMembershipService;
+    private final PermissionEngine permissionEngine;
+
+    @Value("${app.permissions.notifications.enabled:true}")
+    private boolean enabled;
+
+    // Максимальное ожидание уведомлений за один вызов, мс
+    @Value("${app.permissions.notifications.poll-timeout:1000}")
+    private int pollTimeout;
+
+    // Пауза перед переподключением после обрыва, мс
+    @Value("${app.permissions.notifications.reconnect-delay:5000}")
+    private long reconnectDelay;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.warn("Permission change notifications are disabled: changes made on other nodes " +
+                    "reach the decision cache only after it expires");
+            return;
+        }
+
+        decisionCache.suspend();
+        running = true;
+
+        listenerThread = new Thread(this::run, "permission-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                listen(connection);
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Permission change listener disconnected, reconnecting in {} ms: {}",
+                            reconnectDelay, e.getMessage());
+                }
+            } finally {
+                permissionEngine.onNotificationsLost();
+                decisionCache.suspend();
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void listen(Connection connection) throws SQLException {
+        connection.setAutoCommit(true);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+            statement.execute("LISTEN " + ITEM_CHANNEL);
+        }
+
+        // Уведомления, отправленные без соединения, потеряны - начинаем с пустого кэша
+        decisionCache.resume();
+        permissionEngine.onNotificationsConnected();
+        log.info("Listening for permission changes on channels '{}', '{}'", CHANNEL, ITEM_CHANNEL);
+
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(pollTimeout);
+            if (notifications == null) {
+                continue;
+            }
+            for (PGNotification notification : notifications) {
+                if (ITEM_CHANNEL.equals(notification.getName())) {
+                    onItemChanged(notification.getParameter());
+                } else {
+                    onUserChanged(notification.getParameter());
+                }
+            }
+        }
+    }
+
+    private void onUserChanged(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return;
+        }
+        groupMembershipService.invalidate(userId);
+        permissionEngine.onUserChanged(userId);
+        decisionCache.invalidateUser(userId);
+        log.debug("Permission change received: user={}", userId);
+    }
+
+    private void onItemChanged(String payload) {
+        int separator = payload == null ? -1 : payload.indexOf(':');
+        if (separator <= 0) {
+            return;
+        }
+        ItemType itemType;
+        try {
+            itemType = ItemType.valueOf(payload.substring(0, separator));
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown item type in item change notification: {}", payload);
+            return;
+        }
+        permissionEngine.onItemChanged(itemType, payload.substring(separator + 1));
+        log.debug("Item change received: {}", payload);
+    }
+}
@@ -0,0 +1,258 @@
+package ru.platik777.backauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Кэш решений по правам: (userId, itemType, itemId) -> эффективная битовая маска
+ * <p/>
+ * - ограничен по размеру (Caffeine, W-TinyLFU) и по времени жизни записи
+ * - метрики hit/miss/eviction публикуются как permission.decisions.*
+ * - инвалидация точечная: грант на папку сбрасывает только записи пользователя
+ *   из поддерева этой папки (по all_parent_ids), без глобального сброса
+ * - каждая инвалидация увеличивает поколение пользователя; решение, вычисленное
+ *   до инвалидации (put с устаревшим поколением), в кэш не попадает
+ * - изменения на других узлах приходят через PermissionChangeListener (LISTEN/NOTIFY)
+ *   сразу после коммита; пока слушатель не подключен, кэш приостановлен (suspend)
+ *   и все проверки идут в SQL - окно устаревания между узлами не зависит от expire-after-write
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PermissionDecisionCache {
+
+    private static final String CACHE_NAME = "permission.decisions";
+
+    // Поколения инвалидаций по полосам hash(userId) - память не растет с числом пользователей,
+    // совпадение полос лишь изредка отменяет запись в кэш
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final MeterRegistry meterRegistry;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.permissions.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.permissions.cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${app.permissions.cache.expire-after-write:60000}")
+    private long expireAfterWriteMs;
+
+    private Cache<DecisionKey, Short> cache;
+
+    // Индекс ключей по пользователю - для инвалидации поддерева без обхода всего кэша
+    private final Map<String, Set<DecisionKey>> keysByUser = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray userGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    // Нет рассылки изменений между узлами - кэш не используется
+    private volatile boolean suspended;
+
+    @PostConstruct
+    public void initialize() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                // evictionListener вызывается синхронно, индекс не отстает от кэша
+                .evictionListener((DecisionKey key, Short value, RemovalCause cause) -> {
+                    if (key != null) {
+                        unindex(key);
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+        log.info("PermissionDecisionCache initialized: enabled={}, maxSize={}, expireAfterWrite={} ms",
+                enabled, maxSize, expireAfterWriteMs);
+    }
+
+    // ==================== ЧТЕНИЕ / ЗАПИСЬ ====================
+
+    /**
+     * @return закэшированная маска или null
+     */
+    public Short get(String userId, String itemId, ItemType itemType) {
+        if (!enabled || suspended) {
+            return null;
+        }
+        return cache.getIfPresent(new DecisionKey(userId, itemType, itemId));
+    }
+
+    /**
+     * Текущее поколение пользователя - берется до чтения прав из БД и передается в put
+     */
+    public long generation(String userId) {
+        return globalGeneration.get() + userGenerations.get(stripe(userId));
+    }
+
+    /**
+     * Запомнить решение, если с момента generation(userId) права пользователя не инвалидировались
+     *
+     * @param generation значение generation(userId), взятое до вычисления permission
+     */
+    public void put(String userId, String itemId, ItemType itemType, short permission, long generation) {
+        if (!enabled || suspended || generation(userId) != generation) {
+            return;
+        }
+        DecisionKey key = new DecisionKey(userId, itemType, itemId);
+        // Сначала индекс, затем кэш: запись в кэше без индекса не была бы инвалидирована
+        keysByUser.compute(userId, (id, keys) -> {
+            Set<DecisionKey> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            result.add(key);
+            return result;
+        });
+        cache.put(key, permission);
+
+        // Инвалидация между проверкой поколения и записью могла не увидеть эту запись
+        if (generation(userId) != generation) {
+            invalidateKey(key);
+        }
+    }
+
+    // ==================== ИНВАЛИДАЦИЯ ====================
+
+    /**
+     * Сбросить решения пользователя, затронутые изменением гранта на элемент
+     * Для папки - все закэшированные элементы из ее поддерева, иначе - один элемент
+     */
+    public void invalidate(String userId, String itemId, ItemType itemType) {
+        if (!enabled) {
+            return;
+        }
+        userGenerations.incrementAndGet(stripe(userId));
+
+        if (itemType != ItemType.FOLDER) {
+            invalidateKey(new DecisionKey(userId, itemType, itemId));
+            return;
+        }
+
+        Set<DecisionKey> userKeys = keysByUser.get(userId);
+        if (userKeys == null || userKeys.isEmpty()) {
+            return;
+        }
+
+        int invalidated = invalidateInSubtree(new ArrayList<>(userKeys), itemId);
+        log.debug("Invalidated {} cached decisions for user={} in folder subtree={}", invalidated, userId, itemId);
+    }
+
+    /**
+     * Сбросить все решения пользователя (изменилось членство в группах)
+     */
+    public void invalidateUser(String userId) {
+        if (!enabled) {
+            return;
+        }
+        userGenerations.incrementAndGet(stripe(userId));
+
+        Set<DecisionKey> userKeys = keysByUser.remove(userId);
+        if (userKeys != null) {
+            cache.invalidateAll(userKeys);
+        }
+    }
+
+    /**
+     * Сбросить все решения (пропущены уведомления об изменениях)
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        globalGeneration.incrementAndGet();
+        cache.invalidateAll();
+        keysByUser.clear();
+    }
+
+    /**
+     * Приостановить кэш: изменения с других узлов сейчас не доходят
+     */
+    public void suspend() {
+        suspended = true;
+        invalidateAll();
+    }
+
+    /**
+     * Возобновить кэш с пустого состояния после подключения к рассылке изменений
+     */
+    public void resume() {
+        invalidateAll();
+        suspended = false;
+    }
+
+    /**
+     * Оставляет среди кандидатов только элементы из поддерева папки (один запрос на тип)
+     * и сбрасывает их
+     */
+    private int invalidateInSubtree(List<DecisionKey> candidates, String folderId) {
+        Map<ItemType, Set<String>> idsByType = new EnumMap<>(ItemType.class);
+        for (DecisionKey key : candidates) {
+            idsByType.computeIfAbsent(key.itemType(), type -> new HashSet<>()).add(key.itemId());
+        }
+
+        Map<ItemType, Set<String>> affected = new EnumMap<>(ItemType.class);
+        idsByType.forEach((type, ids) ->
+                affected.put(type, new HashSet<>(findInSubtree(type, ids.toArray(String[]::new), folderId))));
+
+        int invalidated = 0;
+        for (DecisionKey key : candidates) {
+            if (affected.get(key.itemType()).contains(key.itemId())) {
+                invalidateKey(key);
+                invalidated++;
+            }
+        }
+        return invalidated;
+    }
+
+    private List<String> findInSubtree(ItemType itemType, String[] ids, String folderId) {
+        String sql = switch (itemType) {
+            case FOLDER -> "SELECT id FROM folder WHERE id = ANY(?) " +
+                    "AND (id = ? OR all_parent_ids @> ARRAY[CAST(? AS TEXT)])";
+            case PROJECT -> "SELECT id FROM project WHERE id = ANY(?) " +
+                    "AND (folder_id = ? OR all_parent_ids @> ARRAY[CAST(? AS TEXT)])";
+            case BLOCK -> "SELECT id FROM block WHERE id = ANY(?) " +
+                    "AND (folder_id = ? OR all_parent_ids @> ARRAY[CAST(? AS TEXT)])";
+            case FILE -> "SELECT id FROM file WHERE id = ANY(?) " +
+                    "AND (folder_id = ? OR all_parent_ids @> ARRAY[CAST(? AS TEXT)])";
+        };
+        return jdbcTemplate.queryForList(sql, String.class, ids, folderId, folderId);
+    }
+
+    private void invalidateKey(DecisionKey key) {
+        cache.invalidate(key);
+        unindex(key);
+    }
+
+    private void unindex(DecisionKey key) {
+        keysByUser.computeIfPresent(key.userId(), (userId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static int stripe(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private record DecisionKey(String userId, ItemType itemType, String itemId) {
+    }
+}
@@ -0,0 +1,754 @@
+package ru.platik777.backauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory движок вычисления эффективных прав доступа
+ * <p/>
+ * Держит в памяти:
+ * - дерево папок по tenant'ам (папки и элементы с их all_parent_ids)
+ * - индекс прямых грантов item_user_permission по пользователю
+ * - индекс грантов item_group_permission по группе
+ * <p/>
+ * Правила совпадают с SQL из ItemUserPermissionRepository:
+ * 1. прямой грант на элемент
+ * 2. грант на папку элемента (folder_id)
+ * 3. первый грант по порядку all_parent_ids
+ * На каждом уровне грант пользователя важнее групповых, гранты нескольких
+ * групп одного уровня объединяются. Группы пользователя берутся из GroupMembershipService
+ * <p/>
+ * Если движок выключен, еще не загружен или не знает элемент (создан после
+ * последней перезагрузки) - возвращается null и вызывающий код уходит в SQL.
+ * <p/>
+ * Снимок не должен отвечать старыми данными после изменений на других узлах или в обход сервиса:
+ * - PermissionChangeListener (LISTEN/NOTIFY) сообщает о каждом пользователе с измененными правами;
+ *   такой пользователь проверяется через SQL, пока не обновятся его гранты и гранты его групп
+ *   (раз в stale-refresh-delay, одним запросом на всех накопившихся пользователей)
+ * - о перемещенных и удаленных элементах сообщают триггеры item_change (changelog-permission-change.xml);
+ *   такой элемент и все элементы под перемещенной папкой проверяются через SQL, пока их узлы
+ *   в дереве не перечитаны из БД (там же, раз в stale-refresh-delay)
+ * - эхо изменений, уже примененных на этом узле (onPermissionGranted и т.п.), пропускается,
+ *   если приходит в пределах echo-window после применения
+ * - пока слушатель не подключен (старт, обрыв), движок не отвечает совсем;
+ *   после подключения - только после полной перезагрузки, начатой позже подключения
+ * - полная перезагрузка - только после подключения слушателя, при слишком большом числе
+ *   устаревших пользователей (max-incremental-users) или элементов (max-incremental-items)
+ *   и по расписанию (refresh-interval)
+ * Снимок и обновления читаются одной транзакцией REPEATABLE READ - все запросы видят одно состояние БД.
+ * Без уведомлений (app.permissions.notifications.enabled=false) движок не включается
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PermissionEngine {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final GroupMembershipService groupMembershipService;
+    private final PlatformTransactionManager transactionManager;
+
+    private static final String USER_GRANTS_SQL =
+            "SELECT user_id AS owner_id, permission, project_id, folder_id, file_id, block_id FROM item_user_permission";
+    private static final String GROUP_GRANTS_SQL =
+            "SELECT group_id AS owner_id, permission, project_id, folder_id, file_id, block_id FROM item_group_permission";
+
+    @Value("${app.permissions.engine.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.permissions.notifications.enabled:true}")
+    private boolean notificationsEnabled;
+
+    // Больше устаревших пользователей - дешевле полная перезагрузка
+    @Value("${app.permissions.engine.max-incremental-users:1000}")
+    private int maxIncrementalUsers;
+
+    // Больше устаревших элементов (перемещение большого поддерева) - дешевле полная перезагрузка
+    @Value("${app.permissions.engine.max-incremental-items:10000}")
+    private int maxIncrementalItems;
+
+    // Уведомление в пределах окна после локального изменения считается его эхом, мс
+    @Value("${app.permissions.engine.echo-window:2000}")
+    private long echoWindow;
+
+    private volatile FolderTree tree = FolderTree.EMPTY;
+    private volatile GrantIndex grants = new GrantIndex();
+    private volatile boolean ready = false;
+
+    // Номер последнего полученного изменения; снимок покрывает изменения с номером <= loadedSequence
+    private final AtomicLong changeSequence = new AtomicLong();
+    private volatile long loadedSequence = -1;
+    // Снимок отвечает, только если loadedSequence >= requiredSequence (MAX_VALUE - нет уведомлений)
+    private volatile long requiredSequence = Long.MAX_VALUE;
+    // Пользователи с изменениями, которых еще нет в снимке -> номер изменения
+    private final Map<String, Long> staleUsers = new ConcurrentHashMap<>();
+    // Перемещенные и удаленные элементы, узлы которых в дереве устарели -> номер изменения
+    private final Map<ItemType, Map<String, Long>> staleItems = staleItemMaps();
+    // Пользователи с изменениями, примененными на этом узле -> System.nanoTime() применения
+    private final Map<String, Long> localChanges = new ConcurrentHashMap<>();
+
+    // Изменения грантов, пришедшие во время загрузки - проигрываются на загруженных данных
+    private final Object writeLock = new Object();
+    private List<Consumer<GrantIndex>> pendingDuringReload;
+
+    /**
+     * Первичная загрузка после старта приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (enabled && !notificationsEnabled) {
+            log.warn("PermissionEngine requires app.permissions.notifications.enabled, permission checks use SQL");
+            enabled = false;
+        }
+        if (!enabled) {
+            log.info("PermissionEngine is disabled, permission checks use SQL");
+            return;
+        }
+        reload();
+    }
+
+    /**
+     * Периодическая перезагрузка дерева папок и грантов
+     * Подхватывает элементы, созданные в обход этого сервиса
+     */
+    @Scheduled(
+            fixedDelayString = "${app.permissions.engine.refresh-interval:300000}",
+            initialDelayString = "${app.permissions.engine.refresh-interval:300000}"
+    )
+    public void scheduledReload() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("PermissionEngine reload failed, keeping previous snapshot", e);
+            // Не пробрасываем исключение, чтобы не остановить scheduled task
+        }
+    }
+
+    /**
+     * Применение изменений, которых нет в снимке:
+     * после подключения слушателя - полная перезагрузка, иначе - обновление устаревших пользователей
+     */
+    @Scheduled(fixedDelayString = "${app.permissions.engine.stale-refresh-delay:1000}")
+    public void refreshIfStale() {
+        // Без уведомлений обновление не поможет - снимок все равно не используется
+        if (!enabled || requiredSequence == Long.MAX_VALUE) {
+            return;
+        }
+        try {
+            if (loadedSequence < requiredSequence
+                    || staleUsers.size() > maxIncrementalUsers
+                    || staleItemCount() > maxIncrementalItems) {
+                reload();
+                return;
+            }
+            if (staleItemCount() > 0) {
+                refreshStaleItems();
+            }
+            if (!staleUsers.isEmpty()) {
+                refreshStaleUsers();
+            }
+        } catch (Exception e) {
+            log.error("PermissionEngine refresh failed, stale users and items keep using SQL", e);
+        }
+    }
+
+    /**
+     * Полная перезагрузка снимка из БД
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        // Изменения с номером <= sequence закоммичены до начала чтения и попадут в снимок
+        long sequence = changeSequence.get();
+
+        synchronized (writeLock) {
+            pendingDuringReload = new ArrayList<>();
+        }
+
+        try {
+            Snapshot snapshot = readConsistently(() -> new Snapshot(loadTree(), loadGrants()));
+            FolderTree newTree = snapshot.tree();
+            GrantIndex newGrants = snapshot.grants();
+
+            synchronized (writeLock) {
+                pendingDuringReload.forEach(change -> change.accept(newGrants));
+                this.tree = newTree;
+                this.grants = newGrants;
+                this.ready = true;
+            }
+            loadedSequence = sequence;
+            staleUsers.values().removeIf(changed -> changed <= sequence);
+            staleItems.values().forEach(ids -> ids.values().removeIf(changed -> changed <= sequence));
+            // Эхо изменений, примененных до начала чтения, ничего не добавит к снимку
+            localChanges.values().removeIf(applied -> applied - startNanos < 0);
+
+            log.info("PermissionEngine loaded: {} tenants, {} folders, {} items, {} users and {} groups with grants in {} ms",
+                    newTree.tenantCount, newTree.folders.size(), newTree.itemCount(),
+                    newGrants.byUser.size(), newGrants.byGroup.size(), System.currentTimeMillis() - start);
+        } finally {
+            synchronized (writeLock) {
+                pendingDuringReload = null;
+            }
+        }
+    }
+
+    /**
+     * Обновление устаревших пользователей: их прямые гранты и гранты их групп
+     * (группы уже сброшены в GroupMembershipService слушателем уведомлений)
+     */
+    synchronized void refreshStaleUsers() {
+        long start = System.nanoTime();
+        // Номера изменений до чтения: изменение, пришедшее во время чтения, оставит пользователя устаревшим
+        Map<String, Long> batch = new HashMap<>(staleUsers);
+        String[] userIds = batch.keySet().toArray(String[]::new);
+
+        synchronized (writeLock) {
+            pendingDuringReload = new ArrayList<>();
+        }
+
+        try {
+            Set<String> groupIds = new HashSet<>();
+            GrantIndex loaded = readConsistently(() -> {
+                GrantIndex index = new GrantIndex();
+                loadGrants(USER_GRANTS_SQL + " WHERE user_id = ANY(?)", index.byUser, (Object) userIds);
+
+                for (String userId : userIds) {
+                    Collections.addAll(groupIds, groupMembershipService.getGroupIds(userId));
+                }
+                if (!groupIds.isEmpty()) {
+                    loadGrants(GROUP_GRANTS_SQL + " WHERE group_id = ANY(?)", index.byGroup,
+                            (Object) groupIds.toArray(String[]::new));
+                }
+                return index;
+            });
+
+            synchronized (writeLock) {
+                pendingDuringReload.forEach(change -> change.accept(loaded));
+                GrantIndex index = this.grants;
+                for (String userId : userIds) {
+                    replaceGrants(index.byUser, userId, loaded.byUser.get(userId));
+                }
+                for (String groupId : groupIds) {
+                    replaceGrants(index.byGroup, groupId, loaded.byGroup.get(groupId));
+                }
+            }
+            batch.forEach(staleUsers::remove);
+            for (String userId : userIds) {
+                localChanges.computeIfPresent(userId, (id, applied) -> applied - start < 0 ? null : applied);
+            }
+
+            log.debug("PermissionEngine refreshed {} users and {} groups in {} ms", userIds.length, groupIds.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            synchronized (writeLock) {
+                pendingDuringReload = null;
+            }
+        }
+    }
+
+    /**
+     * Обновление узлов перемещенных и удаленных элементов: узел перечитывается из БД,
+     * удаленный элемент убирается из дерева
+     */
+    synchronized void refreshStaleItems() {
+        long start = System.nanoTime();
+        // Номера изменений до чтения: изменение, пришедшее во время чтения, оставит элемент устаревшим
+        Map<ItemType, Map<String, Long>> batch = new EnumMap<>(ItemType.class);
+        staleItems.forEach((itemType, ids) -> {
+            if (!ids.isEmpty()) {
+                batch.put(itemType, new HashMap<>(ids));
+            }
+        });
+
+        FolderTree loaded = readConsistently(() -> {
+            Map<ItemType, String[]> idsByType = new EnumMap<>(ItemType.class);
+            batch.forEach((itemType, ids) -> idsByType.put(itemType, ids.keySet().toArray(String[]::new)));
+            return loadTree(idsByType);
+        });
+
+        FolderTree snapshot = this.tree;
+        batch.forEach((itemType, ids) -> {
+            for (String itemId : ids.keySet()) {
+                if (itemType == ItemType.FOLDER) {
+                    replaceNode(snapshot.folders, itemId, loaded.folders.get(itemId));
+                } else {
+                    replaceNode(snapshot.items.get(itemType), itemId, loaded.items.get(itemType).get(itemId));
+                }
+            }
+            Map<String, Long> stale = staleItems.get(itemType);
+            ids.forEach(stale::remove);
+        });
+
+        log.debug("PermissionEngine refreshed {} moved or deleted items in {} ms", staleItemCount(batch),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static <T> void replaceNode(Map<String, T> nodes, String itemId, T loaded) {
+        if (loaded != null) {
+            nodes.put(itemId, loaded);
+        } else {
+            nodes.remove(itemId);
+        }
+    }
+
+    private int staleItemCount() {
+        return staleItemCount(staleItems);
+    }
+
+    private static int staleItemCount(Map<ItemType, Map<String, Long>> items) {
+        int count = 0;
+        for (Map<String, Long> ids : items.values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+
+    private static Map<ItemType, Map<String, Long>> staleItemMaps() {
+        Map<ItemType, Map<String, Long>> items = new EnumMap<>(ItemType.class);
+        for (ItemType itemType : ItemType.values()) {
+            items.put(itemType, new ConcurrentHashMap<>());
+        }
+        return items;
+    }
+
+    private static void replaceGrants(Map<String, Grants> grants, String ownerId, Grants loaded) {
+        if (loaded != null) {
+            grants.put(ownerId, loaded);
+        } else {
+            grants.remove(ownerId);
+        }
+    }
+
+    /**
+     * Чтение одной транзакцией REPEATABLE READ: все запросы видят одно состояние БД
+     */
+    private <T> T readConsistently(Supplier<T> reader) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> reader.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReady() {
+        return enabled && ready && loadedSequence >= requiredSequence;
+    }
+
+    // ==================== УВЕДОМЛЕНИЯ ОБ ИЗМЕНЕНИЯХ (PermissionChangeListener) ====================
+
+    /**
+     * Права пользователя изменились (на любом узле) - до обновления его грантов он проверяется через SQL
+     * Эхо изменения, уже примененного на этом узле, пропускается
+     */
+    public void onUserChanged(String userId) {
+        if (!enabled) {
+            return;
+        }
+        Long applied = localChanges.remove(userId);
+        if (applied != null && System.nanoTime() - applied <= TimeUnit.MILLISECONDS.toNanos(echoWindow)) {
+            log.debug("PermissionEngine skipped echo of local change: user={}", userId);
+            return;
+        }
+        staleUsers.put(userId, changeSequence.incrementAndGet());
+    }
+
+    /**
+     * Элемент перемещен или удален (на любом узле) - до обновления его узла в дереве
+     * он и все элементы под ним проверяются через SQL
+     */
+    public void onItemChanged(ItemType itemType, String itemId) {
+        if (!enabled) {
+            return;
+        }
+        staleItems.get(itemType).put(itemId, changeSequence.incrementAndGet());
+    }
+
+    /**
+     * Слушатель подключился: изменения, пропущенные без соединения, есть только в новом снимке
+     */
+    public void onNotificationsConnected() {
+        localChanges.clear();
+        requiredSequence = changeSequence.incrementAndGet();
+    }
+
+    /**
+     * Слушатель отключился: изменения больше не доходят, снимок не используется
+     */
+    public void onNotificationsLost() {
+        requiredSequence = Long.MAX_VALUE;
+    }
+
+    // ==================== ВЫЧИСЛЕНИЕ ПРАВ ====================
+
+    /**
+     * Получить эффективные права пользователя на элемент
+     *
+     * @return битовая маска прав или null, если движок не может ответить
+     */
+    public Short findEffectivePermission(String userId, String itemId, ItemType itemType) {
+        if (!isReady() || staleUsers.containsKey(userId)) {
+            return null;
+        }
+
+        FolderTree snapshot = this.tree;
+        String folderId;
+        String[] ancestors;
+
+        if (itemType == ItemType.FOLDER) {
+            FolderNode folder = snapshot.folders.get(itemId);
+            if (folder == null) {
+                return null;
+            }
+            folderId = null;
+            ancestors = folder.ancestors();
+        } else {
+            ItemNode item = snapshot.items.get(itemType).get(itemId);
+            if (item == null) {
+                return null;
+            }
+            folderId = item.folderId();
+            ancestors = item.ancestors();
+        }
+
+        // Элемент или папка над ним перемещены или удалены, а дерево еще не обновлено
+        if (isStale(itemType, itemId, folderId, ancestors)) {
+            return null;
+        }
+
+        GrantIndex index = this.grants;
+        Grants userGrants = index.byUser.get(userId);
+        List<Grants> groupGrants = index.groupGrantsOf(groupMembershipService.getGroupIds(userId));
+        if (userGrants == null && groupGrants.isEmpty()) {
+            return 0;
+        }
+
+        // 1. Прямой грант на элемент
+        Short permission = findAtLevel(userGrants, groupGrants, itemType, itemId);
+        if (permission != null) {
+            return permission;
+        }
+
+        // 2. Грант на папку элемента
+        if (folderId != null) {
+            permission = findAtLevel(userGrants, groupGrants, ItemType.FOLDER, folderId);
+            if (permission != null) {
+                return permission;
+            }
+        }
+
+        // 3. Первый грант по порядку all_parent_ids
+        for (String ancestorId : ancestors) {
+            permission = findAtLevel(userGrants, groupGrants, ItemType.FOLDER, ancestorId);
+            if (permission != null) {
+                return permission;
+            }
+        }
+
+        return 0;
+    }
+
+    private boolean isStale(ItemType itemType, String itemId, String folderId, String[] ancestors) {
+        if (staleItemCount() == 0) {
+            return false;
+        }
+        if (staleItems.get(itemType).containsKey(itemId)) {
+            return true;
+        }
+        Map<String, Long> staleFolders = staleItems.get(ItemType.FOLDER);
+        if (folderId != null && staleFolders.containsKey(folderId)) {
+            return true;
+        }
+        for (String ancestorId : ancestors) {
+            if (staleFolders.containsKey(ancestorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Грант одного уровня: грант пользователя, иначе объединение грантов его групп
+     */
+    private static Short findAtLevel(Grants userGrants, List<Grants> groupGrants, ItemType itemType, String itemId) {
+        if (userGrants != null) {
+            Short permission = userGrants.of(itemType).get(itemId);
+            if (permission != null) {
+                return permission;
+            }
+        }
+
+        Short combined = null;
+        for (Grants group : groupGrants) {
+            Short permission = group.of(itemType).get(itemId);
+            if (permission != null) {
+                combined = (short) ((combined != null ? combined : 0) | permission);
+            }
+        }
+        return combined;
+    }
+
+    // ==================== ИНКРЕМЕНТАЛЬНЫЕ ИЗМЕНЕНИЯ ====================
+
+    /**
+     * Грант выдан или обновлен (вызывается после коммита транзакции)
+     */
+    public void onPermissionGranted(String userId, String itemId, ItemType itemType, short permission) {
+        if (!enabled) {
+            return;
+        }
+        applyChange(index -> index.byUser
+                .computeIfAbsent(userId, id -> new Grants())
+                .of(itemType)
+                .put(itemId, permission));
+        recordLocalChange(userId);
+    }
+
+    /**
+     * Грант отозван (вызывается после коммита транзакции)
+     */
+    public void onPermissionRevoked(String userId, String itemId, ItemType itemType) {
+        if (!enabled) {
+            return;
+        }
+        applyChange(index -> {
+            Grants userGrants = index.byUser.get(userId);
+            if (userGrants != null) {
+                userGrants.of(itemType).remove(itemId);
+            }
+        });
+        recordLocalChange(userId);
+    }
+
+    private void applyChange(Consumer<GrantIndex> change) {
+        synchronized (writeLock) {
+            change.accept(grants);
+            if (pendingDuringReload != null) {
+                pendingDuringReload.add(change);
+            }
+        }
+    }
+
+    /**
+     * Уведомление транзакции придет и на этот узел - его обработка ничего не добавит.
+     * Одна отметка на пользователя: несколько локальных транзакций подряд дают несколько уведомлений,
+     * пропускается только первое, остальные обновляют пользователя из БД
+     */
+    private void recordLocalChange(String userId) {
+        localChanges.put(userId, System.nanoTime());
+    }
+
+    // ==================== ЗАГРУЗКА ИЗ БД ====================
+
+    private FolderTree loadTree() {
+        return loadTree(null);
+    }
+
+    /**
+     * @param idsByType id элементов для загрузки по типам; null - все элементы
+     */
+    private FolderTree loadTree(Map<ItemType, String[]> idsByType) {
+        // Дедупликация строк id: all_parent_ids у соседних элементов почти совпадают
+        Map<String, String> ids = new HashMap<>();
+        Set<String> tenants = new HashSet<>();
+
+        Map<String, FolderNode> folders = new ConcurrentHashMap<>();
+        queryNodes("SELECT id, parent_id, tenant_id, all_parent_ids FROM folder", idsByType, ItemType.FOLDER,
+                rs -> {
+                    String id = dedup(ids, rs.getString("id"));
+                    String tenantId = rs.getString("tenant_id");
+                    tenants.add(tenantId);
+                    folders.put(id, new FolderNode(
+                            id,
+                            dedup(ids, rs.getString("parent_id")),
+                            tenantId,
+                            readIds(ids, rs)
+                    ));
+                });
+
+        Map<ItemType, Map<String, ItemNode>> items = new EnumMap<>(ItemType.class);
+        items.put(ItemType.FOLDER, Collections.emptyMap());
+        items.put(ItemType.PROJECT, loadItems("project", ItemType.PROJECT, idsByType, ids, tenants));
+        items.put(ItemType.BLOCK, loadItems("block", ItemType.BLOCK, idsByType, ids, tenants));
+        items.put(ItemType.FILE, loadItems("file", ItemType.FILE, idsByType, ids, tenants));
+
+        return new FolderTree(folders, items, tenants.size());
+    }
+
+    private Map<String, ItemNode> loadItems(String table, ItemType itemType, Map<ItemType, String[]> idsByType,
+                                            Map<String, String> ids, Set<String> tenants) {
+        Map<String, ItemNode> items = new ConcurrentHashMap<>();
+        queryNodes("SELECT id, folder_id, tenant_id, all_parent_ids FROM " + table, idsByType, itemType,
+                rs -> {
+                    String id = rs.getString("id");
+                    String tenantId = rs.getString("tenant_id");
+                    tenants.add(tenantId);
+                    items.put(id, new ItemNode(
+                            id,
+                            dedup(ids, rs.getString("folder_id")),
+                            tenantId,
+                            readIds(ids, rs)
+                    ));
+                });
+        return items;
+    }
+
+    private void queryNodes(String sql, Map<ItemType, String[]> idsByType, ItemType itemType,
+                            RowCallbackHandler handler) {
+        if (idsByType == null) {
+            jdbcTemplate.query(sql, handler);
+            return;
+        }
+        String[] itemIds = idsByType.get(itemType);
+        if (itemIds != null) {
+            jdbcTemplate.query(sql + " WHERE id = ANY(?)", handler, (Object) itemIds);
+        }
+    }
+
+    private GrantIndex loadGrants() {
+        GrantIndex index = new GrantIndex();
+        loadGrants(USER_GRANTS_SQL, index.byUser);
+        loadGrants(GROUP_GRANTS_SQL, index.byGroup);
+        return index;
+    }
+
+    private void loadGrants(String sql, Map<String, Grants> grants, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            Grants ownerGrants = grants.computeIfAbsent(rs.getString("owner_id"), id -> new Grants());
+            short permission = rs.getShort("permission");
+
+            if (rs.getString("project_id") != null) {
+                ownerGrants.of(ItemType.PROJECT).put(rs.getString("project_id"), permission);
+            } else if (rs.getString("folder_id") != null) {
+                ownerGrants.of(ItemType.FOLDER).put(rs.getString("folder_id"), permission);
+            } else if (rs.getString("file_id") != null) {
+                ownerGrants.of(ItemType.FILE).put(rs.getString("file_id"), permission);
+            } else if (rs.getString("block_id") != null) {
+                ownerGrants.of(ItemType.BLOCK).put(rs.getString("block_id"), permission);
+            }
+        }, args);
+    }
+
+    private static String[] readIds(Map<String, String> ids, ResultSet rs) throws SQLException {
+        Array array = rs.getArray("all_parent_ids");
+        if (array == null) {
+            return new String[0];
+        }
+        String[] values = (String[]) array.getArray();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = dedup(ids, values[i]);
+        }
+        return values;
+    }
+
+    private static String dedup(Map<String, String> ids, String id) {
+        return id == null ? null : ids.computeIfAbsent(id, v -> v);
+    }
+
+    // ==================== СТРУКТУРЫ ДАННЫХ ====================
+
+    private record Snapshot(FolderTree tree, GrantIndex grants) {
+    }
+
+    private record FolderNode(String id, String parentId, String tenantId, String[] ancestors) {
+    }
+
+    private record ItemNode(String id, String folderId, String tenantId, String[] ancestors) {
+    }
+
+    /**
+     * Снимок дерева папок и элементов
+     * Узлы перемещенных и удаленных элементов заменяются на месте (refreshStaleItems)
+     */
+    private static final class FolderTree {
+        static final FolderTree EMPTY = empty();
+
+        final Map<String, FolderNode> folders;
+        final Map<ItemType, Map<String, ItemNode>> items;
+        final int tenantCount;
+
+        FolderTree(Map<String, FolderNode> folders, Map<ItemType, Map<String, ItemNode>> items, int tenantCount) {
+            this.folders = folders;
+            this.items = items;
+            this.tenantCount = tenantCount;
+        }
+
+        int itemCount() {
+            return items.values().stream().mapToInt(Map::size).sum();
+        }
+
+        private static FolderTree empty() {
+            Map<ItemType, Map<String, ItemNode>> items = new EnumMap<>(ItemType.class);
+            for (ItemType itemType : ItemType.values()) {
+                items.put(itemType, Collections.emptyMap());
+            }
+            return new FolderTree(Collections.emptyMap(), items, 0);
+        }
+    }
+
+    /**
+     * Гранты пользователей и групп
+     */
+    private static final class GrantIndex {
+        final Map<String, Grants> byUser = new ConcurrentHashMap<>();
+        final Map<String, Grants> byGroup = new ConcurrentHashMap<>();
+
+        List<Grants> groupGrantsOf(String[] groupIds) {
+            if (groupIds.length == 0) {
+                return Collections.emptyList();
+            }
+            List<Grants> result = new ArrayList<>(groupIds.length);
+            for (String groupId : groupIds) {
+                Grants groupGrants = byGroup.get(groupId);
+                if (groupGrants != null) {
+                    result.add(groupGrants);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Прямые гранты одного пользователя или группы по типам элементов
+     */
+    private static final class Grants {
+        private final Map<String, Short> folders = new ConcurrentHashMap<>();
+        private final Map<String, Short> projects = new ConcurrentHashMap<>();
+        private final Map<String, Short> blocks = new ConcurrentHashMap<>();
+        private final Map<String, Short> files = new ConcurrentHashMap<>();
+
+        Map<String, Short> of(ItemType itemType) {
+            return switch (itemType) {
+                case FOLDER -> folders;
+                case PROJECT -> projects;
+                case BLOCK -> blocks;
+                case FILE -> files;
+            };
+        }
+    }
+}
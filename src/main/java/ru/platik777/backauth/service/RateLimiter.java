@@ -0,0 +1,203 @@
+package ru.platik777.backauth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.exception.RateLimitExceededException;
+import ru.platik777.backauth.util.TokenBucket;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение частоты запросов: token bucket на API ключ, пользователя и тенанта
+ * <p/>
+ * - ведра живут в памяти узла (ConcurrentHashMap на каждую область), взятие токена - CAS
+ * - пополнение ленивое, при обращении к ведру (TokenBucket)
+ * - лимиты API ключа берутся из строки api_key (rate_limit, rate_limit_burst),
+ *   для пустых полей и для пользователей/тенантов - из app.rate-limit.*
+ * - полные ведра периодически удаляются: полное ведро эквивалентно отсутствующему
+ * - отказы считаются в метрике rate.limit.rejected{scope}
+ * <p/>
+ * Иерархия областей:
+ * - запрос по JWT: пользователь -> тенант
+ * - проверка API ключа: ключ -> тенант; ведро пользователя-владельца не расходуется,
+ *   интерактивный трафик и интеграции по ключам не ограничивают друг друга
+ * <p/>
+ * Проверка идет от узкой области к широкой: исчерпавший свой лимит ключ или пользователь
+ * отклоняется, не тратя общий лимит тенанта. При отказе тенанта токен, уже взятый
+ * в узкой области, возвращается
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RateLimiter {
+
+    /**
+     * Область лимита
+     */
+    public enum Scope {
+        API_KEY,
+        USER,
+        TENANT
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rate-limit.api-key.rate:100}")
+    private double apiKeyRate;
+
+    @Value("${app.rate-limit.api-key.burst:200}")
+    private int apiKeyBurst;
+
+    @Value("${app.rate-limit.user.rate:50}")
+    private double userRate;
+
+    @Value("${app.rate-limit.user.burst:100}")
+    private int userBurst;
+
+    @Value("${app.rate-limit.tenant.rate:500}")
+    private double tenantRate;
+
+    @Value("${app.rate-limit.tenant.burst:1000}")
+    private int tenantBurst;
+
+    private final Map<Scope, Map<String, TokenBucket>> buckets = new EnumMap<>(Scope.class);
+    private final Map<Scope, Counter> rejected = new EnumMap<>(Scope.class);
+
+    @PostConstruct
+    public void initialize() {
+        for (Scope scope : Scope.values()) {
+            buckets.put(scope, new ConcurrentHashMap<>());
+            rejected.put(scope, Counter.builder("rate.limit.rejected")
+                    .description("Запросы, отклоненные ограничением частоты")
+                    .tag("scope", scope.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+
+        log.info("RateLimiter initialized: enabled={}, apiKey={}/s (burst {}), user={}/s (burst {}), tenant={}/s (burst {})",
+                enabled, apiKeyRate, apiKeyBurst, userRate, userBurst, tenantRate, tenantBurst);
+    }
+
+    /**
+     * Запрос пользователя по JWT токену
+     *
+     * @param tenantId может быть null
+     * @throws RateLimitExceededException лимит пользователя или тенанта исчерпан
+     */
+    public void acquireForUser(String userId, String tenantId) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        TokenBucket user = acquire(Scope.USER, userId, userRate, userBurst, now);
+        try {
+            acquire(Scope.TENANT, tenantId, tenantRate, tenantBurst, now);
+        } catch (RateLimitExceededException e) {
+            refund(user);
+            throw e;
+        }
+    }
+
+    /**
+     * Проверка API ключа
+     *
+     * @param rate  лимит ключа из api_key.rate_limit (null - по умолчанию)
+     * @param burst всплеск ключа из api_key.rate_limit_burst (null - по умолчанию)
+     * @param tenantId тенант владельца ключа, может быть null
+     * @throws RateLimitExceededException лимит ключа или тенанта исчерпан
+     */
+    public void acquireForApiKey(String apiKeyId, String tenantId, Double rate, Integer burst) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        TokenBucket key = acquire(Scope.API_KEY, apiKeyId,
+                rate != null && rate > 0 ? rate : apiKeyRate,
+                burst != null && burst > 0 ? burst : apiKeyBurst,
+                now);
+        try {
+            acquire(Scope.TENANT, tenantId, tenantRate, tenantBurst, now);
+        } catch (RateLimitExceededException e) {
+            refund(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Удаление полных ведер
+     */
+    @Scheduled(fixedRateString = "${app.rate-limit.cleanup-interval:60000}")
+    public void cleanUp() {
+        long now = System.nanoTime();
+        int removed = 0;
+
+        for (Map<String, TokenBucket> scopeBuckets : buckets.values()) {
+            for (Map.Entry<String, TokenBucket> entry : scopeBuckets.entrySet()) {
+                if (entry.getValue().isFull(now) && scopeBuckets.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+        }
+
+        if (removed > 0) {
+            log.debug("RateLimiter cleanup: {} idle buckets removed", removed);
+        }
+    }
+
+    /**
+     * @return ведро, из которого взят токен (null - области нет)
+     */
+    private TokenBucket acquire(Scope scope, String id, double rate, int burst, long now) {
+        if (id == null) {
+            return null;
+        }
+
+        TokenBucket bucket = bucket(scope, id, rate, burst);
+        long waitNanos = bucket.tryAcquire(now);
+        if (waitNanos == 0) {
+            return bucket;
+        }
+
+        rejected.get(scope).increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        log.debug("Rate limit exceeded: scope={}, id={}, retryAfter={}s", scope, id, retryAfterSeconds);
+
+        throw new RateLimitExceededException(
+                "Rate limit exceeded for " + scope.name().toLowerCase(), retryAfterSeconds);
+    }
+
+    private static void refund(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.refund();
+        }
+    }
+
+    private TokenBucket bucket(Scope scope, String id, double rate, int burst) {
+        Map<String, TokenBucket> scopeBuckets = buckets.get(scope);
+
+        TokenBucket bucket = scopeBuckets.get(id);
+        if (bucket == null) {
+            return scopeBuckets.computeIfAbsent(id, key -> new TokenBucket(rate, burst));
+        }
+
+        // Лимиты ключа изменены в api_key - новое ведро (полное)
+        if (!bucket.hasLimits(rate, burst)) {
+            TokenBucket updated = new TokenBucket(rate, burst);
+            return scopeBuckets.replace(id, bucket, updated) ? updated : scopeBuckets.getOrDefault(id, updated);
+        }
+        return bucket;
+    }
+}
@@ -10,6 +10,7 @@ import ru.platik777.backauth.dto.response.ResetPasswordCheckResponse;
 import ru.platik777.backauth.dto.response.StatusResponse;
 import ru.platik777.backauth.dto.response.UserResponse;
 import ru.platik777.backauth.entity.User;
+import ru.platik777.backauth.entity.types.TokenType;
 import ru.platik777.backauth.exception.CustomJwtException;
 import ru.platik777.backauth.exception.ResetPasswordException;
 import ru.platik777.backauth.repository.UserRepository;
@@ -24,7 +25,6 @@ import ru.platik777.backauth.util.EmailMasker;
 public class ResetPasswordService {
 
     private final JwtService jwtService;
-    private final KeyService keyService;
     private final PasswordService passwordService;
     //private final EmailService emailService;
     private final ValidationService validationService;
@@ -130,7 +130,7 @@ public class ResetPasswordService {
         try {
             AuthenticatedUser user = jwtService.parseToken(
                     token,
-                    keyService.getSigningKeyResetPassword()
+                    TokenType.RESET_PASSWORD
             );
 
             log.debug("Reset password token validated successfully for userId: {}", user.getUserId());
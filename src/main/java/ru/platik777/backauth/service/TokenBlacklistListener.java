@@ -0,0 +1,126 @@
+package ru.platik777.backauth.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Рассылка отзывов токенов между узлами через PostgreSQL LISTEN/NOTIFY
+ * <p/>
+ * Триггер на token_blacklist (changelog-token-blacklist.xml) вызывает
+ * pg_notify('token_blacklist', digest). PostgreSQL доставляет уведомление только
+ * после коммита, откаченный отзыв не приходит никуда.
+ * <p/>
+ * Отдельный поток держит соединение с LISTEN. После каждого подключения локальная
+ * копия загружается целиком (TokenBlacklistService.loadReplica) - отзывы, закоммиченные
+ * без соединения, не теряются; затем записи из уведомлений дочитываются по digest.
+ * Ошибка дочитывания обрывает цикл: переподключение снова загружает копию целиком
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenBlacklistListener {
+
+    static final String CHANNEL = "token_blacklist";
+
+    private final DataSource dataSource;
+    private final TokenBlacklistService tokenBlacklistService;
+
+    @Value("${app.jwt.blacklist.shared.enabled:true}")
+    private boolean enabled;
+
+    // Максимальное ожидание уведомлений за один вызов, мс
+    @Value("${app.jwt.blacklist.shared.poll-timeout:1000}")
+    private int pollTimeout;
+
+    // Пауза перед переподключением после обрыва, мс
+    @Value("${app.jwt.blacklist.shared.reconnect-delay:5000}")
+    private long reconnectDelay;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.warn("Shared token blacklist is disabled: revocations stay on the node that made them");
+            return;
+        }
+
+        running = true;
+        listenerThread = new Thread(this::run, "token-blacklist-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                listen(connection);
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Token blacklist listener disconnected, reconnecting in {} ms: {}",
+                            reconnectDelay, e.getMessage());
+                }
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void listen(Connection connection) throws SQLException {
+        connection.setAutoCommit(true);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        }
+
+        // LISTEN уже активен: все, что закоммичено после этой загрузки, придет уведомлением
+        tokenBlacklistService.loadReplica();
+        log.info("Listening for token revocations on channel '{}'", CHANNEL);
+
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(pollTimeout);
+            if (notifications == null || notifications.length == 0) {
+                continue;
+            }
+
+            Set<String> digests = new HashSet<>();
+            for (PGNotification notification : notifications) {
+                String digest = notification.getParameter();
+                if (digest != null && !digest.isEmpty()) {
+                    digests.add(digest);
+                }
+            }
+            tokenBlacklistService.onRevoked(digests);
+        }
+    }
+}
@@ -1,28 +1,89 @@
 package ru.platik777.backauth.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.platik777.backauth.dto.BlacklistStats;
+import ru.platik777.backauth.util.BloomFilter;
+import ru.platik777.backauth.util.TokenDigest;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Сервис черного списка токенов
  * Используется для инвалидации токенов при:
  * - Сбросе пароля (токен сброса пароля становится одноразовым)
  * - Выходе из системы (будущая функциональность)
+ * <p/>
+ * Хранилище:
+ * - ключ - digest токена (TokenDigest, 43 символа) вместо самого токена
+ * - запись живет до exp самого токена: после exp токен и так не пройдет проверку
+ * - записи разложены по корзинам времени истечения (ширина bucket-width),
+ *   очистка снимает только истекшие корзины - O(истекших), без полного обхода
+ * - счетчики ведутся при добавлении/удалении, статистика не обходит записи
+ * <p/>
+ * Перед точным хранилищем стоит фильтр Блума: почти все проверяемые токены
+ * не в черном списке, и отрицательный ответ стоит k чтений битов без обращения к Map.
+ * Фильтр перестраивается раз в время жизни access токена из живых записей,
+ * чтобы биты истекших токенов не копили ложные срабатывания.
+ * Пока новое поколение заполняется, проверяется и предыдущее
+ * <p/>
+ * Между узлами черный список общий: отзыв пишется в таблицу token_blacklist
+ * (TokenBlacklistStore) в транзакции вызывающего кода, в локальную копию - только после
+ * коммита. Остальные узлы получают отзыв уведомлением, которое PostgreSQL доставляет
+ * после коммита (TokenBlacklistListener); при каждом подключении слушателя копия
+ * загружается целиком, поэтому пропущенные без соединения уведомления не теряются.
+ * Проверки остаются локальными. Пока копия ни разу не загружена, проверка отвечает
+ * "в черном списке": отозванный токен не должен проходить на только что запущенном узле
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class TokenBlacklistService {
 
-    // Map для хранения токенов: token -> время добавления
-    private final Map<String, LocalDateTime> tokenBlacklist = new ConcurrentHashMap<>();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final TokenBlacklistStore tokenBlacklistStore;
+
+    // digest токена -> момент истечения токена (epoch millis)
+    private final Map<String, Long> entries = new ConcurrentHashMap<>();
+
+    // Номер корзины (expiresAt / bucketWidth) -> digest'ы, истекающие в ней
+    private final ConcurrentNavigableMap<Long, Set<String>> expiryBuckets = new ConcurrentSkipListMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong totalAdded = new AtomicLong();
+    private final AtomicLong totalExpired = new AtomicLong();
+
+    // Текущее и предыдущее поколения фильтра Блума
+    private volatile BloomFilter bloomFilter;
+    private volatile BloomFilter previousBloomFilter;
+
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
+
+    // Локальная копия token_blacklist загружена хотя бы раз
+    private volatile boolean replicaLoaded;
 
     // Время жизни access токена из конфигурации (в миллисекундах)
     @Value("${app.jwt.app.access.expiration:600000}")
@@ -32,6 +93,26 @@ public class TokenBlacklistService {
     @Value("${app.jwt.cleanup-interval:600000}")
     private long cleanupIntervalMs;
 
+    // Ширина корзины истечения (в миллисекундах)
+    @Value("${app.jwt.blacklist.bucket-width:10000}")
+    private long bucketWidthMs;
+
+    // Срок хранения токена, exp которого прочитать не удалось (в миллисекундах)
+    @Value("${app.jwt.blacklist.fallback-ttl:28800000}")
+    private long fallbackTtlMs;
+
+    // Ожидаемое число записей в одном поколении фильтра Блума
+    @Value("${app.jwt.blacklist.bloom.expected-insertions:100000}")
+    private long bloomExpectedInsertions;
+
+    // Допустимая доля ложных срабатываний фильтра Блума
+    @Value("${app.jwt.blacklist.bloom.false-positive-rate:0.01}")
+    private double bloomFalsePositiveRate;
+
+    // Общий черный список в БД (иначе - только память узла)
+    @Value("${app.jwt.blacklist.shared.enabled:true}")
+    private boolean sharedEnabled;
+
     /**
      * Инициализация сервиса
      */
@@ -45,11 +126,19 @@ public class TokenBlacklistService {
                 accessTokenMinutes, accessTokenExpirationMs);
         log.info("  - Cleanup interval: {} minutes ({} ms)",
                 cleanupMinutes, cleanupIntervalMs);
-        log.info("  - Using ConcurrentHashMap for thread safety");
+        log.info("  - Expiry bucket width: {} ms, fallback TTL: {} ms",
+                bucketWidthMs, fallbackTtlMs);
+
+        bloomFilter = newBloomFilter();
+        log.info("  - Bloom filter: {} bits, {} hash functions, target FPP {}",
+                bloomFilter.getBitCount(), bloomFilter.getHashFunctions(), bloomFalsePositiveRate);
+        log.info("  - Shared blacklist (token_blacklist): {}", sharedEnabled);
     }
 
     /**
      * Добавление токена в черный список
+     * Срок хранения берется из exp токена (без проверки подписи),
+     * если exp прочитать не удалось - fallback-ttl
      *
      * @param token JWT токен для инвалидации
      */
@@ -59,11 +148,80 @@ public class TokenBlacklistService {
             return;
         }
 
-        LocalDateTime addedAt = LocalDateTime.now();
-        tokenBlacklist.put(token, addedAt);
+        long expiresAtMillis = readExpiresAtMillis(token);
+        if (expiresAtMillis < 0) {
+            expiresAtMillis = System.currentTimeMillis() + fallbackTtlMs;
+        }
+        addToken(token, expiresAtMillis);
+    }
+
+    /**
+     * Добавление токена в черный список до заданного момента
+     *
+     * @param token           JWT токен для инвалидации
+     * @param expiresAtMillis exp токена (epoch millis)
+     */
+    public void addToken(String token, long expiresAtMillis) {
+        if (token == null || token.isEmpty()) {
+            log.warn("Attempted to add null or empty token to blacklist");
+            return;
+        }
+
+        String digest = TokenDigest.of(token);
+
+        // Проверенный ранее токен не должен больше проходить фильтр из кэша
+        verifiedTokenCache.invalidate(digest);
+
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            log.debug("Token already expired, not added to blacklist");
+            return;
+        }
+
+        // Сначала общий список: отзыв не должен остаться только в памяти этого узла
+        if (sharedEnabled) {
+            tokenBlacklistStore.insert(digest, expiresAtMillis);
+        }
+
+        // Откат транзакции не должен оставить на узле отзыв, которого нет в БД
+        afterCommit(() -> {
+            if (applyEntry(digest, expiresAtMillis)) {
+                log.debug("Token added to blacklist until {}. Total tokens: {}", expiresAtMillis, size.get());
+            }
+            verifiedTokenCache.invalidate(digest);
+        });
+    }
+
+    /**
+     * Добавление digest в локальную копию
+     *
+     * @return false если digest уже был
+     */
+    private boolean applyEntry(String digest, long expiresAtMillis) {
+        // Бит выставляется до записи в Map: фильтр не должен отвечать "нет" на уже добавленный токен
+        BloomFilter bloom = bloomFilter;
+        bloom.put(digest);
 
-        log.debug("Token added to blacklist at {}. Total tokens: {}",
-                addedAt, tokenBlacklist.size());
+        if (entries.putIfAbsent(digest, expiresAtMillis) != null) {
+            return false;
+        }
+
+        // Поколение сменилось во время добавления - перенос мог не увидеть запись
+        BloomFilter current = bloomFilter;
+        if (current != bloom) {
+            current.put(digest);
+        }
+        size.incrementAndGet();
+        totalAdded.incrementAndGet();
+
+        long bucket = bucketOf(expiresAtMillis);
+        Set<String> digests = expiryBuckets.computeIfAbsent(bucket, key -> ConcurrentHashMap.newKeySet());
+        digests.add(digest);
+
+        // Корзину могли снять очисткой между computeIfAbsent и add - запись уже истекла
+        if (expiryBuckets.get(bucket) != digests) {
+            removeEntry(digest, expiresAtMillis);
+        }
+        return true;
     }
 
     /**
@@ -77,7 +235,7 @@ public class TokenBlacklistService {
             return false;
         }
 
-        boolean isBlacklisted = tokenBlacklist.containsKey(token);
+        boolean isBlacklisted = isDigestBlacklisted(TokenDigest.of(token));
 
         if (isBlacklisted) {
             log.debug("Token found in blacklist: {}",
@@ -88,31 +246,150 @@ public class TokenBlacklistService {
     }
 
     /**
-     * Фоновая очистка устаревших токенов
+     * Проверка по готовому digest токена (фильтр считает digest один раз на запрос)
+     *
+     * @param tokenDigest TokenDigest.of(token)
+     * @return true если токен в черном списке и еще не истек
+     */
+    public boolean isDigestBlacklisted(String tokenDigest) {
+        if (sharedEnabled && !replicaLoaded) {
+            // Отзывы других узлов еще не загружены - отказ вместо пропуска отозванного токена
+            return true;
+        }
+        if (size.get() == 0) {
+            return false;
+        }
+
+        BloomFilter previous = previousBloomFilter;
+        if (!bloomFilter.mightContain(tokenDigest)
+                && (previous == null || !previous.mightContain(tokenDigest))) {
+            bloomNegatives.increment();
+            return false;
+        }
+
+        Long expiresAtMillis = entries.get(tokenDigest);
+        if (expiresAtMillis == null) {
+            bloomFalsePositives.increment();
+            return false;
+        }
+        return expiresAtMillis > System.currentTimeMillis();
+    }
+
+    /**
+     * Смена поколения фильтра Блума раз в время жизни access токена
+     * Новые добавления сразу идут в новое поколение, затем в него переносятся
+     * живые записи; старое поколение проверяется до следующей смены
+     */
+    @Scheduled(fixedRateString = "${app.jwt.app.access.expiration:600000}",
+            initialDelayString = "${app.jwt.app.access.expiration:600000}")
+    public void rotateBloomFilter() {
+        try {
+            BloomFilter next = newBloomFilter();
+            previousBloomFilter = bloomFilter;
+            bloomFilter = next;
+
+            long now = System.currentTimeMillis();
+            entries.forEach((digest, expiresAtMillis) -> {
+                if (expiresAtMillis > now) {
+                    next.put(digest);
+                }
+            });
+
+            log.debug("Bloom filter rotated: {} live entries carried over", next.getInsertions());
+        } catch (Exception e) {
+            log.error("Error during bloom filter rotation", e);
+        }
+    }
+
+    /**
+     * Полная загрузка локальной копии из token_blacklist
+     * Вызывается TokenBlacklistListener после LISTEN: отзывы, закоммиченные без
+     * соединения, попадают сюда, а более поздние придут уведомлениями
+     */
+    public void loadReplica() {
+        List<TokenBlacklistStore.Entry> rows = tokenBlacklistStore.findActive();
+
+        int applied = applyReplicated(rows);
+        boolean initial = !replicaLoaded;
+        replicaLoaded = true;
+
+        if (initial) {
+            log.info("Blacklist replica loaded: {} tokens", applied);
+        } else {
+            log.info("Blacklist replica reloaded after reconnect: {} new tokens", applied);
+        }
+    }
+
+    /**
+     * Отзывы, закоммиченные на других узлах (digest из уведомлений)
+     */
+    public void onRevoked(Collection<String> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+        int applied = applyReplicated(tokenBlacklistStore.findActiveByDigests(digests));
+        if (applied > 0) {
+            log.debug("Blacklist replica synced: {} new tokens", applied);
+        }
+    }
+
+    private int applyReplicated(List<TokenBlacklistStore.Entry> rows) {
+        int applied = 0;
+        for (TokenBlacklistStore.Entry row : rows) {
+            if (applyEntry(row.digest(), row.expiresAtMillis())) {
+                applied++;
+            }
+            verifiedTokenCache.invalidate(row.digest());
+        }
+        return applied;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Фоновая очистка истекших токенов
+     * Снимаются только корзины, целиком лежащие в прошлом
      * Выполняется с интервалом из конфигурации (по умолчанию 10 минут)
      */
     @Scheduled(fixedRateString = "${app.jwt.cleanup-interval:600000}")
     public void cleanUp() {
         try {
-            // Вычисляем порог: текущее время - время жизни токена
-            LocalDateTime threshold = LocalDateTime.now()
-                    .minusNanos(accessTokenExpirationMs * 1_000_000);
+            long currentBucket = bucketOf(System.currentTimeMillis());
+            int removed = 0;
 
-            int initialSize = tokenBlacklist.size();
-
-            // Удаляем токены старше порога
-            tokenBlacklist.entrySet().removeIf(entry ->
-                    entry.getValue().isBefore(threshold)
-            );
-
-            int removed = initialSize - tokenBlacklist.size();
+            Map.Entry<Long, Set<String>> expired;
+            while ((expired = expiryBuckets.headMap(currentBucket).pollFirstEntry()) != null) {
+                for (String digest : expired.getValue()) {
+                    Long expiresAtMillis = entries.get(digest);
+                    if (expiresAtMillis != null && removeEntry(digest, expiresAtMillis)) {
+                        removed++;
+                    }
+                }
+            }
 
             if (removed > 0) {
                 log.info("Cleaned up {} expired tokens from blacklist. Remaining: {}",
-                        removed, tokenBlacklist.size());
+                        removed, size.get());
             } else {
                 log.debug("No expired tokens to clean. Current size: {}",
-                        tokenBlacklist.size());
+                        size.get());
+            }
+
+            if (sharedEnabled) {
+                int deleted = tokenBlacklistStore.deleteExpired();
+                log.debug("Deleted {} expired rows from token_blacklist", deleted);
             }
 
         } catch (Exception e) {
@@ -126,42 +403,108 @@ public class TokenBlacklistService {
      * Полезно для мониторинга и метрик
      */
     public int getSize() {
-        return tokenBlacklist.size();
+        return size.get();
     }
 
     /**
      * Очистка всего черного списка
      * ВНИМАНИЕ: Использовать только для тестирования!
      * В production это может привести к проблемам безопасности
+     * Очищается только локальная копия, записи token_blacklist остаются
      */
     public void clear() {
-        int size = tokenBlacklist.size();
-        tokenBlacklist.clear();
-        log.warn("Token blacklist manually cleared. {} tokens removed", size);
+        int removed = size.getAndSet(0);
+        entries.clear();
+        expiryBuckets.clear();
+        bloomFilter = newBloomFilter();
+        previousBloomFilter = null;
+        log.warn("Token blacklist manually cleared. {} tokens removed", removed);
     }
 
     /**
      * Получение статистики черного списка
-     * Полезно для мониторинга
+     * Истекшие, но еще не очищенные токены - содержимое корзин в прошлом,
+     * обход только этих корзин
      */
     public BlacklistStats getStats() {
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusNanos(accessTokenExpirationMs * 1_000_000);
+        long currentBucket = bucketOf(System.currentTimeMillis());
 
-        long expiredCount = tokenBlacklist.values().stream()
-                .filter(timestamp -> timestamp.isBefore(threshold))
-                .count();
+        long expiredCount = 0;
+        for (Set<String> digests : expiryBuckets.headMap(currentBucket).values()) {
+            expiredCount += digests.size();
+        }
 
-        long activeCount = tokenBlacklist.size() - expiredCount;
+        int total = size.get();
+        BloomFilter bloom = bloomFilter;
 
         return new BlacklistStats(
-                tokenBlacklist.size(),
-                activeCount,
+                total,
+                Math.max(0, total - expiredCount),
                 expiredCount,
-                accessTokenExpirationMs / 60000 // в минутах
+                accessTokenExpirationMs / 60000, // в минутах
+                totalAdded.get(),
+                totalExpired.get(),
+                bloomFalsePositiveRate,
+                bloom.estimatedFalsePositiveRate(),
+                bloom.getBitCount(),
+                bloom.getHashFunctions(),
+                bloomNegatives.sum(),
+                bloomFalsePositives.sum()
         );
     }
 
+    private BloomFilter newBloomFilter() {
+        return new BloomFilter(bloomExpectedInsertions, bloomFalsePositiveRate);
+    }
+
+    private boolean removeEntry(String digest, long expiresAtMillis) {
+        if (!entries.remove(digest, expiresAtMillis)) {
+            return false;
+        }
+        size.decrementAndGet();
+        totalExpired.incrementAndGet();
+        return true;
+    }
+
+    private long bucketOf(long epochMillis) {
+        return epochMillis / bucketWidthMs;
+    }
+
+    /**
+     * Чтение exp из payload без проверки подписи
+     * Токен в черный список добавляет сам сервис после проверки
+     *
+     * @return exp в epoch millis или -1
+     */
+    private static long readExpiresAtMillis(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0) {
+            return -1;
+        }
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(firstDot + 1, secondDot));
+
+            try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return -1;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("exp".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                        return parser.getLongValue() * 1000;
+                    }
+                    parser.skipChildren();
+                }
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            log.debug("Cannot read exp from token: {}", e.getMessage());
+        }
+        return -1;
+    }
+
     /**
      * Маскирование токена для логирования
      * Показывает только первые и последние 4 символа
@@ -174,4 +517,4 @@ public class TokenBlacklistService {
         return token.substring(0, 4) + "..." +
                 token.substring(token.length() - 4);
     }
-}
\ No newline at end of file
+}
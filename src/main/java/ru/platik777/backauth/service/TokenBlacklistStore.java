@@ -0,0 +1,77 @@
+package ru.platik777.backauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Общий черный список токенов в таблице token_blacklist (digest, expires_at)
+ * <p/>
+ * Источник истины для всех узлов: TokenBlacklistService пишет сюда отзыв,
+ * триггер вставки отправляет pg_notify('token_blacklist', digest) - доставка после коммита.
+ * TokenBlacklistListener по уведомлению дочитывает запись в локальную копию,
+ * а при каждом подключении загружает все неистекшие записи
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenBlacklistStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Запись черного списка
+     */
+    public record Entry(String digest, long expiresAtMillis) {
+    }
+
+    private static final RowMapper<Entry> ENTRY_MAPPER = (rs, rowNum) -> new Entry(
+            rs.getString("digest"),
+            rs.getTimestamp("expires_at").getTime()
+    );
+
+    /**
+     * Добавление отзыва (повторный отзыв того же токена игнорируется)
+     */
+    public void insert(String digest, long expiresAtMillis) {
+        jdbcTemplate.update(
+                "INSERT INTO token_blacklist (digest, expires_at) VALUES (?, ?) " +
+                "ON CONFLICT (digest) DO NOTHING",
+                digest, new Timestamp(expiresAtMillis));
+    }
+
+    /**
+     * Все неистекшие записи - первичная загрузка локальной копии
+     */
+    public List<Entry> findActive() {
+        return jdbcTemplate.query(
+                "SELECT digest, expires_at FROM token_blacklist " +
+                "WHERE expires_at > CURRENT_TIMESTAMP",
+                ENTRY_MAPPER);
+    }
+
+    /**
+     * Неистекшие записи по digest - дочитывание записей из уведомлений
+     */
+    public List<Entry> findActiveByDigests(Collection<String> digests) {
+        return jdbcTemplate.query(
+                "SELECT digest, expires_at FROM token_blacklist " +
+                "WHERE digest = ANY(?) AND expires_at > CURRENT_TIMESTAMP",
+                ENTRY_MAPPER, (Object) digests.toArray(String[]::new));
+    }
+
+    /**
+     * Удаление истекших записей
+     *
+     * @return количество удаленных строк
+     */
+    public int deleteExpired() {
+        return jdbcTemplate.update("DELETE FROM token_blacklist WHERE expires_at <= CURRENT_TIMESTAMP");
+    }
+}
@@ -0,0 +1,136 @@
+package ru.platik777.backauth.service;
+
+import io.jsonwebtoken.JwtException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.dto.request.TokenIntrospectionRequest;
+import ru.platik777.backauth.dto.response.AuthorizationResponse;
+import ru.platik777.backauth.dto.response.TokenIntrospectionResponse;
+import ru.platik777.backauth.entity.types.TokenType;
+import ru.platik777.backauth.util.TokenDigest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Пакетная проверка токенов для шлюза
+ * <p/>
+ * Каждый токен проверяется как в JwtAuthenticationFilter: черный список по digest,
+ * VerifiedTokenCache, затем JwtService.verifyToken. Проверка чисто вычислительная
+ * (HMAC/подпись, без БД), поэтому пакет проверяется параллельно в VerificationExecutor
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenIntrospectionService {
+
+    private static final String STATUS_OK = "OK";
+    private static final String STATUS_INVALID = "INVALID";
+
+    // Типы токенов, которые проверяет шлюз
+    private static final Set<TokenType> SUPPORTED_TYPES = EnumSet.of(
+            TokenType.APP_ACCESS, TokenType.BASE_ACCESS, TokenType.APP_REFRESH, TokenType.BASE_REFRESH);
+
+    private final JwtService jwtService;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final TokenBlacklistService tokenBlacklistService;
+    private final VerificationExecutor verificationExecutor;
+
+    @Value("${app.jwt.introspection.max-batch-size:256}")
+    private int maxBatchSize;
+
+    /**
+     * Проверка пакета токенов
+     *
+     * @return результат по каждому токену в порядке запроса
+     */
+    public List<TokenIntrospectionResponse> introspectBatch(List<TokenIntrospectionRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "Too many tokens in batch request: " + requests.size() + ", max " + maxBatchSize
+            );
+        }
+
+        int count = requests.size();
+        TokenIntrospectionResponse[] results = new TokenIntrospectionResponse[count];
+
+        int chunks = verificationExecutor.forEach(count, i -> results[i] = introspect(i, requests.get(i)));
+
+        log.debug("Batch introspection completed: {} tokens, {} chunks", count, chunks);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Проверка одного токена; ошибки не пробрасываются, а попадают в результат -
+     * VerificationExecutor требует, чтобы action не бросал исключений
+     */
+    private TokenIntrospectionResponse introspect(int index, TokenIntrospectionRequest request) {
+        TokenType tokenType = request != null ? request.getTokenType() : null;
+        String token = request != null && request.getToken() != null ? request.getToken().trim() : null;
+
+        if (token == null || token.isEmpty()) {
+            return invalid(index, tokenType, false, "Token is empty");
+        }
+        if (tokenType == null || !SUPPORTED_TYPES.contains(tokenType)) {
+            return invalid(index, tokenType, false, "Unsupported token type: " + tokenType);
+        }
+
+        try {
+            String tokenDigest = TokenDigest.of(token);
+
+            if (tokenBlacklistService.isDigestBlacklisted(tokenDigest)) {
+                return invalid(index, tokenType, true, "Token has been revoked");
+            }
+
+            JwtService.VerifiedToken verified = verifiedTokenCache.getVerified(tokenDigest, tokenType);
+            if (verified == null) {
+                long start = System.nanoTime();
+                verified = jwtService.verifyToken(token, tokenType);
+                verifiedTokenCache.put(tokenDigest, tokenType, verified.user(), verified.expiresAtMillis(),
+                        System.nanoTime() - start);
+            }
+
+            return TokenIntrospectionResponse.builder()
+                    .index(index)
+                    .tokenType(tokenType.name())
+                    .authorization(AuthorizationResponse.builder()
+                            .status(STATUS_OK)
+                            .userId(verified.user().getUserId())
+                            .build())
+                    .tenantId(verified.user().getTenantId())
+                    .blacklisted(false)
+                    .expiresAt(verified.expiresAtMillis())
+                    .build();
+
+        } catch (JwtException | IllegalArgumentException e) {
+            return invalid(index, tokenType, false, e.getMessage());
+
+        } catch (RuntimeException e) {
+            // Сбой на одном токене (черный список, кеш, разбор claims) не должен
+            // ронять весь пакет - остальные результаты уже посчитаны
+            log.warn("Token introspection failed: index={}, type={}", index, tokenType, e);
+            return invalid(index, tokenType, false, "Token verification failed");
+        }
+    }
+
+    private static TokenIntrospectionResponse invalid(int index, TokenType tokenType,
+                                                      boolean blacklisted, String message) {
+        return TokenIntrospectionResponse.builder()
+                .index(index)
+                .tokenType(tokenType != null ? tokenType.name() : null)
+                .authorization(AuthorizationResponse.builder()
+                        .status(STATUS_INVALID)
+                        .build())
+                .blacklisted(blacklisted)
+                .message(message)
+                .build();
+    }
+}
@@ -11,6 +11,7 @@ import ru.platik777.backauth.entity.types.AccountType;
 import ru.platik777.backauth.exception.ValidationException;
 import ru.platik777.backauth.repository.UserRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
 /**
@@ -29,6 +30,9 @@ public class ValidationService {
     private static final Pattern EMAIL_PATTERN = Pattern.compile("([a-zA-Z0-9._-]+@[a-zA-Z0-9._-]+\\.[a-zA-Z0-9_-]+)");
     private static final Pattern PHONE_PATTERN = Pattern.compile("^\\+\\d{1,4} \\d{1,4} \\d{1,12}$");
 
+    // Предел BCrypt: байты пароля после 72-го не участвуют в хеше
+    private static final int MAX_PASSWORD_BYTES = 72;
+
     /**
      * Валидация данных при регистрации
      *
@@ -75,17 +79,11 @@ public class ValidationService {
             throw new ValidationException("Current password cannot be empty", "password");
         }
 
-        // Проверка что новый пароль не пустой
-        if (!StringUtils.hasText(newPasswordPlain)) {
-            throw new ValidationException("New password cannot be empty", "newPassword");
-        }
-
-        // Хешируем введенный текущий пароль
-        // Go: newUserData.Password, err = generatePasswordHash(logger, newUserData.Password)
-        String currentPasswordHash = passwordService.generatePasswordHash(currentPasswordPlain);
+        // Проверка что новый пароль не пустой и помещается в BCrypt
+        validatePassword(newPasswordPlain, "newPassword");
 
-        // Сравниваем с хешем из БД
-        if (!currentPasswordHash.equals(oldPasswordHashFromDb)) {
+        // Сравниваем введенный текущий пароль с хешем из БД (BCrypt или старый SHA-1)
+        if (!passwordService.verifyPassword(currentPasswordPlain, oldPasswordHashFromDb)) {
             throw new ValidationException(
                     "Wrong current password entered",
                     "password"
@@ -186,8 +184,22 @@ public class ValidationService {
      * Валидация пароля
      */
     public void validatePassword(String password) {
+        validatePassword(password, "password");
+    }
+
+    /**
+     * Валидация пароля с указанием поля ошибки
+     * BCrypt учитывает только первые 72 байта - более длинный пароль отклоняется (400),
+     * а не падает при хешировании
+     */
+    public void validatePassword(String password, String field) {
         if (!StringUtils.hasText(password)) {
-            throw new ValidationException("Password cannot be empty", "password");
+            throw new ValidationException("Password cannot be empty", field);
+        }
+
+        if (password.getBytes(StandardCharsets.UTF_8).length > MAX_PASSWORD_BYTES) {
+            throw new ValidationException(
+                    "Password is too long (max " + MAX_PASSWORD_BYTES + " bytes in UTF-8)", field);
         }
 
         // Можно добавить дополнительные проверки:
@@ -247,9 +259,8 @@ public class ValidationService {
         validateEmail(user.getEmail());
         validatePhone(user.getPhone());
 
-        if (!StringUtils.hasText(user.getPasswordHash())) {
-            throw new ValidationException("Password hash cannot be empty", "password");
-        }
+        // Пароль длиннее предела BCrypt отклоняется до проверок уникальности в БД
+        validatePassword(user.getPasswordHash());
 
         if (userRepository.existsByLoginIgnoreCase(user.getLogin())) {
             throw new ValidationException("Login is already in use", "login");
@@ -0,0 +1,94 @@
+package ru.platik777.backauth.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Параллельная проверка пакетов (подписи JWT, API ключи)
+ * <p/>
+ * Проверка подписи чисто вычислительная, поэтому пакет делится на части,
+ * которые выполняются на собственном пуле размером с число ядер; первая часть -
+ * в потоке запроса. Небольшой пакет проверяется целиком в потоке запроса.
+ * Используется TokenIntrospectionService и ApiKeyService
+ */
+@Slf4j
+@Service
+public class VerificationExecutor {
+
+    // Минимум элементов в одной параллельной части
+    @Value("${app.verification.min-chunk-size:32}")
+    private int minChunkSize;
+
+    // Размер пула проверки, 0 - число ядер
+    @Value("${app.verification.parallelism:0}")
+    private int parallelism;
+
+    private ExecutorService executor;
+    private int threads;
+
+    @PostConstruct
+    public void initialize() {
+        threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "verification-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+
+        log.info("VerificationExecutor initialized: {} threads, min chunk {}", threads, minChunkSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Выполнить action для каждого индекса 0..count-1 и дождаться завершения
+     * action должен сам записывать результат по индексу и не бросать исключений
+     *
+     * @return число частей, на которые был разделен пакет
+     */
+    public int forEach(int count, IntConsumer action) {
+        // Примерно 4 части на поток - выравнивание нагрузки при разной стоимости элементов
+        int chunkSize = Math.max(minChunkSize, (count + threads * 4 - 1) / (threads * 4));
+
+        if (count <= chunkSize) {
+            runRange(action, 0, count);
+            return 1;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = chunkSize; from < count; from += chunkSize) {
+            int start = from;
+            int end = Math.min(count, from + chunkSize);
+            futures.add(CompletableFuture.runAsync(() -> runRange(action, start, end), executor));
+        }
+
+        runRange(action, 0, chunkSize);
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        return futures.size() + 1;
+    }
+
+    private static void runRange(IntConsumer action, int from, int to) {
+        for (int i = from; i < to; i++) {
+            action.accept(i);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.platik777.backauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.platik777.backauth.dto.AuthenticatedUser;
+import ru.platik777.backauth.entity.types.TokenType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш проверенных токенов: digest токена -> пользователь, тип токена и exp
+ * <p/>
+ * - попадание избавляет от проверки HMAC, base64 и разбора claims
+ * - запись живет ровно до exp токена (Expiry на каждую запись), размер ограничен
+ * - при добавлении токена в черный список запись удаляется сразу (invalidate)
+ * - метрики: jwt.verified.tokens.* (hit/miss), jwt.verification{result=hit|miss}
+ *   и jwt.verification.saved - сэкономленное время проверки
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VerifiedTokenCache {
+
+    private static final String CACHE_NAME = "jwt.verified.tokens";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.jwt.verified-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.jwt.verified-cache.max-size:100000}")
+    private long maxSize;
+
+    private Cache<String, Entry> cache;
+
+    private Timer hitTimer;
+    private Timer missTimer;
+    private Counter savedNanos;
+
+    @PostConstruct
+    public void initialize() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+        hitTimer = Timer.builder("jwt.verification")
+                .description("Время проверки токена в фильтре")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        missTimer = Timer.builder("jwt.verification")
+                .description("Время проверки токена в фильтре")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        savedNanos = Counter.builder("jwt.verification.saved")
+                .description("Сэкономленное кэшем время проверки токенов")
+                .baseUnit("nanoseconds")
+                .register(meterRegistry);
+
+        log.info("VerifiedTokenCache initialized: enabled={}, maxSize={}", enabled, maxSize);
+    }
+
+    /**
+     * @param tokenDigest TokenDigest.of(token)
+     * @return пользователь из ранее проверенного токена того же типа или null
+     */
+    public AuthenticatedUser get(String tokenDigest, TokenType tokenType) {
+        JwtService.VerifiedToken verified = getVerified(tokenDigest, tokenType);
+        return verified != null ? verified.user() : null;
+    }
+
+    /**
+     * @param tokenDigest TokenDigest.of(token)
+     * @return пользователь и exp ранее проверенного токена того же типа или null
+     */
+    public JwtService.VerifiedToken getVerified(String tokenDigest, TokenType tokenType) {
+        if (!enabled) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        Entry entry = cache.getIfPresent(tokenDigest);
+        if (entry == null || entry.tokenType() != tokenType || entry.expiresAtMillis() <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        hitTimer.record(elapsed, TimeUnit.NANOSECONDS);
+
+        // Экономия = средняя полная проверка - фактическое время попадания
+        double saved = missTimer.mean(TimeUnit.NANOSECONDS) - elapsed;
+        if (saved > 0) {
+            savedNanos.increment(saved);
+        }
+        return new JwtService.VerifiedToken(entry.user(), entry.expiresAtMillis());
+    }
+
+    /**
+     * Запомнить успешно проверенный токен
+     *
+     * @param tokenDigest       TokenDigest.of(token)
+     * @param verificationNanos сколько заняла полная проверка (для метрик)
+     */
+    public void put(String tokenDigest, TokenType tokenType, AuthenticatedUser user,
+                    long expiresAtMillis, long verificationNanos) {
+        missTimer.record(verificationNanos, TimeUnit.NANOSECONDS);
+
+        if (!enabled || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        cache.put(tokenDigest, new Entry(user, tokenType, expiresAtMillis));
+    }
+
+    /**
+     * Удалить токен из кэша (токен добавлен в черный список)
+     *
+     * @param tokenDigest TokenDigest.of(token)
+     */
+    public void invalidate(String tokenDigest) {
+        if (!enabled || tokenDigest == null) {
+            return;
+        }
+        cache.invalidate(tokenDigest);
+    }
+
+    private static long remainingNanos(Entry entry) {
+        long remainingMillis = entry.expiresAtMillis() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+    }
+
+    private record Entry(AuthenticatedUser user, TokenType tokenType, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,122 @@
+package ru.platik777.backauth.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free фильтр Блума по digest токена (TokenDigest)
+ * <p/>
+ * - биты в AtomicLongArray, установка бита - CAS по одному слову
+ * - digest уже равномерно распределен (SHA-256), поэтому две 60-битные
+ *   половины берутся прямо из base64url символов без повторного хеширования,
+ *   k позиций - двойное хеширование h1 + i * h2
+ * - размер и число хешей считаются по ожидаемому числу записей и
+ *   допустимой доле ложных срабатываний
+ */
+public final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final LongAdder insertions = new LongAdder();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+        }
+
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount << 6;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN2));
+    }
+
+    /**
+     * @param tokenDigest TokenDigest.of(token)
+     */
+    public void put(String tokenDigest) {
+        long h1 = half(tokenDigest, 0);
+        long h2 = half(tokenDigest, 10) | 1;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(index) & mask) == 0) {
+                words.accumulateAndGet(index, mask, (current, m) -> current | m);
+            }
+        }
+        insertions.increment();
+    }
+
+    /**
+     * @return false - digest точно не добавлялся, true - возможно добавлялся
+     */
+    public boolean mightContain(String tokenDigest) {
+        long h1 = half(tokenDigest, 0);
+        long h2 = half(tokenDigest, 10) | 1;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Оценка текущей доли ложных срабатываний по заполненности битов
+     * Обходит весь массив - только для мониторинга
+     */
+    public double estimatedFalsePositiveRate() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) setBits / bitCount, hashFunctions);
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * 60 бит из 10 символов base64url, начиная с offset
+     */
+    private static long half(String digest, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 10; i++) {
+            value = (value << 6) | base64UrlValue(digest.charAt(i));
+        }
+        return value;
+    }
+
+    private static int base64UrlValue(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        return c == '-' ? 62 : 63;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.platik777.backauth.util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор keyset-пагинации по ключу (rank, created_at, id)
+ * <p/>
+ * NULL в rank/created_at сортируются последними - так же, как ORDER BY rank, created_at,
+ * поэтому в курсоре они заменяются на Integer.MAX_VALUE и 'infinity'
+ * <p/>
+ * Клиент получает строку base64url и передает ее обратно без изменений
+ */
+public record KeysetCursor(int rank, String createdAt, String id) {
+
+    private static final String SEPARATOR = "|";
+    private static final String NULL_CREATED_AT = "infinity";
+
+    /**
+     * Курсор перед первой строкой
+     */
+    public static final KeysetCursor START = new KeysetCursor(Integer.MIN_VALUE, "-infinity", "");
+
+    /**
+     * Курсор после строки с указанными значениями ключа
+     */
+    public static KeysetCursor after(Number rank, Timestamp createdAt, String id) {
+        return new KeysetCursor(
+                rank != null ? rank.intValue() : Integer.MAX_VALUE,
+                createdAt != null ? createdAt.toLocalDateTime().toString() : NULL_CREATED_AT,
+                id
+        );
+    }
+
+    public String encode() {
+        String raw = rank + SEPARATOR + createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разобрать курсор, пришедший от клиента
+     *
+     * @param token строка курсора или null для первой страницы
+     * @throws IllegalArgumentException если курсор поврежден
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+
+            if (!NULL_CREATED_AT.equals(parts[1])) {
+                LocalDateTime.parse(parts[1]);
+            }
+            return new KeysetCursor(Integer.parseInt(parts[0]), parts[1], parts[2]);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.platik777.backauth.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket без блокировок: ведро на capacity запросов, пополнение rate запросов в секунду
+ * <p/>
+ * Состояние - одно число: момент (System.nanoTime), когда ведро снова станет полным.
+ * Пополнение ленивое - считается из разницы с текущим временем при попытке взять токен,
+ * фоновых потоков нет. Взятие токена - один CAS, при гонке повтор.
+ * <p/>
+ * Ведро пусто, если до момента "полное" осталось больше capacity * interval:
+ * тогда ответ - через сколько наносекунд освободится токен
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final double rate;
+    private final int capacity;
+
+    // Момент, когда ведро станет полным; <= now - ведро полное
+    private final AtomicLong fullAtNanos;
+
+    /**
+     * @param rate     пополнение, запросов в секунду (> 0)
+     * @param capacity размер ведра - допустимый всплеск (>= 1)
+     */
+    public TokenBucket(double rate, int capacity) {
+        if (rate <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid token bucket: rate=" + rate + ", capacity=" + capacity);
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / rate));
+        this.capacityNanos = intervalNanos * capacity;
+        this.fullAtNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Взять один токен
+     *
+     * @return 0 - токен взят, иначе сколько наносекунд ждать следующего токена
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long fullAt = fullAtNanos.get();
+            long next = Math.max(fullAt, nowNanos) + intervalNanos;
+            long debt = next - nowNanos;
+
+            if (debt > capacityNanos) {
+                return debt - capacityNanos;
+            }
+            if (fullAtNanos.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Вернуть токен, взятый tryAcquire (запрос отклонен лимитом другой области)
+     */
+    public void refund() {
+        fullAtNanos.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Ведро полное - удаление ничего не меняет
+     */
+    public boolean isFull(long nowNanos) {
+        return fullAtNanos.get() <= nowNanos;
+    }
+
+    /**
+     * Те же параметры - ведро можно переиспользовать после смены лимитов
+     */
+    public boolean hasLimits(double rate, int capacity) {
+        return this.rate == rate && this.capacity == capacity;
+    }
+}
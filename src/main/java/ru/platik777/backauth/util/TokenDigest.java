@@ -0,0 +1,36 @@
+package ru.platik777.backauth.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Компактный ключ для токена: SHA-256 от строки токена в base64url (43 символа)
+ * <p/>
+ * Используется вместо самого токена как ключ кэшей и черного списка:
+ * фиксированный размер и сырые токены не держатся в памяти
+ */
+public final class TokenDigest {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private TokenDigest() {
+    }
+
+    /**
+     * @param token строка токена (не null)
+     * @return digest токена в base64url без паддинга
+     */
+    public static String of(String token) {
+        MessageDigest digest = SHA_256.get();
+        byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+}
@@ -0,0 +1,214 @@
+package ru.platik777.backauth.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Hs256TokenVerifier должен принимать только то, что принимает JJWT (как в JwtService.verifyToken),
+ * и с теми же claims; нестандартные токены - null и переход к JJWT
+ */
+class Hs256TokenVerifierTest {
+
+    private static final String TYPE = "APP_ACCESS";
+    private static final String KID = "APP_ACCESS.100";
+
+    private final SecretKey legacyKey = key(1);
+    private final SecretKey epochKey = key(2);
+    private final SecretKey refreshKey = key(3);
+
+    // Ключи access токенов по kid ("" - токен без kid), как JwtKeyRegistry.resolveHmacKey
+    private final Map<String, SecretKey> accessKeys = Map.of("", legacyKey, KID, epochKey);
+
+    private final Hs256TokenVerifier verifier = new Hs256TokenVerifier(accessKeys::get, TYPE);
+
+    @Test
+    void validTokenWithKid_sameClaimsAsJjwt() {
+        String token = token(KID, epochKey, TYPE, System.currentTimeMillis() + 60_000);
+
+        Hs256TokenVerifier.AccessClaims expected = verifyWithJjwt(token);
+        assertNotNull(expected);
+        assertEquals(expected, verifier.verify(token));
+    }
+
+    @Test
+    void validTokenWithoutKid_sameClaimsAsJjwt() {
+        String token = token(null, legacyKey, TYPE, System.currentTimeMillis() + 60_000);
+
+        Hs256TokenVerifier.AccessClaims expected = verifyWithJjwt(token);
+        assertNotNull(expected);
+        assertEquals(expected, verifier.verify(token));
+    }
+
+    @Test
+    void tamperedSignature_rejectedByBoth() {
+        String token = token(KID, epochKey, TYPE, System.currentTimeMillis() + 60_000);
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char first = token.charAt(signatureStart);
+        String tampered = token.substring(0, signatureStart) + (first == 'A' ? 'B' : 'A')
+                + token.substring(signatureStart + 1);
+
+        assertNull(verifyWithJjwt(tampered));
+        assertNull(verifier.verify(tampered));
+    }
+
+    @Test
+    void nonCanonicalSignatureEncoding_rejected() {
+        String token = token(KID, epochKey, TYPE, System.currentTimeMillis() + 60_000);
+        assertNotNull(verifier.verify(token));
+
+        // Та же подпись с дополнением '='
+        assertNull(verifier.verify(token + "="));
+
+        // Та же подпись с измененными неиспользуемыми битами последнего символа:
+        // 43 символа несут 258 бит, HMAC-SHA256 - 256, два младших бита лишние
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        char last = token.charAt(token.length() - 1);
+        char altered = alphabet.charAt(alphabet.indexOf(last) ^ 1);
+        String malleated = token.substring(0, token.length() - 1) + altered;
+
+        assertNotEquals(token, malleated);
+        assertNull(verifier.verify(malleated));
+    }
+
+    @Test
+    void tamperedPayload_rejectedByBoth() {
+        String token = token(KID, epochKey, TYPE, System.currentTimeMillis() + 60_000);
+        String other = Jwts.builder()
+                .claim("userId", "user-2")
+                .claim("tenant_id", "tenant-1")
+                .claim("type", TYPE)
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .compact();
+
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + other.split("\\.")[1] + "." + parts[2];
+
+        assertNull(verifyWithJjwt(tampered));
+        assertNull(verifier.verify(tampered));
+    }
+
+    @Test
+    void unknownKid_rejectedByBoth() {
+        String token = token("APP_ACCESS.999", epochKey, TYPE, System.currentTimeMillis() + 60_000);
+
+        assertNull(verifyWithJjwt(token));
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void kidOfAnotherKey_rejectedByBoth() {
+        // Подписан ключом refresh, но заявляет kid ключа access
+        String token = token(KID, refreshKey, TYPE, System.currentTimeMillis() + 60_000);
+
+        assertNull(verifyWithJjwt(token));
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void tokenOfAnotherType_rejectedByBoth() {
+        String token = token("APP_REFRESH.100", refreshKey, "APP_REFRESH", System.currentTimeMillis() + 60_000);
+
+        assertNull(verifyWithJjwt(token));
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void wrongTypeClaim_rejectedByBoth() {
+        // Верная подпись ключом access, но claim type другого токена
+        String token = token(KID, epochKey, "APP_REFRESH", System.currentTimeMillis() + 60_000);
+
+        assertNull(verifyWithJjwt(token));
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void expiredToken_rejectedByBoth() {
+        String token = token(KID, epochKey, TYPE, System.currentTimeMillis() - 60_000);
+
+        assertNull(verifyWithJjwt(token));
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void extraHeaderField_fallsBackToJjwt() {
+        JwtBuilder builder = claims(TYPE, System.currentTimeMillis() + 60_000)
+                .header().keyId(KID).type("JWT").and();
+        String token = builder.signWith(epochKey, Jwts.SIG.HS256).compact();
+
+        // Быстрый путь не разбирает нестандартный заголовок, итог определяет JJWT
+        Hs256TokenVerifier.AccessClaims expected = verifyWithJjwt(token);
+        assertNotNull(expected);
+        assertNull(verifier.verify(token));
+    }
+
+    // ==================== ЭТАЛОН: JJWT ====================
+
+    /**
+     * Проверка как в JwtService.verifyToken: парсер с выбором ключа по kid, затем userId, type и exp
+     */
+    private Hs256TokenVerifier.AccessClaims verifyWithJjwt(String token) {
+        try {
+            Claims claims = Jwts.parser()
+                    .keyLocator(new LocatorAdapter<Key>() {
+                        @Override
+                        protected Key locate(JwsHeader header) {
+                            if (!"HS256".equals(header.getAlgorithm())) {
+                                return null;
+                            }
+                            return accessKeys.get(header.getKeyId() == null ? "" : header.getKeyId());
+                        }
+                    })
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+
+            String userId = claims.get("userId", String.class);
+            if (userId == null || !TYPE.equals(claims.get("type", String.class)) || claims.getExpiration() == null) {
+                return null;
+            }
+            return new Hs256TokenVerifier.AccessClaims(
+                    userId, claims.get("tenant_id", String.class), claims.getExpiration().getTime());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static JwtBuilder claims(String type, long expiresAtMillis) {
+        return Jwts.builder()
+                .claim("userId", "user-1")
+                .claim("tenant_id", "tenant-1")
+                .claim("type", type)
+                .issuedAt(new Date())
+                .expiration(new Date(expiresAtMillis));
+    }
+
+    private static String token(String kid, SecretKey key, String type, long expiresAtMillis) {
+        JwtBuilder builder = claims(type, expiresAtMillis);
+        if (kid != null) {
+            builder = builder.header().keyId(kid).and();
+        }
+        return builder.signWith(key, Jwts.SIG.HS256).compact();
+    }
+
+    private static SecretKey key(int seed) {
+        byte[] bytes = new byte[32];
+        Arrays.fill(bytes, (byte) seed);
+        return Keys.hmacShaKeyFor(bytes);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.platik777.backauth.security;
+
+import org.junit.jupiter.api.Test;
+import ru.platik777.backauth.entity.types.TokenType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RouteTable: отдельные endpoint'ы публичны только при точном совпадении,
+ * поддеревья - с границей '/', как прежние matcher'ы SecurityConfig
+ */
+class RouteTableTest {
+
+    private final RouteTable routeTable = new RouteTable();
+
+    @Test
+    void exactRoute_matchesWholePathOnly() {
+        assertTrue(routeTable.resolve("/auth/signIn").publicRoute());
+        assertTrue(routeTable.resolve("/metrics").publicRoute());
+        assertTrue(routeTable.resolve("/api/v1/key/check").publicRoute());
+        assertTrue(routeTable.resolve("/api/v1/key/check/batch").publicRoute());
+
+        assertSecured("/auth/signInX", TokenType.APP_ACCESS);
+        assertSecured("/auth/signIn/extra", TokenType.APP_ACCESS);
+        assertSecured("/metricsfoo", TokenType.APP_ACCESS);
+        assertSecured("/api/v1/key/checkX", TokenType.APP_ACCESS);
+        assertSecured("/api/v1/key/check/other", TokenType.APP_ACCESS);
+    }
+
+    @Test
+    void subtreeRoute_requiresSlashBoundary() {
+        assertTrue(routeTable.resolve("/monitor").publicRoute());
+        assertTrue(routeTable.resolve("/monitor/status").publicRoute());
+        assertTrue(routeTable.resolve("/api/v1/resetPassword/forgot").publicRoute());
+
+        assertSecured("/monitorX", TokenType.APP_ACCESS);
+        assertSecured("/api/v1/resetPasswordX/forgot", TokenType.APP_ACCESS);
+    }
+
+    @Test
+    void securedRoutes_resolveTokenType() {
+        assertSecured("/api/v1/base/user", TokenType.BASE_ACCESS);
+        assertSecured("/api/v1/baseX", TokenType.APP_ACCESS);
+        assertSecured("/auth/refreshToken", TokenType.APP_REFRESH);
+        assertSecured("/auth/refreshBaseToken", TokenType.BASE_REFRESH);
+        assertSecured("/api/v1/user", TokenType.APP_ACCESS);
+    }
+
+    private void assertSecured(String path, TokenType tokenType) {
+        RouteTable.Route route = routeTable.resolve(path);
+        assertFalse(route.publicRoute(), path);
+        assertEquals(tokenType, route.tokenType(), path);
+    }
+}
@@ -0,0 +1,252 @@
+package ru.platik777.backauth.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.platik777.backauth.entity.types.ItemType;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Правило ближайшего гранта (resolve_effective_permissions и PermissionEngine) на схеме из Liquibase:
+ * - побеждает ближайший уровень: прямой грант, folder_id, затем порядок all_parent_ids
+ * - на одном уровне грант пользователя важнее групповых
+ * - гранты нескольких групп одного уровня объединяются
+ * <p/>
+ * Дерево (all_parent_ids - от ближайшей папки к корню):
+ * root
+ * ├── a          группа g1: 2
+ * │   ├── a1
+ * │   └── m          (перемещается в b)
+ * │       └── project pm
+ * ├── b          пользователь: 4, группа g1: 3
+ * │   └── project pb
+ * └── c          группа g1: 1, группа g2: 2
+ *     ├── project pc
+ *     └── project pd   пользователь: 5
+ * Грант пользователя на root: 1
+ * <p/>
+ * Перемещение m проверяет уведомления item_change: до обновления дерева движок не отвечает (SQL),
+ * после refreshIfStale отвечает по новому all_parent_ids
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class NearestGrantPrecedenceTest {
+
+    private static final String USER = "user-1";
+    private static final String USER_WITHOUT_GRANTS = "user-2";
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static DriverManagerDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static GroupMembershipService groupMembershipService;
+    private static PermissionEngine engine;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        createFixture();
+
+        groupMembershipService = new GroupMembershipService(jdbcTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(groupMembershipService, "maxSize", 1000L);
+        ReflectionTestUtils.setField(groupMembershipService, "expireAfterWriteMs", 60_000L);
+        groupMembershipService.initialize();
+
+        engine = new PermissionEngine(jdbcTemplate, groupMembershipService,
+                new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        ReflectionTestUtils.setField(engine, "notificationsEnabled", true);
+        engine.onNotificationsConnected();
+        engine.reload();
+    }
+
+    @Test
+    void nearerGroupGrant_winsOverFartherUserGrant() {
+        assertPermission(USER, ItemType.FOLDER, "a1", 2);
+    }
+
+    @Test
+    void directGroupGrant_winsOverUserGrantOnParent() {
+        assertPermission(USER, ItemType.FOLDER, "a", 2);
+    }
+
+    @Test
+    void userGrant_winsOverGroupGrantOnSameLevel() {
+        assertPermission(USER, ItemType.FOLDER, "b", 4);
+        assertPermission(USER, ItemType.PROJECT, "pb", 4);
+    }
+
+    @Test
+    void groupGrantsOnSameLevel_areCombined() {
+        assertPermission(USER, ItemType.FOLDER, "c", 3);
+        assertPermission(USER, ItemType.PROJECT, "pc", 3);
+    }
+
+    @Test
+    void directUserGrant_winsOverFolderGrants() {
+        assertPermission(USER, ItemType.PROJECT, "pd", 5);
+    }
+
+    @Test
+    void grantOnRoot_appliesWithoutNearerGrants() {
+        assertPermission(USER, ItemType.FOLDER, "root", 1);
+    }
+
+    @Test
+    void userWithoutGrants_hasNoPermission() {
+        assertPermission(USER_WITHOUT_GRANTS, ItemType.FOLDER, "a1", 0);
+        assertPermission(USER_WITHOUT_GRANTS, ItemType.PROJECT, "pc", 0);
+    }
+
+    @Test
+    void movedFolder_usesGrantsOfNewParent() throws Exception {
+        assertPermission(USER, ItemType.FOLDER, "m", 2);
+        assertPermission(USER, ItemType.PROJECT, "pm", 2);
+
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + PermissionChangeListener.ITEM_CHANNEL);
+            }
+
+            jdbcTemplate.update("UPDATE folder SET parent_id = 'b', all_parent_ids = CAST('{b,root}' AS TEXT[]) " +
+                    "WHERE id = 'm'");
+            jdbcTemplate.update("UPDATE project SET all_parent_ids = CAST('{b,root}' AS TEXT[]) WHERE id = 'pm'");
+
+            List<String> payloads = awaitNotifications(connection.unwrap(PGConnection.class), 2);
+            assertEquals(List.of("FOLDER:m", "PROJECT:pm"), payloads);
+            for (String payload : payloads) {
+                String[] parts = payload.split(":", 2);
+                engine.onItemChanged(ItemType.valueOf(parts[0]), parts[1]);
+            }
+        }
+
+        // Дерево еще не обновлено - отвечает SQL
+        assertNull(engine.findEffectivePermission(USER, "m", ItemType.FOLDER));
+        assertNull(engine.findEffectivePermission(USER, "pm", ItemType.PROJECT));
+
+        engine.refreshIfStale();
+
+        assertPermission(USER, ItemType.FOLDER, "m", 4);
+        assertPermission(USER, ItemType.PROJECT, "pm", 4);
+    }
+
+    private static List<String> awaitNotifications(PGConnection connection, int expected) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (payloads.size() < expected && System.currentTimeMillis() < deadline) {
+            PGNotification[] notifications = connection.getNotifications(500);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    payloads.add(notification.getParameter());
+                }
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * SQL-функция (с группами из group_user и с переданными группами) и движок
+     * должны давать одинаковый ожидаемый результат
+     */
+    private static void assertPermission(String userId, ItemType itemType, String itemId, int expected) {
+        List<Short> rows = jdbcTemplate.queryForList("""
+                SELECT rp.permission
+                FROM resolve_effective_permissions(
+                    ARRAY[CAST(? AS TEXT)], CAST(NULL AS TEXT), ARRAY[CAST(? AS TEXT)], ARRAY[CAST(? AS TEXT)]
+                ) rp
+                """, Short.class, userId, itemType.name(), itemId);
+        short sqlPermission = rows.isEmpty() ? 0 : rows.get(0);
+
+        assertEquals(expected, sqlPermission, "SQL: " + userId + " " + itemType + " " + itemId);
+
+        List<Short> preloadedRows = jdbcTemplate.queryForList("""
+                SELECT rp.permission
+                FROM resolve_effective_permissions(
+                    ARRAY[CAST(? AS TEXT)], CAST(NULL AS TEXT), ARRAY[CAST(? AS TEXT)], ARRAY[CAST(? AS TEXT)],
+                    CAST(? AS TEXT[])
+                ) rp
+                """, Short.class, userId, itemType.name(), itemId, groupMembershipService.getGroupIds(userId));
+        short preloadedPermission = preloadedRows.isEmpty() ? 0 : preloadedRows.get(0);
+
+        assertEquals(expected, preloadedPermission, "SQL with group ids: " + userId + " " + itemType + " " + itemId);
+        assertEquals(Short.valueOf((short) expected), engine.findEffectivePermission(userId, itemId, itemType),
+                "PermissionEngine: " + userId + " " + itemType + " " + itemId);
+    }
+
+    private static void createFixture() {
+        for (String userId : new String[]{USER, USER_WITHOUT_GRANTS}) {
+            jdbcTemplate.update("INSERT INTO \"user\" (id, name, login, password_hash, tenant_id) " +
+                    "VALUES (?, ?, ?, 'hash', 'tenant-1')", userId, userId, userId);
+        }
+
+        folder("root", null, "{}");
+        folder("a", "root", "{root}");
+        folder("a1", "a", "{a,root}");
+        folder("b", "root", "{root}");
+        folder("c", "root", "{root}");
+        folder("m", "a", "{a,root}");
+        project("pb", "b", "{root}");
+        project("pc", "c", "{root}");
+        project("pd", "c", "{root}");
+        project("pm", "m", "{a,root}");
+
+        for (String groupId : new String[]{"g1", "g2"}) {
+            jdbcTemplate.update("INSERT INTO \"group\" (id, name, tenant_id) VALUES (?, ?, 'tenant-1')", groupId, groupId);
+            jdbcTemplate.update("INSERT INTO group_user (group_id, user_id, tenant_id) VALUES (?, ?, 'tenant-1')",
+                    groupId, USER);
+        }
+
+        jdbcTemplate.update("INSERT INTO item_user_permission (id, user_id, permission, folder_id) " +
+                "VALUES ('up-root', ?, 1, 'root')", USER);
+        jdbcTemplate.update("INSERT INTO item_user_permission (id, user_id, permission, folder_id) " +
+                "VALUES ('up-b', ?, 4, 'b')", USER);
+        jdbcTemplate.update("INSERT INTO item_user_permission (id, user_id, permission, project_id) " +
+                "VALUES ('up-pd', ?, 5, 'pd')", USER);
+
+        jdbcTemplate.update("INSERT INTO item_group_permission (id, group_id, permission, folder_id) " +
+                "VALUES ('gp-a', 'g1', 2, 'a')");
+        jdbcTemplate.update("INSERT INTO item_group_permission (id, group_id, permission, folder_id) " +
+                "VALUES ('gp-b', 'g1', 3, 'b')");
+        jdbcTemplate.update("INSERT INTO item_group_permission (id, group_id, permission, folder_id) " +
+                "VALUES ('gp-c1', 'g1', 1, 'c')");
+        jdbcTemplate.update("INSERT INTO item_group_permission (id, group_id, permission, folder_id) " +
+                "VALUES ('gp-c2', 'g2', 2, 'c')");
+    }
+
+    private static void folder(String id, String parentId, String allParentIds) {
+        jdbcTemplate.update("INSERT INTO folder (id, name, parent_id, all_parent_ids, tenant_id) " +
+                "VALUES (?, ?, ?, CAST(? AS TEXT[]), 'tenant-1')", id, id, parentId, allParentIds);
+    }
+
+    private static void project(String id, String folderId, String allParentIds) {
+        jdbcTemplate.update("INSERT INTO project (id, folder_id, all_parent_ids, name, tenant_id) " +
+                "VALUES (?, ?, CAST(? AS TEXT[]), ?, 'tenant-1')", id, folderId, allParentIds, id);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.platik777.backauth.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void addedDigests_alwaysFound() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(TokenDigest.of("token-" + i));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(TokenDigest.of("token-" + i)), "false negative for token-" + i);
+        }
+        assertEquals(10_000, filter.getInsertions());
+    }
+
+    @Test
+    void emptyFilter_containsNothing() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+        assertFalse(filter.mightContain(TokenDigest.of("token")));
+        assertEquals(0.0, filter.estimatedFalsePositiveRate());
+    }
+
+    @Test
+    void falsePositiveRate_closeToTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(TokenDigest.of("added-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(TokenDigest.of("absent-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        double rate = falsePositives / 100_000.0;
+        assertTrue(rate < 0.02, "false positive rate " + rate);
+        assertTrue(filter.estimatedFalsePositiveRate() < 0.02);
+    }
+
+    @Test
+    void sizing_followsExpectedInsertionsAndRate() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+
+        // m = -n * ln(p) / ln(2)^2 ~ 958 506 бит, k = m / n * ln(2) ~ 7
+        assertTrue(filter.getBitCount() >= 958_506);
+        assertEquals(0, filter.getBitCount() % 64);
+        assertEquals(7, filter.getHashFunctions());
+    }
+
+    @Test
+    void concurrentPuts_loseNoBits() throws InterruptedException {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 10_000;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = offset; i < offset + 10_000; i++) {
+                    filter.put(TokenDigest.of("token-" + i));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < 40_000; i++) {
+            assertTrue(filter.mightContain(TokenDigest.of("token-" + i)), "false negative for token-" + i);
+        }
+    }
+
+    @Test
+    void invalidParameters_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1_000, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1_000, 1));
+    }
+}
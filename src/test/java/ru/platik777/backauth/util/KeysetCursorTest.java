@@ -0,0 +1,70 @@
+package ru.platik777.backauth.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    @Test
+    void encodeDecode_roundTrip() {
+        KeysetCursor cursor = KeysetCursor.after(5, Timestamp.valueOf("2024-01-02 03:04:05.123"), "item-1");
+
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+        assertEquals(5, decoded.rank());
+        assertEquals("2024-01-02T03:04:05.123", decoded.createdAt());
+        assertEquals("item-1", decoded.id());
+    }
+
+    @Test
+    void nullKeyValues_sortLast() {
+        KeysetCursor cursor = KeysetCursor.after(null, null, "item-1");
+
+        assertEquals(Integer.MAX_VALUE, cursor.rank());
+        assertEquals("infinity", cursor.createdAt());
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void idWithSeparator_roundTrip() {
+        KeysetCursor cursor = KeysetCursor.after(1, Timestamp.valueOf("2024-01-02 03:04:05"), "a|b|c");
+
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encoded_isUrlSafe() {
+        String encoded = KeysetCursor.after(-7, Timestamp.valueOf("2024-01-02 03:04:05"), "id?&/=+").encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void missingCursor_startsFromFirstRow() {
+        assertSame(KeysetCursor.START, KeysetCursor.decode(null));
+        assertSame(KeysetCursor.START, KeysetCursor.decode(""));
+        assertSame(KeysetCursor.START, KeysetCursor.decode("  "));
+    }
+
+    @Test
+    void damagedCursor_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(encode("1|2024-01-02T03:04:05")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(encode("x|2024-01-02T03:04:05|id")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(encode("1|yesterday|id")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(encode("1|2024-01-02T03:04:05|")));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
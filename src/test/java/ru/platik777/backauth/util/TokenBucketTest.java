@@ -0,0 +1,108 @@
+package ru.platik777.backauth.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Время передается явно (nowNanos), поэтому тесты не зависят от скорости выполнения
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstUpToCapacity_thenWaitForNextToken() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+
+        // Ведро пусто: следующий токен через 1 / rate
+        assertEquals(SECOND, bucket.tryAcquire(now));
+    }
+
+    @Test
+    void rejectedAttempt_doesNotConsumeToken() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+        assertTrue(bucket.tryAcquire(now) > 0);
+
+        assertEquals(0, bucket.tryAcquire(now + SECOND));
+    }
+
+    @Test
+    void refill_atConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+
+        // Через 100 мс - ровно один новый токен
+        long later = now + SECOND / 10;
+        assertEquals(0, bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later) > 0);
+    }
+
+    @Test
+    void idleBucket_doesNotAccumulateBeyondCapacity() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        long later = System.nanoTime() + 60 * SECOND;
+
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(0, bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later) > 0);
+    }
+
+    @Test
+    void refund_returnsToken() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+
+        // Запрос отклонен лимитом другой области - токен возвращается в ведро
+        bucket.refund();
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+    }
+
+    @Test
+    void isFull_afterRefill() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertFalse(bucket.isFull(now));
+        assertTrue(bucket.isFull(now + SECOND));
+    }
+
+    @Test
+    void hasLimits_comparesParameters() {
+        TokenBucket bucket = new TokenBucket(5, 10);
+
+        assertTrue(bucket.hasLimits(5, 10));
+        assertFalse(bucket.hasLimits(5, 11));
+        assertFalse(bucket.hasLimits(6, 10));
+    }
+
+    @Test
+    void invalidParameters_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}